@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * Environnement des benchmarks : la configuration du module est fournie directement à {@link FastConfigurationService}, sans passer par
+ * AppPropertiesService, et les répertoires temporaire et FAST sont créés sur un tmpfs (/dev/shm) lorsqu'il est disponible, afin de mesurer le code du
+ * module plutôt que le disque.
+ */
+final class FastBenchmarkEnvironment
+{
+    /** Propriété système permettant de choisir le répertoire racine des benchmarks */
+    static final String PROPERTY_BENCHMARK_DIRECTORY = "actes-fast.benchmark.directory";
+    private static final Path TMPFS = Paths.get( "/dev/shm" );
+    private static final String PREFIX = "actes-fast-bench";
+    private final Path _root;
+    private final Path _fastDirectory;
+
+    /**
+     * Crée les répertoires et installe la configuration
+     *
+     * @throws IOException
+     *             IOException
+     */
+    FastBenchmarkEnvironment( ) throws IOException
+    {
+        this( new Properties( ) );
+    }
+
+    /**
+     * Crée les répertoires et installe la configuration, complétée ou modifiée par des propriétés propres à l'appelant
+     *
+     * @param overrides
+     *            les propriétés qui remplacent celles de l'environnement
+     * @throws IOException
+     *             IOException
+     */
+    FastBenchmarkEnvironment( Properties overrides ) throws IOException
+    {
+        _root = Files.createTempDirectory( getBaseDirectory( ), PREFIX );
+        Path tmpDirectory = Files.createDirectories( _root.resolve( "tmp" ) );
+        _fastDirectory = Files.createDirectories( _root.resolve( "fast" ) );
+
+        Properties properties = new Properties( );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DATE_CLASSIFICATION, "01/01/2009" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_SIREN_VILLE, "217500016" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_SIREN_DEPT, "227500055" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DIR_PATH, tmpDirectory.toString( ) );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_FAST_DIR_PATH, _fastDirectory.toString( ) );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DEPT, "075" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TRANSACTION_TRANSMISSION, "1-1" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TRANSACTION_ANNULATION, "6-1" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_TRAITEMENT, "TELETRANSMISSION" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE, "E=fast@paris.fr, CN=Ville de Paris, O=Mairie de Paris, C=FR" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT, "E=fast@paris.fr, CN=Departement de Paris, O=Mairie de Paris, C=FR" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TYPE_LIBELLE, "DE" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TYPE_NUM, "1" );
+        properties.setProperty( FastConfiguration.PROPERTY_CARACTERES_DEFICIENT, "’,œ,€" );
+        properties.setProperty( FastConfiguration.PROPERTY_XML_ENCODING, "ISO-8859-1" );
+        // Chaque invocation dépose un nouvel acte : l'index des doublons ne ferait que grossir
+        properties.setProperty( FastConfiguration.PROPERTY_INDEX_ENABLED, Boolean.FALSE.toString( ) );
+        properties.putAll( overrides );
+
+        FastConfigurationService.getInstance( ).setConfiguration( FastConfiguration.fromProperties( properties ) );
+    }
+
+    /**
+     * Retourne le répertoire FAST de l'environnement
+     *
+     * @return le répertoire FAST
+     */
+    Path getFastDirectory( )
+    {
+        return _fastDirectory;
+    }
+
+    /**
+     * Vide le répertoire FAST, pour que sa taille ne varie pas d'une itération à l'autre
+     *
+     * @throws IOException
+     *             IOException
+     */
+    void cleanFastDirectory( ) throws IOException
+    {
+        deleteContent( _fastDirectory );
+    }
+
+    /**
+     * Supprime tous les fichiers de l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    void destroy( ) throws IOException
+    {
+        deleteContent( _root );
+        Files.deleteIfExists( _root );
+    }
+
+    /**
+     * Retourne le répertoire dans lequel l'environnement est créé
+     *
+     * @return le répertoire
+     */
+    private static Path getBaseDirectory( )
+    {
+        String strDirectory = System.getProperty( PROPERTY_BENCHMARK_DIRECTORY );
+
+        if ( strDirectory != null )
+        {
+            return Paths.get( strDirectory );
+        }
+
+        return Files.isDirectory( TMPFS ) && Files.isWritable( TMPFS ) ? TMPFS : Paths.get( System.getProperty( "java.io.tmpdir" ) );
+    }
+
+    /**
+     * Supprime récursivement le contenu d'un répertoire
+     *
+     * @param directory
+     *            le répertoire
+     * @throws IOException
+     *             IOException
+     */
+    private static void deleteContent( final Path directory ) throws IOException
+    {
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>( )
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException
+            {
+                Files.delete( file );
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( Path dir, IOException exc ) throws IOException
+            {
+                if ( !dir.equals( directory ) )
+                {
+                    Files.delete( dir );
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastAcknowledgement;
+import fr.paris.lutece.plugins.actes.modules.fast.service.ack.FastAckWatcher;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastHistogram;
+
+/**
+ * Test de charge de longue durée : des transmissions sont soumises à {@link FastService} à un débit cible, le {@link FastPlatformSimulator} joue
+ * le rôle de la plate-forme FAST et les retours sont reçus par le {@link FastAckWatcher}, comme en production.
+ * <p>
+ * Les latences sont mesurées depuis l'instant auquel chaque transmission aurait dû partir selon le débit cible, et non depuis son départ effectif :
+ * un ralentissement du module se traduit ainsi par une hausse des latences au lieu d'une baisse silencieuse du débit soumis.
+ * <p>
+ * Paramètres, sous la forme clé=valeur : rate (transmissions par seconde, 20), duration (secondes, 60), annexes (nombre d'annexes, 2), size
+ * (taille de chaque fichier en octets, 65536), senders (threads émetteurs, 4), latency et jitter (délai de traitement de la plate-forme en
+ * millisecondes, 200 et 100), errors (proportion d'erreurs simulées, 0.01), ack.interval (intervalle de relecture du répertoire en secondes, 1).
+ * <p>
+ * Exécution : mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=fr.paris.lutece.plugins.actes.modules.fast.service.FastLoadHarness
+ * -Dbenchmark.args="rate=50 duration=300"
+ */
+public final class FastLoadHarness
+{
+    private static final long REPORT_INTERVAL = 5000L;
+    private static final long DRAIN_TIMEOUT = 30000L;
+    private static final double MICROS_PER_MILLI = 1000d;
+    private final double _dRate;
+    private final long _lDuration;
+    private final int _nNbAnnexes;
+    private final int _nSenders;
+    private final byte [ ] _content;
+    private final FastHistogram _sendLatency = new FastHistogram( );
+    private final FastHistogram _endToEndLatency = new FastHistogram( );
+    private final Map<String, Long> _mapPending = new ConcurrentHashMap<String, Long>( );
+    private final AtomicLong _lSequence = new AtomicLong( );
+    private final LongAdder _submitted = new LongAdder( );
+    private final LongAdder _sent = new LongAdder( );
+    private final LongAdder _failed = new LongAdder( );
+    private final LongAdder _acknowledged = new LongAdder( );
+    private final LongAdder _rejected = new LongAdder( );
+    private final FastService _fastService = new FastService( );
+
+    /**
+     * Constructeur
+     *
+     * @param mapParameters
+     *            les paramètres du test
+     */
+    private FastLoadHarness( Map<String, String> mapParameters )
+    {
+        _dRate = getDouble( mapParameters, "rate", 20 );
+        _lDuration = TimeUnit.SECONDS.toMillis( (long) getDouble( mapParameters, "duration", 60 ) );
+        _nNbAnnexes = (int) getDouble( mapParameters, "annexes", 2 );
+        _nSenders = (int) getDouble( mapParameters, "senders", 4 );
+        _content = new byte [ (int) getDouble( mapParameters, "size", 65536 )];
+        new Random( 0 ).nextBytes( _content );
+    }
+
+    /**
+     * Lance le test de charge
+     *
+     * @param args
+     *            les paramètres, sous la forme clé=valeur
+     * @throws Exception
+     *             en cas d'erreur d'initialisation
+     */
+    public static void main( String [ ] args ) throws Exception
+    {
+        Map<String, String> mapParameters = new HashMap<String, String>( );
+
+        for ( String strArg : args )
+        {
+            int nSeparator = strArg.indexOf( '=' );
+
+            if ( nSeparator > 0 )
+            {
+                mapParameters.put( strArg.substring( 0, nSeparator ), strArg.substring( nSeparator + 1 ) );
+            }
+        }
+
+        Properties overrides = new Properties( );
+        overrides.setProperty( FastConfiguration.PROPERTY_ACK_ENABLED, Boolean.TRUE.toString( ) );
+        overrides.setProperty( FastConfiguration.PROPERTY_ACK_POLL_INTERVAL, String.valueOf( (long) getDouble( mapParameters, "ack.interval", 1 ) ) );
+
+        FastBenchmarkEnvironment environment = new FastBenchmarkEnvironment( overrides );
+        FastPlatformSimulator simulator = new FastPlatformSimulator( environment.getFastDirectory( ), (long) getDouble( mapParameters, "latency", 200 ),
+                (long) getDouble( mapParameters, "jitter", 100 ), getDouble( mapParameters, "errors", 0.01 ), 4, true );
+        FastLoadHarness harness = new FastLoadHarness( mapParameters );
+        FastAckWatcher watcher = FastAckWatcher.getInstance( );
+
+        try
+        {
+            simulator.start( );
+            watcher.addListener( harness::onAcknowledgement );
+            watcher.start( FastConfigurationService.getInstance( ).getConfiguration( ) );
+            harness.run( );
+            harness.report( simulator );
+        }
+        finally
+        {
+            watcher.stop( );
+            simulator.stop( );
+            environment.destroy( );
+        }
+    }
+
+    /**
+     * Soumet les transmissions au débit cible pendant la durée du test, puis attend les retours encore attendus
+     *
+     * @throws InterruptedException
+     *             InterruptedException
+     */
+    private void run( ) throws InterruptedException
+    {
+        ExecutorService senders = Executors.newFixedThreadPool( _nSenders );
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor( );
+        long lPeriod = (long) ( TimeUnit.SECONDS.toNanos( 1 ) / _dRate );
+        long lStart = System.nanoTime( );
+
+        System.out.println( "Actes FAST load test : " + _dRate + " transmissions/s for " + TimeUnit.MILLISECONDS.toSeconds( _lDuration ) + " s, "
+                + _nNbAnnexes + " annexes of " + _content.length + " bytes" );
+
+        ticker.scheduleAtFixedRate( ( ) -> {
+            long lIntended = lStart + ( _submitted.sum( ) * lPeriod );
+            _submitted.increment( );
+            senders.execute( ( ) -> send( lIntended ) );
+        }, 0, lPeriod, TimeUnit.NANOSECONDS );
+
+        long lEnd = System.currentTimeMillis( ) + _lDuration;
+
+        while ( System.currentTimeMillis( ) < lEnd )
+        {
+            Thread.sleep( Math.min( REPORT_INTERVAL, Math.max( 1, lEnd - System.currentTimeMillis( ) ) ) );
+            printProgress( );
+        }
+
+        ticker.shutdownNow( );
+        senders.shutdown( );
+        senders.awaitTermination( DRAIN_TIMEOUT, TimeUnit.MILLISECONDS );
+
+        long lDrainEnd = System.currentTimeMillis( ) + DRAIN_TIMEOUT;
+
+        while ( !_mapPending.isEmpty( ) && ( System.currentTimeMillis( ) < lDrainEnd ) )
+        {
+            Thread.sleep( 100 );
+        }
+    }
+
+    /**
+     * Transmet un acte
+     *
+     * @param lIntended
+     *            l'instant prévu de la transmission, selon {@link System#nanoTime()}
+     */
+    private void send( long lIntended )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        ActeSubmission submission = new ActeSubmission( );
+        submission.setNumeroDeliberation( "ODS" + _lSequence.incrementAndGet( ) );
+        submission.setDeliberationFinale( PayloadSource.fromBytes( _content ) );
+
+        for ( int i = 0; i < _nNbAnnexes; i++ )
+        {
+            submission.addAnnexe( PayloadSource.fromBytes( _content ) );
+        }
+
+        submission.setObjet( "Subvention à l'association des riverains du quartier" );
+        submission.setCodeMatiere1( 1 );
+        submission.setCodeMatiere2( 2 );
+        submission.setMunicipal( true );
+        submission.setDateDecision( new Timestamp( System.currentTimeMillis( ) ) );
+
+        // Le nom est connu avant le dépôt, le retour pouvant être reçu avant la fin de sendActe
+        String strName = configuration.getPackageNaming( )
+                .newTransmission( configuration.getProfile( true ), submission.getNumeroDeliberation( ), submission.getDateDecision( ) ).getName( );
+        _mapPending.put( strName, lIntended );
+
+        try
+        {
+            if ( _fastService.sendActe( submission ) )
+            {
+                _sent.increment( );
+                _sendLatency.record( TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - lIntended ) );
+
+                return;
+            }
+        }
+        catch( IOException | RuntimeException e )
+        {
+            System.err.println( "Actes FAST load test : " + strName + " failed : " + e.getMessage( ) );
+        }
+
+        _failed.increment( );
+        _mapPending.remove( strName );
+    }
+
+    /**
+     * Enregistre la latence de bout en bout d'un paquet lorsque son retour est reçu
+     *
+     * @param acknowledgement
+     *            le retour
+     */
+    private void onAcknowledgement( FastAcknowledgement acknowledgement )
+    {
+        Long lIntended = _mapPending.remove( acknowledgement.getPackageName( ) );
+
+        if ( lIntended == null )
+        {
+            return;
+        }
+
+        _endToEndLatency.record( TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - lIntended ) );
+
+        if ( acknowledgement.getStatus( ) == FastAcknowledgement.Status.ACKNOWLEDGED )
+        {
+            _acknowledged.increment( );
+        }
+        else if ( acknowledgement.getStatus( ) == FastAcknowledgement.Status.REJECTED )
+        {
+            _rejected.increment( );
+        }
+    }
+
+    /**
+     * Affiche l'avancement du test
+     */
+    private void printProgress( )
+    {
+        System.out.println( String.format( "  submitted %d, sent %d, failed %d, acknowledged %d, rejected %d, pending %d, end-to-end p99 %.1f ms",
+                _submitted.sum( ), _sent.sum( ), _failed.sum( ), _acknowledged.sum( ), _rejected.sum( ), _mapPending.size( ),
+                _endToEndLatency.getPercentile( 99 ) / MICROS_PER_MILLI ) );
+    }
+
+    /**
+     * Affiche le rapport final
+     *
+     * @param simulator
+     *            le simulateur de la plate-forme
+     */
+    private void report( FastPlatformSimulator simulator )
+    {
+        double dSeconds = _lDuration / MICROS_PER_MILLI;
+
+        System.out.println( "Actes FAST load test report" );
+        System.out.println( String.format( "  throughput    : %.1f sent/s, %.1f acknowledged/s (target %.1f/s)", _sent.sum( ) / dSeconds,
+                _acknowledged.sum( ) / dSeconds, _dRate ) );
+        System.out.println( String.format( "  packages      : %d sent, %d failed, %d acknowledged, %d rejected, %d without return", _sent.sum( ),
+                _failed.sum( ), _acknowledged.sum( ), _rejected.sum( ), _mapPending.size( ) ) );
+        System.out.println( "  send          : " + format( _sendLatency ) );
+        System.out.println( "  end-to-end    : " + format( _endToEndLatency ) );
+        System.out.println( String.format( "  platform      : %d received, %d acknowledged, %d invalid, %d simulated errors", simulator.getReceivedCount( ),
+                simulator.getAcknowledgedCount( ), simulator.getInvalidCount( ), simulator.getErrorCount( ) ) );
+
+        for ( String strError : simulator.getValidationErrors( ) )
+        {
+            System.out.println( "    invalid package " + strError );
+        }
+    }
+
+    /**
+     * Met en forme les percentiles d'un histogramme
+     *
+     * @param histogram
+     *            l'histogramme, en microsecondes
+     * @return les percentiles en millisecondes
+     */
+    private static String format( FastHistogram histogram )
+    {
+        return String.format( "p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms (%d samples)", histogram.getPercentile( 50 ) / MICROS_PER_MILLI,
+                histogram.getPercentile( 95 ) / MICROS_PER_MILLI, histogram.getPercentile( 99 ) / MICROS_PER_MILLI, histogram.getMax( ) / MICROS_PER_MILLI,
+                histogram.getCount( ) );
+    }
+
+    /**
+     * Retourne la valeur numérique d'un paramètre
+     *
+     * @param mapParameters
+     *            les paramètres
+     * @param strKey
+     *            le nom du paramètre
+     * @param dDefault
+     *            la valeur par défaut
+     * @return la valeur
+     */
+    private static double getDouble( Map<String, String> mapParameters, String strKey, double dDefault )
+    {
+        String strValue = mapParameters.get( strKey );
+
+        return ( strValue != null ) ? Double.parseDouble( strValue.trim( ) ) : dDefault;
+    }
+}
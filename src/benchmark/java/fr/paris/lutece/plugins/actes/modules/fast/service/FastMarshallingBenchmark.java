@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.gouv.interieur.actes_v1.Annulation;
+import fr.gouv.interieur.actes_v1.DonneesActe;
+import fr.gouv.interieur.actes_v1.DonneesActe.Annexes;
+import fr.gouv.interieur.actes_v1.FichierSigne;
+import fr.paris.lutece.plugins.actes.business.Acte;
+import fr.paris.lutece.plugins.actes.modules.fast.service.xml.FastJaxbService;
+
+/**
+ * Mesure de la génération du XML métier d'un acte et d'une annulation
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class FastMarshallingBenchmark
+{
+    private static final String ID_ACTE = "075-217500016-20090707-ODS000000000074-DE";
+
+    /** Nombre d'annexes de l'acte */
+    @Param( {
+            "0", "10", "100"
+    } )
+    public int _nNbAnnexes;
+    private FastBenchmarkEnvironment _environment;
+    private Acte _acte;
+    private Annulation _annulation;
+
+    /**
+     * Prépare l'environnement et les documents
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _environment = new FastBenchmarkEnvironment( );
+
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        _acte = new Acte( );
+        _acte.setCodeNatureActe( configuration.getTypeNum( ) );
+        _acte.setObjet( configuration.getSanitizer( ).sanitizeObjet( "Subvention à l'association des riverains du quartier" ) );
+        _acte.setNumeroInterne( "ODS000000000074" );
+        _acte.setClassificationDateVersion( configuration.getClassificationDate( ) );
+        _acte.setDate( new GregorianCalendar( ) );
+
+        DonneesActe.CodeMatiere1 cm1 = new DonneesActe.CodeMatiere1( );
+        cm1.setCodeMatiere( 1 );
+        _acte.setCodeMatiere1( cm1 );
+
+        DonneesActe.CodeMatiere2 cm2 = new DonneesActe.CodeMatiere2( );
+        cm2.setCodeMatiere( 2 );
+        _acte.setCodeMatiere2( cm2 );
+
+        FichierSigne fichier = new FichierSigne( );
+        fichier.setNomFichier( ID_ACTE + "-1-1_1.pdf" );
+        _acte.setDocument( fichier );
+
+        Annexes annexes = new Annexes( );
+
+        for ( int i = 0; i < _nNbAnnexes; i++ )
+        {
+            FichierSigne fichierAnnexe = new FichierSigne( );
+            fichierAnnexe.setNomFichier( ID_ACTE + "-1-1_" + ( i + 2 ) + ".pdf" );
+            annexes.getAnnexe( ).add( fichierAnnexe );
+        }
+
+        annexes.setNombre( _nNbAnnexes );
+        _acte.setAnnexes( annexes );
+
+        _annulation = new Annulation( );
+        _annulation.setIDActe( ID_ACTE );
+    }
+
+    /**
+     * Supprime l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @TearDown
+    public void tearDown( ) throws IOException
+    {
+        _environment.destroy( );
+    }
+
+    /**
+     * XML métier d'un acte
+     *
+     * @return le XML
+     */
+    @Benchmark
+    public String acteXml( )
+    {
+        return _acte.getXML( );
+    }
+
+    /**
+     * XML métier d'une annulation
+     *
+     * @return le XML
+     * @throws JAXBException
+     *             JAXBException
+     */
+    @Benchmark
+    public String annulationXml( ) throws JAXBException
+    {
+        StringWriter writer = new StringWriter( );
+        FastJaxbService.getInstance( ).marshal( _annulation, writer );
+
+        return writer.toString( );
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+
+/**
+ * Mesure de bout en bout de la préparation et du dépôt d'un paquet dans le répertoire FAST
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class FastPackagingBenchmark
+{
+    private static final int TAILLE_DELIBERATION = 256 * 1024;
+
+    /** Nombre d'annexes de l'acte */
+    @Param( {
+            "0", "10", "100"
+    } )
+    public int _nNbAnnexes;
+
+    /** Taille de chaque annexe en octets */
+    @Param( {
+            "16384", "1048576"
+    } )
+    public int _nTailleAnnexe;
+    private FastBenchmarkEnvironment _environment;
+    private FastService _fastService;
+    private byte [ ] _deliberationFinale;
+    private byte [ ] _annexe;
+    private long _lSequence;
+
+    /**
+     * Prépare l'environnement et le contenu des fichiers
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _environment = new FastBenchmarkEnvironment( );
+        _fastService = new FastService( );
+
+        Random random = new Random( 0 );
+        _deliberationFinale = new byte [ TAILLE_DELIBERATION];
+        random.nextBytes( _deliberationFinale );
+        _annexe = new byte [ _nTailleAnnexe];
+        random.nextBytes( _annexe );
+    }
+
+    /**
+     * Vide le répertoire FAST après chaque paquet : avec 100 annexes d'1 Mo, une itération suffirait à remplir le tmpfs. Le coût de ce nettoyage
+     * n'est pas compté, chaque invocation durant plusieurs millisecondes.
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @TearDown( Level.Invocation )
+    public void cleanFastDirectory( ) throws IOException
+    {
+        _environment.cleanFastDirectory( );
+    }
+
+    /**
+     * Supprime l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @TearDown
+    public void tearDown( ) throws IOException
+    {
+        _environment.destroy( );
+    }
+
+    /**
+     * Transmission d'un acte
+     *
+     * @return true si la transmission s'est bien déroulée
+     * @throws IOException
+     *             IOException
+     */
+    @Benchmark
+    public boolean sendActe( ) throws IOException
+    {
+        ActeSubmission submission = new ActeSubmission( );
+        submission.setNumeroDeliberation( nextNumeroDeliberation( ) );
+        submission.setDeliberationFinale( PayloadSource.fromBytes( _deliberationFinale ) );
+
+        for ( int i = 0; i < _nNbAnnexes; i++ )
+        {
+            submission.addAnnexe( PayloadSource.fromBytes( _annexe ) );
+        }
+
+        submission.setObjet( "Subvention à l'association des riverains du quartier" );
+        submission.setCodeMatiere1( 1 );
+        submission.setCodeMatiere2( 2 );
+        submission.setMunicipal( true );
+        submission.setDateDecision( new Timestamp( System.currentTimeMillis( ) ) );
+
+        return _fastService.sendActe( submission );
+    }
+
+    /**
+     * Retourne un numéro de délibération unique, pour que chaque invocation produise un nouveau paquet
+     *
+     * @return le numéro de délibération
+     */
+    private String nextNumeroDeliberation( )
+    {
+        return "ODS" + ( ++_lSequence );
+    }
+}
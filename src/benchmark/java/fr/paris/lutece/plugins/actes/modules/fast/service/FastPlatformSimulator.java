@@ -0,0 +1,632 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastDigest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+
+/**
+ * Simulateur local de la plate-forme FAST, pour les tests de charge. Il surveille le répertoire de dépôt et prend en charge chaque paquet dès
+ * l'apparition de son fichier témoin .OK.
+ * <p>
+ * Après un délai de traitement configurable, le paquet est contrôlé : fichier métier XML bien formé (Acte ou Annulation) dont les pièces jointes sont
+ * présentes, à commencer par la délibération finale, enveloppe .ws qui désigne ce fichier métier, et empreintes du manifeste lorsqu'il est déposé. Le
+ * simulateur dépose ensuite un fichier retour : .ACK si le paquet est accepté, .KO si le contrôle échoue, .ERR pour une erreur de la plate-forme
+ * simulée selon le taux configuré. Comme la plate-forme réelle, il peut consommer le paquet, pour que le répertoire ne grossisse pas pendant un test
+ * de longue durée.
+ */
+final class FastPlatformSimulator
+{
+    /** Suffixe du fichier retour d'un paquet accepté */
+    static final String SUFFIX_ACKNOWLEDGED = ".ACK";
+
+    /** Suffixe du fichier retour d'un paquet invalide */
+    static final String SUFFIX_INVALID = ".KO";
+
+    /** Suffixe du fichier retour d'une erreur de la plate-forme */
+    static final String SUFFIX_ERROR = ".ERR";
+    private static final String EXTENSION_OK = ".OK";
+    private static final String THREAD_NAME = "fast-simulator";
+    private static final String ELEMENT_ACTE = "Acte";
+    private static final String ELEMENT_ANNULATION = "Annulation";
+    private static final String ELEMENT_NOM_FICHIER = "NomFichier";
+    private static final String ATTRIBUTE_ID_ACTE = "IDActe";
+    private static final String ELEMENT_WS_FICHIER = "fichierACTES";
+    private static final String ELEMENT_WS_SIREN = "SIREN";
+    private static final String MANIFEST_SEPARATOR = "  ";
+    private static final String MESSAGE_ERROR = "Simulated platform error";
+    private static final long SCAN_INTERVAL = 1000L;
+    private static final int MAX_ERRORS_KEPT = 20;
+    private final Path _directory;
+    private final long _lLatency;
+    private final long _lJitter;
+    private final double _dErrorRate;
+    private final boolean _bConsume;
+    private final ScheduledExecutorService _executor;
+    private final Set<String> _setReceived = ConcurrentHashMap.newKeySet( );
+    private final LongAdder _acknowledged = new LongAdder( );
+    private final LongAdder _invalid = new LongAdder( );
+    private final LongAdder _errors = new LongAdder( );
+    private final List<String> _listValidationErrors = Collections.synchronizedList( new ArrayList<String>( ) );
+    private final DocumentBuilderFactory _factory;
+    private volatile Thread _thread;
+    private WatchService _watchService;
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire de dépôt FAST
+     * @param lLatency
+     *            le délai de traitement d'un paquet, en millisecondes
+     * @param lJitter
+     *            la variation aléatoire ajoutée au délai, en millisecondes
+     * @param dErrorRate
+     *            la proportion de paquets valides pour lesquels la plate-forme simule une erreur, entre 0 et 1
+     * @param nWorkers
+     *            le nombre de paquets traités simultanément
+     * @param bConsume
+     *            true pour supprimer le paquet une fois traité
+     */
+    FastPlatformSimulator( Path directory, long lLatency, long lJitter, double dErrorRate, int nWorkers, boolean bConsume )
+    {
+        _directory = directory;
+        _lLatency = lLatency;
+        _lJitter = lJitter;
+        _dErrorRate = dErrorRate;
+        _bConsume = bConsume;
+        _executor = Executors.newScheduledThreadPool( nWorkers, runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+        _factory = DocumentBuilderFactory.newInstance( );
+        _factory.setNamespaceAware( true );
+    }
+
+    /**
+     * Démarre la surveillance du répertoire de dépôt. Les paquets déjà présents sont pris en charge.
+     *
+     * @throws IOException
+     *             IOException
+     */
+    void start( ) throws IOException
+    {
+        _watchService = _directory.getFileSystem( ).newWatchService( );
+        _directory.register( _watchService, StandardWatchEventKinds.ENTRY_CREATE );
+
+        Thread thread = new Thread( this::run, THREAD_NAME );
+        thread.setDaemon( true );
+        _thread = thread;
+        thread.start( );
+        scan( );
+    }
+
+    /**
+     * Arrête la surveillance et les traitements en cours
+     *
+     * @throws IOException
+     *             IOException
+     */
+    void stop( ) throws IOException
+    {
+        _thread = null;
+        _watchService.close( );
+        _executor.shutdownNow( );
+    }
+
+    /**
+     * Retourne le nombre de paquets reçus
+     *
+     * @return le nombre de paquets
+     */
+    long getReceivedCount( )
+    {
+        return _setReceived.size( );
+    }
+
+    /**
+     * Retourne le nombre de paquets acceptés
+     *
+     * @return le nombre de paquets
+     */
+    long getAcknowledgedCount( )
+    {
+        return _acknowledged.sum( );
+    }
+
+    /**
+     * Retourne le nombre de paquets refusés par le contrôle
+     *
+     * @return le nombre de paquets
+     */
+    long getInvalidCount( )
+    {
+        return _invalid.sum( );
+    }
+
+    /**
+     * Retourne le nombre d'erreurs simulées
+     *
+     * @return le nombre d'erreurs
+     */
+    long getErrorCount( )
+    {
+        return _errors.sum( );
+    }
+
+    /**
+     * Retourne les premières erreurs de contrôle
+     *
+     * @return les messages d'erreur
+     */
+    List<String> getValidationErrors( )
+    {
+        synchronized( _listValidationErrors )
+        {
+            return new ArrayList<String>( _listValidationErrors );
+        }
+    }
+
+    /**
+     * Boucle de surveillance. Le répertoire est aussi relu périodiquement, au cas où des événements seraient perdus.
+     */
+    private void run( )
+    {
+        long lLastScan = System.currentTimeMillis( );
+
+        while ( _thread == Thread.currentThread( ) )
+        {
+            try
+            {
+                WatchKey key = _watchService.poll( SCAN_INTERVAL, TimeUnit.MILLISECONDS );
+
+                if ( key != null )
+                {
+                    for ( WatchEvent<?> event : key.pollEvents( ) )
+                    {
+                        if ( event.context( ) instanceof Path )
+                        {
+                            onFile( (Path) event.context( ) );
+                        }
+                    }
+
+                    key.reset( );
+                }
+
+                if ( System.currentTimeMillis( ) - lLastScan >= SCAN_INTERVAL )
+                {
+                    lLastScan = System.currentTimeMillis( );
+                    scan( );
+                }
+            }
+            catch( InterruptedException | ClosedWatchServiceException e )
+            {
+                return;
+            }
+            catch( IOException e )
+            {
+                System.err.println( "FAST simulator : unable to scan " + _directory + " : " + e.getMessage( ) );
+            }
+        }
+    }
+
+    /**
+     * Relit le répertoire de dépôt
+     *
+     * @throws IOException
+     *             IOException
+     */
+    private void scan( ) throws IOException
+    {
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( _directory, "*" + EXTENSION_OK ) )
+        {
+            for ( Path file : files )
+            {
+                onFile( file.getFileName( ) );
+            }
+        }
+    }
+
+    /**
+     * Prend en charge un paquet lorsque son fichier témoin apparaît
+     *
+     * @param fileName
+     *            le nom du fichier apparu
+     */
+    private void onFile( Path fileName )
+    {
+        String strFileName = fileName.toString( );
+
+        if ( !strFileName.endsWith( EXTENSION_OK ) )
+        {
+            return;
+        }
+
+        String strName = strFileName.substring( 0, strFileName.length( ) - EXTENSION_OK.length( ) );
+
+        if ( _setReceived.add( strName ) )
+        {
+            long lDelay = _lLatency + ( ( _lJitter > 0 ) ? ThreadLocalRandom.current( ).nextLong( _lJitter + 1 ) : 0 );
+            _executor.schedule( ( ) -> process( strName ), lDelay, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Contrôle un paquet, le consomme si demandé, puis dépose son fichier retour
+     *
+     * @param strName
+     *            le nom du paquet
+     */
+    private void process( String strName )
+    {
+        try
+        {
+            String strError = validate( strName );
+            String strSuffix;
+
+            if ( strError != null )
+            {
+                strSuffix = SUFFIX_INVALID;
+                _invalid.increment( );
+
+                if ( _listValidationErrors.size( ) < MAX_ERRORS_KEPT )
+                {
+                    _listValidationErrors.add( strName + " : " + strError );
+                }
+            }
+            else if ( ThreadLocalRandom.current( ).nextDouble( ) < _dErrorRate )
+            {
+                strSuffix = SUFFIX_ERROR;
+                strError = MESSAGE_ERROR;
+                _errors.increment( );
+            }
+            else
+            {
+                strSuffix = SUFFIX_ACKNOWLEDGED;
+                _acknowledged.increment( );
+            }
+
+            if ( _bConsume )
+            {
+                consume( strName );
+            }
+
+            String strContent = ( strError != null ) ? strError : strName;
+            Files.write( _directory.resolve( strName + strSuffix ), strContent.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            System.err.println( "FAST simulator : error processing " + strName + " : " + e );
+        }
+    }
+
+    /**
+     * Contrôle le contenu d'un paquet
+     *
+     * @param strName
+     *            le nom du paquet
+     * @return le motif du refus, ou null si le paquet est valide
+     * @throws IOException
+     *             IOException
+     */
+    private String validate( String strName ) throws IOException
+    {
+        Path packageDirectory = _directory.resolve( strName );
+
+        if ( !Files.isDirectory( packageDirectory ) )
+        {
+            return "package directory missing";
+        }
+
+        String strMetierFileName = strName + FastPackage.EXTENSION_XML;
+        Path metier = packageDirectory.resolve( strMetierFileName );
+        Path envelope = packageDirectory.resolve( strName + FastPackage.EXTENSION_WS );
+
+        if ( !Files.isRegularFile( metier ) || !Files.isRegularFile( envelope ) )
+        {
+            return "metier XML or .ws envelope missing";
+        }
+
+        try
+        {
+            DocumentBuilder builder = newDocumentBuilder( );
+            String strError = validateMetier( builder.parse( metier.toFile( ) ).getDocumentElement( ), packageDirectory, strName );
+
+            if ( strError == null )
+            {
+                strError = validateEnvelope( builder.parse( envelope.toFile( ) ).getDocumentElement( ), strMetierFileName );
+            }
+
+            if ( strError == null )
+            {
+                strError = validateManifest( strName );
+            }
+
+            return strError;
+        }
+        catch( SAXException e )
+        {
+            return "malformed XML : " + e.getMessage( );
+        }
+    }
+
+    /**
+     * Contrôle le fichier métier
+     *
+     * @param root
+     *            l'élément racine du fichier métier
+     * @param packageDirectory
+     *            le répertoire du paquet
+     * @param strName
+     *            le nom du paquet
+     * @return le motif du refus, ou null
+     */
+    private static String validateMetier( Element root, Path packageDirectory, String strName )
+    {
+        if ( ELEMENT_ANNULATION.equals( root.getLocalName( ) ) )
+        {
+            String strIdActe = getAttribute( root, ATTRIBUTE_ID_ACTE );
+
+            return ( !strIdActe.isEmpty( ) && strName.startsWith( strIdActe + FastPackage.NAME_SEPARATOR ) ) ? null : "IDActe " + strIdActe
+                    + " does not match the package";
+        }
+
+        if ( !ELEMENT_ACTE.equals( root.getLocalName( ) ) )
+        {
+            return "unexpected root element " + root.getLocalName( );
+        }
+
+        String strDeliberation = strName.substring( 0, strName.lastIndexOf( FastPackage.NUMBER_SEPARATOR ) + 1 ) + FastPackage.NUMERO_DELIBERATION
+                + FastPackage.EXTENSION_PDF;
+
+        if ( !Files.isRegularFile( packageDirectory.resolve( strDeliberation ) ) )
+        {
+            return "final deliberation " + strDeliberation + " missing";
+        }
+
+        NodeList listFileNames = root.getElementsByTagNameNS( "*", ELEMENT_NOM_FICHIER );
+
+        for ( int i = 0; i < listFileNames.getLength( ); i++ )
+        {
+            String strFileName = listFileNames.item( i ).getTextContent( ).trim( );
+
+            if ( !Files.isRegularFile( packageDirectory.resolve( strFileName ) ) )
+            {
+                return "attached file " + strFileName + " missing";
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Contrôle l'enveloppe .ws
+     *
+     * @param root
+     *            l'élément racine de l'enveloppe
+     * @param strMetierFileName
+     *            le nom attendu du fichier métier
+     * @return le motif du refus, ou null
+     */
+    private static String validateEnvelope( Element root, String strMetierFileName )
+    {
+        String strFichier = getText( root, ELEMENT_WS_FICHIER );
+
+        if ( !strMetierFileName.equals( strFichier ) )
+        {
+            return "envelope refers to " + strFichier + " instead of " + strMetierFileName;
+        }
+
+        return getText( root, ELEMENT_WS_SIREN ).isEmpty( ) ? "envelope without SIREN" : null;
+    }
+
+    /**
+     * Vérifie les empreintes du manifeste, s'il a été déposé
+     *
+     * @param strName
+     *            le nom du paquet
+     * @return le motif du refus, ou null
+     * @throws IOException
+     *             IOException
+     */
+    private String validateManifest( String strName ) throws IOException
+    {
+        Path manifest = _directory.resolve( strName + FastTransferEngine.EXTENSION_MANIFEST );
+
+        if ( !Files.exists( manifest ) )
+        {
+            return null;
+        }
+
+        for ( String strLine : Files.readAllLines( manifest, StandardCharsets.UTF_8 ) )
+        {
+            int nSeparator = strLine.indexOf( MANIFEST_SEPARATOR );
+
+            if ( nSeparator < 0 )
+            {
+                continue;
+            }
+
+            String strFile = strLine.substring( nSeparator + MANIFEST_SEPARATOR.length( ) );
+            MessageDigest digest = FastDigest.newDigest( );
+
+            try ( InputStream in = new DigestInputStream( Files.newInputStream( _directory.resolve( strFile ) ), digest ) )
+            {
+                byte [ ] buffer = new byte [ 8192];
+
+                while ( in.read( buffer ) != -1 )
+                {
+                    // lecture pour le calcul de l'empreinte
+                }
+            }
+
+            if ( !FastDigest.toHex( digest.digest( ) ).equals( strLine.substring( 0, nSeparator ) ) )
+            {
+                return "checksum mismatch for " + strFile;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Supprime le paquet, son fichier témoin et son manifeste
+     *
+     * @param strName
+     *            le nom du paquet
+     * @throws IOException
+     *             IOException
+     */
+    private void consume( String strName ) throws IOException
+    {
+        Path packageDirectory = _directory.resolve( strName );
+
+        if ( Files.isDirectory( packageDirectory ) )
+        {
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( packageDirectory ) )
+            {
+                for ( Path file : files )
+                {
+                    Files.delete( file );
+                }
+            }
+
+            Files.delete( packageDirectory );
+        }
+
+        Files.deleteIfExists( _directory.resolve( strName + FastTransferEngine.EXTENSION_MANIFEST ) );
+        Files.deleteIfExists( _directory.resolve( strName + EXTENSION_OK ) );
+    }
+
+    /**
+     * Crée un analyseur XML qui n'accède à aucune ressource externe
+     *
+     * @return l'analyseur
+     * @throws IOException
+     *             si l'analyseur ne peut être créé
+     */
+    private DocumentBuilder newDocumentBuilder( ) throws IOException
+    {
+        try
+        {
+            synchronized( _factory )
+            {
+                _factory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
+
+                return _factory.newDocumentBuilder( );
+            }
+        }
+        catch( ParserConfigurationException e )
+        {
+            throw new IOException( e );
+        }
+    }
+
+    /**
+     * Retourne la valeur d'un attribut, avec ou sans espace de noms
+     *
+     * @param element
+     *            l'élément
+     * @param strLocalName
+     *            le nom local de l'attribut
+     * @return la valeur, ou une chaîne vide
+     */
+    private static String getAttribute( Element element, String strLocalName )
+    {
+        for ( int i = 0; i < element.getAttributes( ).getLength( ); i++ )
+        {
+            Node attribute = element.getAttributes( ).item( i );
+
+            if ( strLocalName.equals( attribute.getLocalName( ) ) || strLocalName.equals( attribute.getNodeName( ) ) )
+            {
+                return attribute.getNodeValue( );
+            }
+        }
+
+        return "";
+    }
+
+    /**
+     * Retourne le texte du premier élément de ce nom local
+     *
+     * @param root
+     *            l'élément racine
+     * @param strLocalName
+     *            le nom local de l'élément
+     * @return le texte, ou une chaîne vide
+     */
+    private static String getText( Element root, String strLocalName )
+    {
+        NodeList list = root.getElementsByTagNameNS( "*", strLocalName );
+
+        return ( list.getLength( ) > 0 ) ? list.item( 0 ).getTextContent( ).trim( ) : "";
+    }
+}
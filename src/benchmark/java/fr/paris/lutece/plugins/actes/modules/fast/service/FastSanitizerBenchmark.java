@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Mesure du nettoyage de l'objet d'un acte
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class FastSanitizerBenchmark
+{
+    private static final String OBJET_COURT = "Subvention à l'association des riverains du quartier";
+    private static final String OBJET_DEFICIENT = "Convention d’occupation du domaine public – redevance de 1 500 € pour l’œuvre";
+
+    /** Taille de l'objet : court, avec caractères non encodables, ou plus long que la limite */
+    @Param( {
+            "court", "deficient", "long"
+    } )
+    public String _strObjetType;
+    private FastBenchmarkEnvironment _environment;
+    private FastTitleSanitizer _sanitizer;
+    private String _strObjet;
+
+    /**
+     * Prépare l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _environment = new FastBenchmarkEnvironment( );
+        _sanitizer = FastConfigurationService.getInstance( ).getConfiguration( ).getSanitizer( );
+
+        if ( "court".equals( _strObjetType ) )
+        {
+            _strObjet = OBJET_COURT;
+        }
+        else if ( "deficient".equals( _strObjetType ) )
+        {
+            _strObjet = OBJET_DEFICIENT;
+        }
+        else
+        {
+            StringBuilder sbObjet = new StringBuilder( );
+
+            while ( sbObjet.length( ) < 1000 )
+            {
+                sbObjet.append( OBJET_DEFICIENT ).append( ' ' );
+            }
+
+            _strObjet = sbObjet.toString( );
+        }
+    }
+
+    /**
+     * Supprime l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @TearDown
+    public void tearDown( ) throws IOException
+    {
+        _environment.destroy( );
+    }
+
+    /**
+     * Nettoyage de l'objet
+     *
+     * @return l'objet nettoyé
+     */
+    @Benchmark
+    public String sanitizeObjet( )
+    {
+        return _sanitizer.sanitizeObjet( _strObjet );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+
+/**
+ * Mesure de la génération de l'enveloppe .ws
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class FastWebServiceBenchmark
+{
+    private static final FastPackage PACKAGE = new FastPackage( "075-217500016-20090707-ODS000000000074-DE", "1-1" );
+    private FastBenchmarkEnvironment _environment;
+    private FastService _fastService;
+    private FastConfiguration _configuration;
+    private Path _directory;
+
+    /**
+     * Prépare l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _environment = new FastBenchmarkEnvironment( );
+        _fastService = new FastService( );
+        _configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        _directory = _environment.getFastDirectory( );
+    }
+
+    /**
+     * Supprime l'environnement
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @TearDown
+    public void tearDown( ) throws IOException
+    {
+        _environment.destroy( );
+    }
+
+    /**
+     * Enveloppe .ws d'un paquet de la ville (le fichier est réécrit à chaque invocation)
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Benchmark
+    public void enveloppe( ) throws IOException
+    {
+        _fastService.creationFichierWebService( _directory, PACKAGE, _configuration.getProfile( true ) );
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+
+/**
+ * Demande de transmission d'un acte vers FAST. Les fichiers (délibération finale et annexes) sont fournis sous forme de {@link PayloadSource}, ce qui
+ * permet de les recopier en flux sans les charger en mémoire.
+ */
+public class ActeSubmission
+{
+    private String _strNumeroDeliberation;
+    private PayloadSource _deliberationFinale;
+    private List<PayloadSource> _listAnnexes = new ArrayList<PayloadSource>( );
+    private String _strObjet;
+    private int _nCodeMatiere1;
+    private int _nCodeMatiere2;
+    private boolean _bMunicipal;
+    private String _strCollectivity;
+    private Timestamp _tsDateDecision;
+
+    /**
+     * Retourne le numero de la déliberation
+     *
+     * @return le numero de la déliberation
+     */
+    public String getNumeroDeliberation( )
+    {
+        return _strNumeroDeliberation;
+    }
+
+    /**
+     * Fixe le numero de la déliberation
+     *
+     * @param strNumeroDeliberation
+     *            le numero de la déliberation
+     */
+    public void setNumeroDeliberation( String strNumeroDeliberation )
+    {
+        _strNumeroDeliberation = strNumeroDeliberation;
+    }
+
+    /**
+     * Retourne la délibération finale
+     *
+     * @return la délibération finale
+     */
+    public PayloadSource getDeliberationFinale( )
+    {
+        return _deliberationFinale;
+    }
+
+    /**
+     * Fixe la délibération finale
+     *
+     * @param deliberationFinale
+     *            la délibération finale
+     */
+    public void setDeliberationFinale( PayloadSource deliberationFinale )
+    {
+        _deliberationFinale = deliberationFinale;
+    }
+
+    /**
+     * Retourne la liste des annexes rattachées à l'acte
+     *
+     * @return la liste des annexes
+     */
+    public List<PayloadSource> getAnnexes( )
+    {
+        return _listAnnexes;
+    }
+
+    /**
+     * Fixe la liste des annexes rattachées à l'acte
+     *
+     * @param listAnnexes
+     *            la liste des annexes
+     */
+    public void setAnnexes( List<PayloadSource> listAnnexes )
+    {
+        _listAnnexes = listAnnexes;
+    }
+
+    /**
+     * Ajoute une annexe
+     *
+     * @param annexe
+     *            l'annexe
+     */
+    public void addAnnexe( PayloadSource annexe )
+    {
+        _listAnnexes.add( annexe );
+    }
+
+    /**
+     * Retourne l'objet de l'acte
+     *
+     * @return l'objet de l'acte
+     */
+    public String getObjet( )
+    {
+        return _strObjet;
+    }
+
+    /**
+     * Fixe l'objet de l'acte
+     *
+     * @param strObjet
+     *            l'objet de l'acte
+     */
+    public void setObjet( String strObjet )
+    {
+        _strObjet = strObjet;
+    }
+
+    /**
+     * Retourne le codeMatiere 1 de l'acte
+     *
+     * @return le codeMatiere 1
+     */
+    public int getCodeMatiere1( )
+    {
+        return _nCodeMatiere1;
+    }
+
+    /**
+     * Fixe le codeMatiere 1 de l'acte
+     *
+     * @param nCodeMatiere1
+     *            le codeMatiere 1
+     */
+    public void setCodeMatiere1( int nCodeMatiere1 )
+    {
+        _nCodeMatiere1 = nCodeMatiere1;
+    }
+
+    /**
+     * Retourne le codeMatiere 2 de l'acte
+     *
+     * @return le codeMatiere 2
+     */
+    public int getCodeMatiere2( )
+    {
+        return _nCodeMatiere2;
+    }
+
+    /**
+     * Fixe le codeMatiere 2 de l'acte
+     *
+     * @param nCodeMatiere2
+     *            le codeMatiere 2
+     */
+    public void setCodeMatiere2( int nCodeMatiere2 )
+    {
+        _nCodeMatiere2 = nCodeMatiere2;
+    }
+
+    /**
+     * Retourne true si la formation conseil est MUNICIPAL
+     *
+     * @return true si la formation conseil est MUNICIPAL
+     */
+    public boolean isMunicipal( )
+    {
+        return _bMunicipal;
+    }
+
+    /**
+     * Fixe la formation conseil
+     *
+     * @param bMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     */
+    public void setMunicipal( boolean bMunicipal )
+    {
+        _bMunicipal = bMunicipal;
+    }
+
+    /**
+     * Retourne le code de la collectivité émettrice
+     *
+     * @return le code de la collectivité, ou null si elle est déterminée par la formation conseil (ville ou département)
+     */
+    public String getCollectivity( )
+    {
+        return _strCollectivity;
+    }
+
+    /**
+     * Fixe la collectivité émettrice, parmi celles configurées (actes-fast.collectivities). Elle prime sur la formation conseil.
+     *
+     * @param strCollectivity
+     *            le code de la collectivité, ou null
+     */
+    public void setCollectivity( String strCollectivity )
+    {
+        _strCollectivity = strCollectivity;
+    }
+
+    /**
+     * Retourne la date de vote/decision de l'acte
+     *
+     * @return la date de decision
+     */
+    public Timestamp getDateDecision( )
+    {
+        return _tsDateDecision;
+    }
+
+    /**
+     * Fixe la date de vote/decision de l'acte
+     *
+     * @param tsDateDecision
+     *            la date de decision
+     */
+    public void setDateDecision( Timestamp tsDateDecision )
+    {
+        _tsDateDecision = tsDateDecision;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+import java.nio.file.Path;
+
+/**
+ * Retour de la plate-forme FAST pour un paquet déposé
+ */
+public class FastAcknowledgement
+{
+    /**
+     * Statut du retour
+     */
+    public enum Status
+    {
+        /** Paquet accepté par FAST */
+        ACKNOWLEDGED,
+
+        /** Paquet rejeté par FAST */
+        REJECTED,
+
+        /** Aucun retour de FAST dans le délai configuré */
+        TIMEOUT
+    }
+
+    private final String _strPackageName;
+    private final Status _status;
+    private final Path _returnFile;
+    private final long _lSentTime;
+    private final long _lReceivedTime;
+
+    /**
+     * Constructeur
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     * @param status
+     *            le statut du retour
+     * @param returnFile
+     *            le fichier retour déposé par FAST, ou null en l'absence de retour
+     * @param lSentTime
+     *            la date de dépôt du paquet
+     * @param lReceivedTime
+     *            la date de détection du retour
+     */
+    public FastAcknowledgement( String strPackageName, Status status, Path returnFile, long lSentTime, long lReceivedTime )
+    {
+        _strPackageName = strPackageName;
+        _status = status;
+        _returnFile = returnFile;
+        _lSentTime = lSentTime;
+        _lReceivedTime = lReceivedTime;
+    }
+
+    /**
+     * Retourne le nom du paquet
+     *
+     * @return le nom du paquet
+     */
+    public String getPackageName( )
+    {
+        return _strPackageName;
+    }
+
+    /**
+     * Retourne le statut du retour
+     *
+     * @return le statut
+     */
+    public Status getStatus( )
+    {
+        return _status;
+    }
+
+    /**
+     * Retourne le fichier retour déposé par FAST
+     *
+     * @return le fichier retour, ou null en l'absence de retour (statut TIMEOUT)
+     */
+    public Path getReturnFile( )
+    {
+        return _returnFile;
+    }
+
+    /**
+     * Retourne la date de dépôt du paquet
+     *
+     * @return la date en millisecondes
+     */
+    public long getSentTime( )
+    {
+        return _lSentTime;
+    }
+
+    /**
+     * Retourne la date de détection du retour
+     *
+     * @return la date en millisecondes
+     */
+    public long getReceivedTime( )
+    {
+        return _lReceivedTime;
+    }
+}
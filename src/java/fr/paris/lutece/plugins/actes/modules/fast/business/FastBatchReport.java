@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compte rendu de la transmission d'un lot d'actes. Les résultats sont dans l'ordre des demandes.
+ */
+public class FastBatchReport
+{
+    private final List<FastSendResult> _listResults = new ArrayList<FastSendResult>( );
+    private long _lDuration;
+
+    /**
+     * Ajoute le résultat d'un acte
+     *
+     * @param result
+     *            le résultat
+     */
+    public void addResult( FastSendResult result )
+    {
+        _listResults.add( result );
+    }
+
+    /**
+     * Retourne les résultats, dans l'ordre des demandes
+     *
+     * @return les résultats
+     */
+    public List<FastSendResult> getResults( )
+    {
+        return Collections.unmodifiableList( _listResults );
+    }
+
+    /**
+     * Retourne le nombre d'actes transmis avec succès
+     *
+     * @return le nombre de succès
+     */
+    public int getSuccessCount( )
+    {
+        int nCount = 0;
+
+        for ( FastSendResult result : _listResults )
+        {
+            if ( result.isSuccess( ) )
+            {
+                nCount++;
+            }
+        }
+
+        return nCount;
+    }
+
+    /**
+     * Retourne le nombre d'actes en échec
+     *
+     * @return le nombre d'échecs
+     */
+    public int getFailureCount( )
+    {
+        return _listResults.size( ) - getSuccessCount( );
+    }
+
+    /**
+     * Retourne true si tous les actes ont été transmis
+     *
+     * @return true si tous les actes ont été transmis
+     */
+    public boolean isAllSuccessful( )
+    {
+        return getFailureCount( ) == 0;
+    }
+
+    /**
+     * Retourne la durée totale du lot
+     *
+     * @return la durée en millisecondes
+     */
+    public long getDuration( )
+    {
+        return _lDuration;
+    }
+
+    /**
+     * Fixe la durée totale du lot
+     *
+     * @param lDuration
+     *            la durée en millisecondes
+     */
+    public void setDuration( long lDuration )
+    {
+        _lDuration = lDuration;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Manifeste d'un paquet déposé dans FAST : nom, taille et empreinte SHA-256 de chaque fichier, calculées pendant leur écriture
+ */
+public class FastManifest
+{
+    private static final String SHA256SUM_SEPARATOR = "  ";
+    private static final String PATH_SEPARATOR = "/";
+    private static final String LINE_SEPARATOR = "\n";
+
+    /**
+     * Fichier du paquet
+     */
+    public static class Entry
+    {
+        private final String _strFileName;
+        private final long _lSize;
+        private final String _strSha256;
+
+        /**
+         * Constructeur
+         *
+         * @param strFileName
+         *            le nom du fichier
+         * @param lSize
+         *            la taille du fichier en octets
+         * @param strSha256
+         *            l'empreinte SHA-256 du fichier, en hexadécimal
+         */
+        public Entry( String strFileName, long lSize, String strSha256 )
+        {
+            _strFileName = strFileName;
+            _lSize = lSize;
+            _strSha256 = strSha256;
+        }
+
+        /**
+         * Retourne le nom du fichier
+         *
+         * @return le nom du fichier
+         */
+        public String getFileName( )
+        {
+            return _strFileName;
+        }
+
+        /**
+         * Retourne la taille du fichier
+         *
+         * @return la taille en octets
+         */
+        public long getSize( )
+        {
+            return _lSize;
+        }
+
+        /**
+         * Retourne l'empreinte SHA-256 du fichier
+         *
+         * @return l'empreinte en hexadécimal
+         */
+        public String getSha256( )
+        {
+            return _strSha256;
+        }
+    }
+
+    private String _strPackageName;
+    private String _strPreviousPackageName;
+    private boolean _bInProgress;
+    private final List<Entry> _listEntries = new ArrayList<Entry>( );
+
+    /**
+     * Retourne le nom du paquet, renseigné au moment du dépôt
+     *
+     * @return le nom du paquet, ou null si aucun paquet n'a été déposé
+     */
+    public String getPackageName( )
+    {
+        return _strPackageName;
+    }
+
+    /**
+     * Fixe le nom du paquet
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     */
+    public void setPackageName( String strPackageName )
+    {
+        _strPackageName = strPackageName;
+    }
+
+    /**
+     * Retourne le nom du paquet déjà déposé avec le même contenu, lorsque la transmission a été écartée comme doublon
+     *
+     * @return le nom du paquet déjà déposé, ou null
+     */
+    public String getPreviousPackageName( )
+    {
+        return _strPreviousPackageName;
+    }
+
+    /**
+     * Fixe le nom du paquet déjà déposé avec le même contenu
+     *
+     * @param strPreviousPackageName
+     *            le nom du paquet déjà déposé
+     */
+    public void setPreviousPackageName( String strPreviousPackageName )
+    {
+        _strPreviousPackageName = strPreviousPackageName;
+    }
+
+    /**
+     * Indique si la transmission a été écartée parce qu'un dépôt du même acte était déjà en cours
+     *
+     * @return true si un dépôt du même acte était en cours
+     */
+    public boolean isInProgress( )
+    {
+        return _bInProgress;
+    }
+
+    /**
+     * Indique que la transmission a été écartée parce qu'un dépôt du même acte était déjà en cours
+     *
+     * @param bInProgress
+     *            true si un dépôt du même acte était en cours
+     */
+    public void setInProgress( boolean bInProgress )
+    {
+        _bInProgress = bInProgress;
+    }
+
+    /**
+     * Ajoute un fichier au manifeste
+     *
+     * @param entry
+     *            le fichier
+     */
+    public void addEntry( Entry entry )
+    {
+        _listEntries.add( entry );
+    }
+
+    /**
+     * Retourne les fichiers du paquet, dans l'ordre de leur écriture
+     *
+     * @return la liste non modifiable des fichiers
+     */
+    public List<Entry> getEntries( )
+    {
+        return Collections.unmodifiableList( _listEntries );
+    }
+
+    /**
+     * Retourne la taille totale des fichiers du paquet
+     *
+     * @return la taille en octets
+     */
+    public long getSize( )
+    {
+        long lSize = 0;
+
+        for ( Entry entry : _listEntries )
+        {
+            lSize += entry.getSize( );
+        }
+
+        return lSize;
+    }
+
+    /**
+     * Retourne le manifeste au format de l'outil sha256sum : une ligne « empreinte  paquet/fichier » par fichier. Le manifeste déposé à côté du
+     * paquet se vérifie ainsi par sha256sum -c depuis le répertoire FAST.
+     *
+     * @return le manifeste
+     */
+    public String format( )
+    {
+        StringBuilder sbManifest = new StringBuilder( );
+
+        for ( Entry entry : _listEntries )
+        {
+            sbManifest.append( entry.getSha256( ) ).append( SHA256SUM_SEPARATOR ).append( _strPackageName ).append( PATH_SEPARATOR )
+                    .append( entry.getFileName( ) ).append( LINE_SEPARATOR );
+        }
+
+        return sbManifest.toString( );
+    }
+}
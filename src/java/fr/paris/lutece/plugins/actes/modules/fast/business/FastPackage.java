@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+/**
+ * Paquet FAST d'une transmission ou d'une annulation : identifiant de l'acte et noms des fichiers du paquet. Les noms sont de la forme
+ * Departement-Num_Siren-DateDecision-NumeroDelib-Type_Acte-Transaction_N, le fichier métier et l'enveloppe .ws portant le numéro 0.
+ */
+public final class FastPackage
+{
+    /** Séparateur des éléments du nom */
+    public static final String NAME_SEPARATOR = "-";
+
+    /** Séparateur du numéro de fichier */
+    public static final String NUMBER_SEPARATOR = "_";
+
+    /** Extension des pièces jointes */
+    public static final String EXTENSION_PDF = ".pdf";
+
+    /** Extension du fichier métier */
+    public static final String EXTENSION_XML = ".xml";
+
+    /** Extension de l'enveloppe du web service */
+    public static final String EXTENSION_WS = ".ws";
+
+    /** Numéro du fichier métier */
+    public static final int NUMERO_METIER = 0;
+
+    /** Numéro de la délibération finale */
+    public static final int NUMERO_DELIBERATION = 1;
+    private final String _strIdActe;
+    private final String _strTransaction;
+    private final String _strIndexKey;
+    private final String _strFilePrefix;
+    private final String _strName;
+
+    /**
+     * Constructeur
+     *
+     * @param strIdActe
+     *            l'identifiant de l'acte
+     * @param strTransaction
+     *            le code de transaction
+     */
+    public FastPackage( String strIdActe, String strTransaction )
+    {
+        _strIdActe = strIdActe;
+        _strTransaction = strTransaction;
+        _strIndexKey = strIdActe + NAME_SEPARATOR + strTransaction;
+        _strFilePrefix = _strIndexKey + NUMBER_SEPARATOR;
+        _strName = _strFilePrefix + NUMERO_METIER;
+    }
+
+    /**
+     * Retourne la clé d'index d'un paquet à partir de son nom
+     *
+     * @param strName
+     *            le nom du paquet
+     * @return l'identifiant de l'acte suivi du code de transaction
+     */
+    public static String toIndexKey( String strName )
+    {
+        int nIndex = strName.lastIndexOf( NUMBER_SEPARATOR );
+
+        return ( nIndex < 0 ) ? strName : strName.substring( 0, nIndex );
+    }
+
+    /**
+     * Retourne l'identifiant de l'acte
+     *
+     * @return l'identifiant de l'acte
+     */
+    public String getIdActe( )
+    {
+        return _strIdActe;
+    }
+
+    /**
+     * Retourne le code de transaction
+     *
+     * @return le code de transaction
+     */
+    public String getTransaction( )
+    {
+        return _strTransaction;
+    }
+
+    /**
+     * Retourne la clé de la transmission dans l'index des paquets déposés
+     *
+     * @return l'identifiant de l'acte suivi du code de transaction
+     */
+    public String getIndexKey( )
+    {
+        return _strIndexKey;
+    }
+
+    /**
+     * Retourne le nom du paquet, qui est aussi celui de son sous-répertoire FAST et de son fichier témoin
+     *
+     * @return le nom du paquet
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Retourne le nom du fichier métier
+     *
+     * @return le nom du fichier XML
+     */
+    public String getMetierFileName( )
+    {
+        return _strName + EXTENSION_XML;
+    }
+
+    /**
+     * Retourne le nom de l'enveloppe du web service
+     *
+     * @return le nom du fichier .ws
+     */
+    public String getEnvelopeFileName( )
+    {
+        return _strName + EXTENSION_WS;
+    }
+
+    /**
+     * Retourne le nom d'une pièce jointe
+     *
+     * @param nNumero
+     *            le numéro de la pièce jointe : {@link #NUMERO_DELIBERATION} pour la délibération finale, puis les annexes
+     * @return le nom du fichier PDF
+     */
+    public String getAttachmentFileName( int nNumero )
+    {
+        return _strFilePrefix + nNumero + EXTENSION_PDF;
+    }
+}
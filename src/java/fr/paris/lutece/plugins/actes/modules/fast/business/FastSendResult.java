@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.business;
+
+/**
+ * Résultat de la transmission d'un acte au sein d'un lot
+ */
+public class FastSendResult
+{
+    private final String _strNumeroDeliberation;
+    private final boolean _bSuccess;
+    private final String _strErrorMessage;
+    private final Throwable _error;
+    private final long _lDuration;
+    private final FastManifest _manifest;
+
+    /**
+     * Constructeur
+     *
+     * @param strNumeroDeliberation
+     *            le numero de la déliberation
+     * @param bSuccess
+     *            true si la transmission s'est bien déroulée
+     * @param strErrorMessage
+     *            le message d'erreur éventuel
+     * @param error
+     *            l'exception éventuelle
+     * @param lDuration
+     *            la durée de traitement en millisecondes
+     */
+    public FastSendResult( String strNumeroDeliberation, boolean bSuccess, String strErrorMessage, Throwable error, long lDuration )
+    {
+        this( strNumeroDeliberation, bSuccess, strErrorMessage, error, lDuration, null );
+    }
+
+    /**
+     * Constructeur
+     *
+     * @param strNumeroDeliberation
+     *            le numero de la déliberation
+     * @param bSuccess
+     *            true si la transmission s'est bien déroulée
+     * @param strErrorMessage
+     *            le message d'erreur éventuel
+     * @param error
+     *            l'exception éventuelle
+     * @param lDuration
+     *            la durée de traitement en millisecondes
+     * @param manifest
+     *            le manifeste du paquet déposé, ou null
+     */
+    public FastSendResult( String strNumeroDeliberation, boolean bSuccess, String strErrorMessage, Throwable error, long lDuration,
+            FastManifest manifest )
+    {
+        _strNumeroDeliberation = strNumeroDeliberation;
+        _bSuccess = bSuccess;
+        _strErrorMessage = strErrorMessage;
+        _error = error;
+        _lDuration = lDuration;
+        _manifest = manifest;
+    }
+
+    /**
+     * Retourne le numero de la déliberation
+     *
+     * @return le numero de la déliberation
+     */
+    public String getNumeroDeliberation( )
+    {
+        return _strNumeroDeliberation;
+    }
+
+    /**
+     * Retourne true si la transmission s'est bien déroulée
+     *
+     * @return true si la transmission s'est bien déroulée
+     */
+    public boolean isSuccess( )
+    {
+        return _bSuccess;
+    }
+
+    /**
+     * Retourne le message d'erreur
+     *
+     * @return le message d'erreur, ou null
+     */
+    public String getErrorMessage( )
+    {
+        return _strErrorMessage;
+    }
+
+    /**
+     * Retourne l'exception ayant fait échouer la transmission
+     *
+     * @return l'exception, ou null
+     */
+    public Throwable getError( )
+    {
+        return _error;
+    }
+
+    /**
+     * Retourne la durée de traitement
+     *
+     * @return la durée en millisecondes
+     */
+    public long getDuration( )
+    {
+        return _lDuration;
+    }
+
+    /**
+     * Retourne le manifeste du paquet déposé : nom, taille et empreinte de chacun de ses fichiers
+     *
+     * @return le manifeste, ou null en cas d'échec ; pour un acte déjà déposé ou en cours de dépôt, le manifeste n'a pas de nom de paquet
+     */
+    public FastManifest getManifest( )
+    {
+        return _manifest;
+    }
+
+    /**
+     * Retourne le nom du paquet déjà déposé avec le même contenu, lorsque la transmission a été écartée comme doublon
+     *
+     * @return le nom du paquet déjà déposé, ou null
+     */
+    public String getPreviousPackageName( )
+    {
+        return ( _manifest != null ) ? _manifest.getPreviousPackageName( ) : null;
+    }
+
+    /**
+     * Indique si la transmission a été écartée parce qu'un dépôt du même acte était déjà en cours. Elle n'est alors pas réussie : rien n'a été
+     * déposé.
+     *
+     * @return true si un dépôt du même acte était en cours
+     */
+    public boolean isInProgress( )
+    {
+        return ( _manifest != null ) && _manifest.isInProgress( );
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Exécuteur des tâches de préparation des paquets FAST. Le nombre de paquets préparés simultanément est borné pour l'ensemble de l'application,
+ * quel que soit le nombre de lots en cours, afin de ne pas saturer le répertoire FAST. Les threads virtuels sont utilisés lorsque la JVM les
+ * propose et que la configuration le demande.
+ */
+public final class FastBatchExecutor
+{
+    private static final String THREAD_NAME_PREFIX = "actes-fast-";
+    private static volatile FastBatchExecutor _singleton;
+    private final ExecutorService _executor;
+    private final Semaphore _permits;
+
+    /**
+     * Constructeur
+     *
+     * @param configuration
+     *            la configuration
+     */
+    private FastBatchExecutor( FastConfiguration configuration )
+    {
+        int nMaxConcurrent = configuration.getBatchMaxConcurrent( );
+        ExecutorService executor = null;
+
+        if ( configuration.isBatchVirtualThreads( ) )
+        {
+            executor = newVirtualThreadExecutor( );
+        }
+
+        if ( executor == null )
+        {
+            executor = Executors.newFixedThreadPool( nMaxConcurrent, new DaemonThreadFactory( ) );
+        }
+
+        _executor = executor;
+        _permits = new Semaphore( nMaxConcurrent, true );
+    }
+
+    /**
+     * Retourne l'instance unique, construite à partir de la configuration courante au premier appel
+     *
+     * @return l'instance unique
+     */
+    public static FastBatchExecutor getInstance( )
+    {
+        FastBatchExecutor executor = _singleton;
+
+        if ( executor == null )
+        {
+            synchronized( FastBatchExecutor.class )
+            {
+                executor = _singleton;
+
+                if ( executor == null )
+                {
+                    executor = new FastBatchExecutor( FastConfigurationService.getInstance( ).getConfiguration( ) );
+                    _singleton = executor;
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Soumet une tâche, exécutée dès qu'une place se libère
+     *
+     * @param <T>
+     *            le type du résultat
+     * @param task
+     *            la tâche
+     * @return le résultat à venir
+     */
+    public <T> Future<T> submit( final Callable<T> task )
+    {
+        return _executor.submit( ( ) -> {
+            _permits.acquire( );
+
+            try
+            {
+                return task.call( );
+            }
+            finally
+            {
+                _permits.release( );
+            }
+        } );
+    }
+
+    /**
+     * Crée un exécuteur à threads virtuels si la JVM le permet (Java 21+)
+     *
+     * @return l'exécuteur, ou null
+     */
+    private static ExecutorService newVirtualThreadExecutor( )
+    {
+        try
+        {
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return (ExecutorService) method.invoke( null );
+        }
+        catch( ReflectiveOperationException e )
+        {
+            AppLogService.info( "Actes FAST : virtual threads are not available, using a platform thread pool" );
+
+            return null;
+        }
+    }
+
+    /**
+     * Fabrique de threads démons nommés
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _nCount = new AtomicInteger( );
+
+        @Override
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + _nCount.incrementAndGet( ) );
+            thread.setDaemon( true );
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.nio.file.Path;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+import fr.paris.lutece.plugins.actes.modules.fast.service.xml.FastEnvelopeTemplate;
+
+/**
+ * Profil d'une collectivité émettrice : identifiants utilisés pour nommer les paquets et construire l'enveloppe .ws, répertoire de dépôt FAST et
+ * nombre de paquets de la collectivité préparés simultanément
+ */
+public final class FastCollectivityProfile
+{
+    /** Code du profil ville */
+    public static final String CODE_VILLE = "ville";
+
+    /** Code du profil département */
+    public static final String CODE_DEPT = "dept";
+    private final String _strCode;
+    private final String _strSiren;
+    private final String _strDepartement;
+    private final String _strNamePrefix;
+    private final String _strDNUtilisateur;
+    private final FastEnvelopeTemplate _envelopeTemplate;
+    private final Path _fastDirectory;
+    private final int _nMaxConcurrent;
+
+    /**
+     * Constructeur
+     *
+     * @param strCode
+     *            le code du profil
+     * @param strSiren
+     *            le numéro SIREN de la collectivité
+     * @param strDepartement
+     *            le numéro de département
+     * @param strDNUtilisateur
+     *            le DN de l'utilisateur du web service
+     * @param strTraitement
+     *            le type de traitement du web service
+     * @param fastDirectory
+     *            le répertoire de dépôt FAST de la collectivité
+     * @param nMaxConcurrent
+     *            le nombre maximum de paquets de la collectivité préparés simultanément
+     */
+    public FastCollectivityProfile( String strCode, String strSiren, String strDepartement, String strDNUtilisateur, String strTraitement,
+            Path fastDirectory, int nMaxConcurrent )
+    {
+        _strCode = strCode;
+        _strSiren = strSiren;
+        _strDepartement = strDepartement;
+        _strNamePrefix = strDepartement + FastPackage.NAME_SEPARATOR + strSiren + FastPackage.NAME_SEPARATOR;
+        _strDNUtilisateur = strDNUtilisateur;
+        _envelopeTemplate = new FastEnvelopeTemplate( strTraitement, strDNUtilisateur, strSiren );
+        _fastDirectory = fastDirectory;
+        _nMaxConcurrent = nMaxConcurrent;
+    }
+
+    /**
+     * Retourne le code du profil
+     *
+     * @return le code du profil
+     */
+    public String getCode( )
+    {
+        return _strCode;
+    }
+
+    /**
+     * Retourne le numéro SIREN de la collectivité
+     *
+     * @return le numéro SIREN
+     */
+    public String getSiren( )
+    {
+        return _strSiren;
+    }
+
+    /**
+     * Retourne le numéro de département de la collectivité
+     *
+     * @return le département
+     */
+    public String getDepartement( )
+    {
+        return _strDepartement;
+    }
+
+    /**
+     * Retourne le préfixe des noms de paquet de la collectivité
+     *
+     * @return le préfixe Departement-Num_Siren-
+     */
+    public String getNamePrefix( )
+    {
+        return _strNamePrefix;
+    }
+
+    /**
+     * Retourne le DN de l'utilisateur du web service
+     *
+     * @return le DN de l'utilisateur
+     */
+    public String getDNUtilisateur( )
+    {
+        return _strDNUtilisateur;
+    }
+
+    /**
+     * Retourne le modèle de l'enveloppe .ws de la collectivité
+     *
+     * @return le modèle de l'enveloppe
+     */
+    public FastEnvelopeTemplate getEnvelopeTemplate( )
+    {
+        return _envelopeTemplate;
+    }
+
+    /**
+     * Retourne le répertoire de dépôt FAST de la collectivité
+     *
+     * @return le répertoire FAST
+     */
+    public Path getFastDirectory( )
+    {
+        return _fastDirectory;
+    }
+
+    /**
+     * Retourne le nombre maximum de paquets de la collectivité préparés simultanément
+     *
+     * @return le nombre maximum de paquets
+     */
+    public int getMaxConcurrent( )
+    {
+        return _nMaxConcurrent;
+    }
+}
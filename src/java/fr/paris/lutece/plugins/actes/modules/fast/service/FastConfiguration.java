@@ -0,0 +1,1092 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.queue.FastRejectionPolicy;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.util.date.DateUtil;
+
+/**
+ * Configuration du module FAST, lue et validée une seule fois. Les instances sont immuables : un rechargement des propriétés produit une nouvelle
+ * instance (voir {@link FastConfigurationService}).
+ */
+public final class FastConfiguration
+{
+    public static final String PROPERTY_ACTE_DATE_CLASSIFICATION = "actes-fast.date.classification";
+    public static final String PROPERTY_ACTE_SIREN_VILLE = "actes-fast.odsville.siren";
+    public static final String PROPERTY_ACTE_SIREN_DEPT = "actes-fast.odsdept.siren";
+    public static final String PROPERTY_ACTE_DIR_PATH = "actes-fast.tmp.path.directory";
+    public static final String PROPERTY_ACTE_FAST_DIR_PATH = "actes-fast.fast.path.directory";
+    public static final String PROPERTY_ACTE_DEPT = "actes-fast.departement";
+    public static final String PROPERTY_ACTE_TRANSACTION_TRANSMISSION = "actes-fast.transaction.transmission";
+    public static final String PROPERTY_ACTE_TRANSACTION_ANNULATION = "actes-fast.transaction.annulation";
+    public static final String PROPERTY_ACTE_WS_TRAITEMENT = "actes-fast.ws.traitement";
+    public static final String PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE = "actes-fast.ws.odsville.dnutilisateur";
+    public static final String PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT = "actes-fast.ws.odsdept.dnutilisateur";
+    public static final String PROPERTY_ACTE_TYPE_LIBELLE = "actes-fast.type.libelle";
+    public static final String PROPERTY_ACTE_TYPE_NUM = "actes-fast.type.num";
+    public static final String PROPERTY_NB_CARACTERES_MAX = "actes-fast.nb.caracteres.max";
+    public static final String PROPERTY_CARACTERES_DEFICIENT = "actes-fast.caracteres.deficient";
+    public static final String PROPERTY_XML_ENCODING = "actes-fast.xml.encoding";
+    public static final String PROPERTY_JAXB_POOL_SIZE = "actes-fast.jaxb.marshaller.pool.size";
+    public static final String PROPERTY_BATCH_MAX_CONCURRENT = "actes-fast.batch.max.concurrent";
+    public static final String PROPERTY_BATCH_VIRTUAL_THREADS = "actes-fast.batch.virtual.threads";
+    public static final String PROPERTY_JOURNAL_DIR_PATH = "actes-fast.journal.path.directory";
+    public static final String PROPERTY_JOURNAL_COMPACTION_SIZE = "actes-fast.journal.compaction.size";
+    public static final String PROPERTY_JOURNAL_ORPHAN_MAX_AGE = "actes-fast.journal.orphan.max.age";
+    public static final String PROPERTY_INDEX_ENABLED = "actes-fast.index.enabled";
+    public static final String PROPERTY_INDEX_DIR_PATH = "actes-fast.index.path.directory";
+    public static final String PROPERTY_ACK_ENABLED = "actes-fast.ack.enabled";
+    public static final String PROPERTY_ACK_SUFFIXES_ACKNOWLEDGED = "actes-fast.ack.suffixes.acknowledged";
+    public static final String PROPERTY_ACK_SUFFIXES_REJECTED = "actes-fast.ack.suffixes.rejected";
+    public static final String PROPERTY_ACK_POLL_INTERVAL = "actes-fast.ack.poll.interval";
+    public static final String PROPERTY_ACK_MTIME_WINDOW = "actes-fast.ack.mtime.window";
+    public static final String PROPERTY_ACK_TIMEOUT = "actes-fast.ack.timeout";
+    public static final String PROPERTY_ASYNC_ENABLED = "actes-fast.async.enabled";
+    public static final String PROPERTY_ASYNC_QUEUE_CAPACITY = "actes-fast.async.queue.capacity";
+    public static final String PROPERTY_ASYNC_WRITERS = "actes-fast.async.writers";
+    public static final String PROPERTY_ASYNC_REJECTION_POLICY = "actes-fast.async.rejection.policy";
+    public static final String PROPERTY_ASYNC_BLOCK_TIMEOUT = "actes-fast.async.block.timeout";
+    public static final String PROPERTY_ASYNC_SPILL_DIR_PATH = "actes-fast.async.spill.path.directory";
+    public static final String PROPERTY_RETRY_MAX_ATTEMPTS = "actes-fast.retry.max.attempts";
+    public static final String PROPERTY_RETRY_INITIAL_DELAY = "actes-fast.retry.initial.delay";
+    public static final String PROPERTY_RETRY_MAX_DELAY = "actes-fast.retry.max.delay";
+    public static final String PROPERTY_DEADLETTER_DIR_PATH = "actes-fast.retry.deadletter.path.directory";
+    public static final String PROPERTY_STORE_ENABLED = "actes-fast.store.enabled";
+    public static final String PROPERTY_STORE_DIR_PATH = "actes-fast.store.path.directory";
+    public static final String PROPERTY_STORE_MAX_AGE = "actes-fast.store.max.age";
+    public static final String PROPERTY_MANIFEST_ENABLED = "actes-fast.manifest.enabled";
+    public static final String PROPERTY_SPACE_ENABLED = "actes-fast.space.enabled";
+    public static final String PROPERTY_SPACE_MIN_FREE = "actes-fast.space.min.free";
+    public static final String PROPERTY_SPACE_UNKNOWN_SIZE = "actes-fast.space.unknown.size";
+    public static final String PROPERTY_SPACE_WAIT_TIMEOUT = "actes-fast.space.wait.timeout";
+    public static final String PROPERTY_COLLECTIVITIES = "actes-fast.collectivities";
+    public static final String PROPERTY_LANE_MAX_CONCURRENT = "actes-fast.lane.max.concurrent";
+
+    /** Préfixe des propriétés d'une collectivité, suivi de son code */
+    public static final String PREFIX_COLLECTIVITY = "actes-fast.collectivity.";
+    public static final String SUFFIX_COLLECTIVITY_SIREN = ".siren";
+    public static final String SUFFIX_COLLECTIVITY_DNUTILISATEUR = ".ws.dnutilisateur";
+    public static final String SUFFIX_COLLECTIVITY_DEPARTEMENT = ".departement";
+    public static final String SUFFIX_COLLECTIVITY_FAST_DIR_PATH = ".fast.path.directory";
+    public static final String SUFFIX_COLLECTIVITY_MAX_CONCURRENT = ".max.concurrent";
+    private static final String [ ] PROPERTIES = {
+            PROPERTY_ACTE_DATE_CLASSIFICATION, PROPERTY_ACTE_SIREN_VILLE, PROPERTY_ACTE_SIREN_DEPT, PROPERTY_ACTE_DIR_PATH, PROPERTY_ACTE_FAST_DIR_PATH,
+            PROPERTY_ACTE_DEPT, PROPERTY_ACTE_TRANSACTION_TRANSMISSION, PROPERTY_ACTE_TRANSACTION_ANNULATION, PROPERTY_ACTE_WS_TRAITEMENT,
+            PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE, PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT, PROPERTY_ACTE_TYPE_LIBELLE, PROPERTY_ACTE_TYPE_NUM,
+            PROPERTY_NB_CARACTERES_MAX, PROPERTY_CARACTERES_DEFICIENT, PROPERTY_XML_ENCODING, PROPERTY_JAXB_POOL_SIZE, PROPERTY_BATCH_MAX_CONCURRENT,
+            PROPERTY_BATCH_VIRTUAL_THREADS, PROPERTY_JOURNAL_DIR_PATH, PROPERTY_JOURNAL_COMPACTION_SIZE, PROPERTY_JOURNAL_ORPHAN_MAX_AGE,
+            PROPERTY_INDEX_ENABLED, PROPERTY_INDEX_DIR_PATH, PROPERTY_ACK_ENABLED, PROPERTY_ACK_SUFFIXES_ACKNOWLEDGED, PROPERTY_ACK_SUFFIXES_REJECTED,
+            PROPERTY_ACK_POLL_INTERVAL, PROPERTY_ACK_MTIME_WINDOW, PROPERTY_ACK_TIMEOUT, PROPERTY_ASYNC_ENABLED, PROPERTY_ASYNC_QUEUE_CAPACITY, PROPERTY_ASYNC_WRITERS, PROPERTY_ASYNC_REJECTION_POLICY,
+            PROPERTY_ASYNC_BLOCK_TIMEOUT, PROPERTY_ASYNC_SPILL_DIR_PATH, PROPERTY_RETRY_MAX_ATTEMPTS, PROPERTY_RETRY_INITIAL_DELAY, PROPERTY_RETRY_MAX_DELAY,
+            PROPERTY_DEADLETTER_DIR_PATH, PROPERTY_STORE_ENABLED, PROPERTY_STORE_DIR_PATH, PROPERTY_STORE_MAX_AGE,
+            PROPERTY_MANIFEST_ENABLED, PROPERTY_SPACE_ENABLED, PROPERTY_SPACE_MIN_FREE, PROPERTY_SPACE_UNKNOWN_SIZE, PROPERTY_SPACE_WAIT_TIMEOUT,
+            PROPERTY_COLLECTIVITIES, PROPERTY_LANE_MAX_CONCURRENT
+    };
+    private static final String [ ] PROPERTIES_RESTART = {
+            PROPERTY_JAXB_POOL_SIZE, PROPERTY_BATCH_MAX_CONCURRENT, PROPERTY_BATCH_VIRTUAL_THREADS, PROPERTY_JOURNAL_DIR_PATH,
+            PROPERTY_JOURNAL_COMPACTION_SIZE, PROPERTY_JOURNAL_ORPHAN_MAX_AGE, PROPERTY_ASYNC_QUEUE_CAPACITY, PROPERTY_ASYNC_WRITERS,
+            PROPERTY_ASYNC_REJECTION_POLICY, PROPERTY_ASYNC_BLOCK_TIMEOUT, PROPERTY_ASYNC_SPILL_DIR_PATH
+    };
+    private static final String [ ] SUFFIXES_COLLECTIVITY = {
+            SUFFIX_COLLECTIVITY_SIREN, SUFFIX_COLLECTIVITY_DNUTILISATEUR, SUFFIX_COLLECTIVITY_DEPARTEMENT, SUFFIX_COLLECTIVITY_FAST_DIR_PATH,
+            SUFFIX_COLLECTIVITY_MAX_CONCURRENT
+    };
+    private static final Locale LOCALE = new Locale( "fr" );
+    private static final int NB_CARACTERES_MAX_DEFAULT = 400;
+    private static final String XML_ENCODING_DEFAULT = "ISO-8859-1";
+    private static final int JAXB_POOL_SIZE_DEFAULT = 8;
+    private static final int JOURNAL_COMPACTION_SIZE_DEFAULT = 10 * 1024 * 1024;
+    private static final int JOURNAL_ORPHAN_MAX_AGE_DEFAULT = 60;
+    private static final long MINUTE = 60 * 1000L;
+    private static final String INDEX_DIRECTORY_DEFAULT = "index";
+    private static final String ACK_SUFFIXES_ACKNOWLEDGED_DEFAULT = ".ACK";
+    private static final String ACK_SUFFIXES_REJECTED_DEFAULT = ".KO,.ERR";
+    private static final int ACK_POLL_INTERVAL_DEFAULT = 30;
+    private static final int ACK_MTIME_WINDOW_DEFAULT = 60;
+    private static final int ACK_TIMEOUT_DEFAULT = 48;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long SECOND = 1000L;
+    private static final String LIST_SEPARATOR = ",";
+    private static final int ASYNC_QUEUE_CAPACITY_DEFAULT = 100;
+    private static final int ASYNC_WRITERS_DEFAULT = 2;
+    private static final int ASYNC_BLOCK_TIMEOUT_DEFAULT = 30;
+    private static final String ASYNC_SPILL_DIRECTORY_DEFAULT = "spill";
+    private static final int RETRY_MAX_ATTEMPTS_DEFAULT = 5;
+    private static final int RETRY_INITIAL_DELAY_DEFAULT = 500;
+    private static final int RETRY_MAX_DELAY_DEFAULT = 30000;
+    private static final String DEADLETTER_DIRECTORY_DEFAULT = "deadletter";
+    private static final String STORE_DIRECTORY_DEFAULT = "store";
+    private static final int STORE_MAX_AGE_DEFAULT = 1440;
+    private static final long MEGABYTE = 1024 * 1024L;
+    private static final int SPACE_MIN_FREE_DEFAULT = 64;
+    private static final int SPACE_UNKNOWN_SIZE_DEFAULT = 20;
+    private static final int SPACE_WAIT_TIMEOUT_DEFAULT = 30;
+    private static final String COLLECTIVITIES_DEFAULT = FastCollectivityProfile.CODE_VILLE + "," + FastCollectivityProfile.CODE_DEPT;
+    private final Path _tmpDirectory;
+    private final Path _fastDirectory;
+    private final String _strDepartement;
+    private final String _strTypeLibelle;
+    private final int _nTypeNum;
+    private final String _strTransactionTransmission;
+    private final String _strTransactionAnnulation;
+    private final String _strWSTraitement;
+    private final String _strXmlEncoding;
+    private final Charset _xmlCharset;
+    private final long _lClassificationDate;
+    private final FastTitleSanitizer _sanitizer;
+    private final FastPackageNaming _packageNaming;
+    private final Map<String, FastCollectivityProfile> _mapProfiles;
+    private final List<Path> _listFastDirectories;
+    private final int _nMarshallerPoolSize;
+    private final int _nBatchMaxConcurrent;
+    private final boolean _bBatchVirtualThreads;
+    private final Path _journalDirectory;
+    private final long _lJournalCompactionSize;
+    private final long _lOrphanWorkspaceMaxAge;
+    private final boolean _bIndexEnabled;
+    private final Path _indexDirectory;
+    private final boolean _bAckEnabled;
+    private final List<String> _listAckSuffixesAcknowledged;
+    private final List<String> _listAckSuffixesRejected;
+    private final long _lAckPollInterval;
+    private final long _lAckMtimeWindow;
+    private final long _lAckTimeout;
+    private final boolean _bAsyncEnabled;
+    private final int _nAsyncQueueCapacity;
+    private final int _nAsyncWriters;
+    private final FastRejectionPolicy _asyncRejectionPolicy;
+    private final long _lAsyncBlockTimeout;
+    private final Path _asyncSpillDirectory;
+    private final int _nRetryMaxAttempts;
+    private final long _lRetryInitialDelay;
+    private final long _lRetryMaxDelay;
+    private final Path _deadLetterDirectory;
+    private final boolean _bStoreEnabled;
+    private final Path _storeDirectory;
+    private final long _lStoreMaxAge;
+    private final boolean _bManifestEnabled;
+    private final boolean _bSpaceEnabled;
+    private final long _lSpaceMinFree;
+    private final long _lSpaceUnknownSize;
+    private final long _lSpaceWaitTimeout;
+
+    /**
+     * Construit et valide la configuration
+     *
+     * @param properties
+     *            les propriétés du module
+     * @throws AppException
+     *             si une propriété obligatoire est absente ou invalide
+     */
+    private FastConfiguration( Properties properties )
+    {
+        _tmpDirectory = Paths.get( getMandatory( properties, PROPERTY_ACTE_DIR_PATH ) );
+        _fastDirectory = Paths.get( getMandatory( properties, PROPERTY_ACTE_FAST_DIR_PATH ) );
+        _strDepartement = getMandatory( properties, PROPERTY_ACTE_DEPT );
+        _strTypeLibelle = getMandatory( properties, PROPERTY_ACTE_TYPE_LIBELLE );
+        _nTypeNum = getInt( properties, PROPERTY_ACTE_TYPE_NUM, null );
+        _strTransactionTransmission = getMandatory( properties, PROPERTY_ACTE_TRANSACTION_TRANSMISSION );
+        _strTransactionAnnulation = getMandatory( properties, PROPERTY_ACTE_TRANSACTION_ANNULATION );
+        _strWSTraitement = getMandatory( properties, PROPERTY_ACTE_WS_TRAITEMENT );
+        _strXmlEncoding = getOptional( properties, PROPERTY_XML_ENCODING, XML_ENCODING_DEFAULT );
+
+        try
+        {
+            _xmlCharset = Charset.forName( _strXmlEncoding );
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new AppException( "Actes FAST : unsupported encoding " + PROPERTY_XML_ENCODING + "=" + _strXmlEncoding, e );
+        }
+
+        Date dateClassification = DateUtil.formatDateSql( getMandatory( properties, PROPERTY_ACTE_DATE_CLASSIFICATION ), LOCALE );
+
+        if ( dateClassification == null )
+        {
+            throw new AppException( "Actes FAST : invalid date " + PROPERTY_ACTE_DATE_CLASSIFICATION + "="
+                    + properties.getProperty( PROPERTY_ACTE_DATE_CLASSIFICATION ) );
+        }
+
+        _lClassificationDate = dateClassification.getTime( );
+
+        int nNbCaracteresMax = getInt( properties, PROPERTY_NB_CARACTERES_MAX, NB_CARACTERES_MAX_DEFAULT );
+        _sanitizer = new FastTitleSanitizer( _xmlCharset, properties.getProperty( PROPERTY_CARACTERES_DEFICIENT ), nNbCaracteresMax );
+
+        _packageNaming = new FastPackageNaming( _strTypeLibelle, _strTransactionTransmission, _strTransactionAnnulation );
+
+        _nMarshallerPoolSize = Math.max( 1, getInt( properties, PROPERTY_JAXB_POOL_SIZE, JAXB_POOL_SIZE_DEFAULT ) );
+        _nBatchMaxConcurrent = Math.max( 1, getInt( properties, PROPERTY_BATCH_MAX_CONCURRENT, Runtime.getRuntime( ).availableProcessors( ) ) );
+        _bBatchVirtualThreads = Boolean.parseBoolean( getOptional( properties, PROPERTY_BATCH_VIRTUAL_THREADS, Boolean.FALSE.toString( ) ) );
+
+        _mapProfiles = readProfiles( properties );
+
+        List<Path> listFastDirectories = new ArrayList<Path>( );
+
+        for ( FastCollectivityProfile profile : _mapProfiles.values( ) )
+        {
+            if ( !listFastDirectories.contains( profile.getFastDirectory( ) ) )
+            {
+                listFastDirectories.add( profile.getFastDirectory( ) );
+            }
+        }
+
+        _listFastDirectories = Collections.unmodifiableList( listFastDirectories );
+
+        _journalDirectory = getPath( properties, PROPERTY_JOURNAL_DIR_PATH, _tmpDirectory );
+        _lJournalCompactionSize = getInt( properties, PROPERTY_JOURNAL_COMPACTION_SIZE, JOURNAL_COMPACTION_SIZE_DEFAULT );
+        _lOrphanWorkspaceMaxAge = getInt( properties, PROPERTY_JOURNAL_ORPHAN_MAX_AGE, JOURNAL_ORPHAN_MAX_AGE_DEFAULT ) * MINUTE;
+        _bIndexEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_INDEX_ENABLED, Boolean.FALSE.toString( ) ) );
+        _indexDirectory = getPath( properties, PROPERTY_INDEX_DIR_PATH, _tmpDirectory.resolve( INDEX_DIRECTORY_DEFAULT ) );
+
+        _bAckEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_ACK_ENABLED, Boolean.FALSE.toString( ) ) );
+        _listAckSuffixesAcknowledged = getList( properties, PROPERTY_ACK_SUFFIXES_ACKNOWLEDGED, ACK_SUFFIXES_ACKNOWLEDGED_DEFAULT );
+        _listAckSuffixesRejected = getList( properties, PROPERTY_ACK_SUFFIXES_REJECTED, ACK_SUFFIXES_REJECTED_DEFAULT );
+        _lAckPollInterval = Math.max( 1, getInt( properties, PROPERTY_ACK_POLL_INTERVAL, ACK_POLL_INTERVAL_DEFAULT ) ) * SECOND;
+        _lAckMtimeWindow = Math.max( 0, getInt( properties, PROPERTY_ACK_MTIME_WINDOW, ACK_MTIME_WINDOW_DEFAULT ) ) * SECOND;
+        _lAckTimeout = Math.max( 1, getInt( properties, PROPERTY_ACK_TIMEOUT, ACK_TIMEOUT_DEFAULT ) ) * HOUR;
+
+        _bAsyncEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_ASYNC_ENABLED, Boolean.FALSE.toString( ) ) );
+        _nAsyncQueueCapacity = Math.max( 1, getInt( properties, PROPERTY_ASYNC_QUEUE_CAPACITY, ASYNC_QUEUE_CAPACITY_DEFAULT ) );
+        _nAsyncWriters = Math.max( 1, getInt( properties, PROPERTY_ASYNC_WRITERS, ASYNC_WRITERS_DEFAULT ) );
+        _lAsyncBlockTimeout = Math.max( 0, getInt( properties, PROPERTY_ASYNC_BLOCK_TIMEOUT, ASYNC_BLOCK_TIMEOUT_DEFAULT ) ) * SECOND;
+        _asyncSpillDirectory = getPath( properties, PROPERTY_ASYNC_SPILL_DIR_PATH, _tmpDirectory.resolve( ASYNC_SPILL_DIRECTORY_DEFAULT ) );
+
+        String strPolicy = getOptional( properties, PROPERTY_ASYNC_REJECTION_POLICY, FastRejectionPolicy.SPILL.name( ) );
+
+        try
+        {
+            _asyncRejectionPolicy = FastRejectionPolicy.valueOf( strPolicy.toUpperCase( Locale.ROOT ) );
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new AppException( "Actes FAST : invalid policy " + PROPERTY_ASYNC_REJECTION_POLICY + "=" + strPolicy, e );
+        }
+
+        _nRetryMaxAttempts = Math.max( 0, getInt( properties, PROPERTY_RETRY_MAX_ATTEMPTS, RETRY_MAX_ATTEMPTS_DEFAULT ) );
+        _lRetryInitialDelay = Math.max( 1, getInt( properties, PROPERTY_RETRY_INITIAL_DELAY, RETRY_INITIAL_DELAY_DEFAULT ) );
+        _lRetryMaxDelay = Math.max( _lRetryInitialDelay, getInt( properties, PROPERTY_RETRY_MAX_DELAY, RETRY_MAX_DELAY_DEFAULT ) );
+        _deadLetterDirectory = getPath( properties, PROPERTY_DEADLETTER_DIR_PATH, _tmpDirectory.resolve( DEADLETTER_DIRECTORY_DEFAULT ) );
+
+        _bStoreEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_STORE_ENABLED, Boolean.FALSE.toString( ) ) );
+        _storeDirectory = getPath( properties, PROPERTY_STORE_DIR_PATH, _tmpDirectory.resolve( STORE_DIRECTORY_DEFAULT ) );
+        _lStoreMaxAge = Math.max( 0, getInt( properties, PROPERTY_STORE_MAX_AGE, STORE_MAX_AGE_DEFAULT ) ) * MINUTE;
+        _bManifestEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_MANIFEST_ENABLED, Boolean.TRUE.toString( ) ) );
+
+        _bSpaceEnabled = Boolean.parseBoolean( getOptional( properties, PROPERTY_SPACE_ENABLED, Boolean.TRUE.toString( ) ) );
+        _lSpaceMinFree = Math.max( 0, getInt( properties, PROPERTY_SPACE_MIN_FREE, SPACE_MIN_FREE_DEFAULT ) ) * MEGABYTE;
+        _lSpaceUnknownSize = Math.max( 0, getInt( properties, PROPERTY_SPACE_UNKNOWN_SIZE, SPACE_UNKNOWN_SIZE_DEFAULT ) ) * MEGABYTE;
+        _lSpaceWaitTimeout = Math.max( 0, getInt( properties, PROPERTY_SPACE_WAIT_TIMEOUT, SPACE_WAIT_TIMEOUT_DEFAULT ) ) * SECOND;
+    }
+
+    /**
+     * Construit et valide une configuration à partir de propriétés
+     *
+     * @param properties
+     *            les propriétés du module
+     * @return la configuration
+     * @throws AppException
+     *             si une propriété obligatoire est absente ou invalide
+     */
+    public static FastConfiguration fromProperties( Properties properties )
+    {
+        return new FastConfiguration( properties );
+    }
+
+    /**
+     * Retourne les clés des propriétés lues par la configuration
+     *
+     * @return les clés des propriétés
+     */
+    static String [ ] getPropertyKeys( )
+    {
+        return PROPERTIES.clone( );
+    }
+
+    /**
+     * Indique si une propriété n'est lue qu'à la création d'un service partagé (pool de Marshallers, threads des lots, journal, file d'envoi)
+     * ou au démarrage du plugin : sa modification n'est prise en compte qu'au redémarrage de l'application
+     *
+     * @param strKey
+     *            la clé de la propriété
+     * @return true si la modification de la propriété demande un redémarrage
+     */
+    static boolean isRestartRequired( String strKey )
+    {
+        for ( String strRestartKey : PROPERTIES_RESTART )
+        {
+            if ( strRestartKey.equals( strKey ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Retourne les clés des propriétés d'une collectivité
+     *
+     * @param strCode
+     *            le code de la collectivité
+     * @return les clés des propriétés
+     */
+    static String [ ] getCollectivityPropertyKeys( String strCode )
+    {
+        String [ ] keys = new String [ SUFFIXES_COLLECTIVITY.length];
+
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            keys [i] = PREFIX_COLLECTIVITY + strCode + SUFFIXES_COLLECTIVITY [i];
+        }
+
+        return keys;
+    }
+
+    /**
+     * Retourne les codes des collectivités configurées
+     *
+     * @param properties
+     *            les propriétés du module
+     * @return les codes, dans l'ordre de la configuration
+     */
+    static List<String> getCollectivityCodes( Properties properties )
+    {
+        return getList( properties, PROPERTY_COLLECTIVITIES, COLLECTIVITIES_DEFAULT );
+    }
+
+    /**
+     * Retourne le répertoire temporaire de travail
+     *
+     * @return le répertoire temporaire
+     */
+    public Path getTmpDirectory( )
+    {
+        return _tmpDirectory;
+    }
+
+    /**
+     * Retourne le répertoire de dépôt FAST par défaut, celui des collectivités qui n'en ont pas de propre
+     *
+     * @return le répertoire FAST
+     */
+    public Path getFastDirectory( )
+    {
+        return _fastDirectory;
+    }
+
+    /**
+     * Retourne le numéro de département
+     *
+     * @return le département
+     */
+    public String getDepartement( )
+    {
+        return _strDepartement;
+    }
+
+    /**
+     * Retourne le libellé du type d'acte
+     *
+     * @return le libellé du type d'acte
+     */
+    public String getTypeLibelle( )
+    {
+        return _strTypeLibelle;
+    }
+
+    /**
+     * Retourne le code nature de l'acte
+     *
+     * @return le code nature
+     */
+    public int getTypeNum( )
+    {
+        return _nTypeNum;
+    }
+
+    /**
+     * Retourne le code de transaction d'une transmission
+     *
+     * @return le code de transaction
+     */
+    public String getTransactionTransmission( )
+    {
+        return _strTransactionTransmission;
+    }
+
+    /**
+     * Retourne le code de transaction d'une annulation
+     *
+     * @return le code de transaction
+     */
+    public String getTransactionAnnulation( )
+    {
+        return _strTransactionAnnulation;
+    }
+
+    /**
+     * Retourne le type de traitement du web service
+     *
+     * @return le type de traitement
+     */
+    public String getWSTraitement( )
+    {
+        return _strWSTraitement;
+    }
+
+    /**
+     * Retourne le nom de l'encodage des fichiers XML
+     *
+     * @return le nom de l'encodage
+     */
+    public String getXmlEncoding( )
+    {
+        return _strXmlEncoding;
+    }
+
+    /**
+     * Retourne l'encodage des fichiers XML
+     *
+     * @return l'encodage
+     */
+    public Charset getXmlCharset( )
+    {
+        return _xmlCharset;
+    }
+
+    /**
+     * Retourne une nouvelle instance de la date de version de la classification
+     *
+     * @return la date de classification
+     */
+    public Calendar getClassificationDate( )
+    {
+        Calendar calClassification = new GregorianCalendar( );
+        calClassification.setTimeInMillis( _lClassificationDate );
+
+        return calClassification;
+    }
+
+    /**
+     * Retourne le nettoyeur de libellés
+     *
+     * @return le nettoyeur de libellés
+     */
+    public FastTitleSanitizer getSanitizer( )
+    {
+        return _sanitizer;
+    }
+
+    /**
+     * Retourne le nommage des paquets
+     *
+     * @return le nommage des paquets
+     */
+    public FastPackageNaming getPackageNaming( )
+    {
+        return _packageNaming;
+    }
+
+    /**
+     * Retourne le profil de la collectivité
+     *
+     * @param bIsMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @return le profil ville ou département
+     * @throws IllegalArgumentException
+     *             si le profil ville ou département n'est pas configuré
+     */
+    public FastCollectivityProfile getProfile( boolean bIsMunicipal )
+    {
+        return getProfile( bIsMunicipal ? FastCollectivityProfile.CODE_VILLE : FastCollectivityProfile.CODE_DEPT );
+    }
+
+    /**
+     * Retourne le profil d'une collectivité
+     *
+     * @param strCode
+     *            le code de la collectivité
+     * @return le profil
+     * @throws IllegalArgumentException
+     *             si la collectivité n'est pas configurée
+     */
+    public FastCollectivityProfile getProfile( String strCode )
+    {
+        FastCollectivityProfile profile = _mapProfiles.get( strCode );
+
+        if ( profile == null )
+        {
+            throw new IllegalArgumentException( "Actes FAST : unknown collectivity " + strCode );
+        }
+
+        return profile;
+    }
+
+    /**
+     * Retourne le profil de la collectivité émettrice : celui désigné par son code s'il est fourni, sinon celui de la ville ou du département
+     *
+     * @param strCode
+     *            le code de la collectivité, ou null
+     * @param bIsMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @return le profil
+     * @throws IllegalArgumentException
+     *             si la collectivité n'est pas configurée
+     */
+    public FastCollectivityProfile getProfile( String strCode, boolean bIsMunicipal )
+    {
+        return ( strCode != null ) ? getProfile( strCode ) : getProfile( bIsMunicipal );
+    }
+
+    /**
+     * Retourne les profils des collectivités configurées
+     *
+     * @return les profils, dans l'ordre de la configuration
+     */
+    public Collection<FastCollectivityProfile> getProfiles( )
+    {
+        return _mapProfiles.values( );
+    }
+
+    /**
+     * Retourne les répertoires de dépôt FAST distincts des collectivités
+     *
+     * @return les répertoires FAST
+     */
+    public List<Path> getFastDirectories( )
+    {
+        return _listFastDirectories;
+    }
+
+    /**
+     * Retourne la taille du pool de Marshallers JAXB
+     *
+     * @return la taille du pool
+     */
+    public int getMarshallerPoolSize( )
+    {
+        return _nMarshallerPoolSize;
+    }
+
+    /**
+     * Retourne le nombre maximum de paquets préparés simultanément
+     *
+     * @return le nombre maximum de paquets préparés simultanément
+     */
+    public int getBatchMaxConcurrent( )
+    {
+        return _nBatchMaxConcurrent;
+    }
+
+    /**
+     * Retourne true si les lots doivent utiliser des threads virtuels lorsque la JVM le permet
+     *
+     * @return true pour utiliser des threads virtuels
+     */
+    public boolean isBatchVirtualThreads( )
+    {
+        return _bBatchVirtualThreads;
+    }
+
+    /**
+     * Retourne le répertoire du journal des transmissions
+     *
+     * @return le répertoire du journal
+     */
+    public Path getJournalDirectory( )
+    {
+        return _journalDirectory;
+    }
+
+    /**
+     * Retourne la taille au-delà de laquelle le journal est vidé lorsqu'aucune transmission n'est en cours
+     *
+     * @return la taille en octets
+     */
+    public long getJournalCompactionSize( )
+    {
+        return _lJournalCompactionSize;
+    }
+
+    /**
+     * Retourne l'âge au-delà duquel un répertoire de travail inconnu du journal est considéré comme abandonné
+     *
+     * @return l'âge en millisecondes
+     */
+    public long getOrphanWorkspaceMaxAge( )
+    {
+        return _lOrphanWorkspaceMaxAge;
+    }
+
+    /**
+     * Retourne true si l'index des transmissions déjà déposées est utilisé
+     *
+     * @return true si l'index est utilisé
+     */
+    public boolean isIndexEnabled( )
+    {
+        return _bIndexEnabled;
+    }
+
+    /**
+     * Retourne le répertoire de l'index des transmissions déjà déposées
+     *
+     * @return le répertoire de l'index
+     */
+    public Path getIndexDirectory( )
+    {
+        return _indexDirectory;
+    }
+
+    /**
+     * Retourne true si les retours de FAST sont surveillés
+     *
+     * @return true si les retours sont surveillés
+     */
+    public boolean isAckEnabled( )
+    {
+        return _bAckEnabled;
+    }
+
+    /**
+     * Retourne les suffixes des fichiers retour signalant un paquet accepté
+     *
+     * @return les suffixes
+     */
+    public List<String> getAckSuffixesAcknowledged( )
+    {
+        return _listAckSuffixesAcknowledged;
+    }
+
+    /**
+     * Retourne les suffixes des fichiers retour signalant un paquet rejeté
+     *
+     * @return les suffixes
+     */
+    public List<String> getAckSuffixesRejected( )
+    {
+        return _listAckSuffixesRejected;
+    }
+
+    /**
+     * Retourne l'intervalle de relecture du répertoire FAST
+     *
+     * @return l'intervalle en millisecondes
+     */
+    public long getAckPollInterval( )
+    {
+        return _lAckPollInterval;
+    }
+
+    /**
+     * Retourne la durée pendant laquelle un répertoire FAST est encore relu alors que sa date de modification n'a pas changé. Elle couvre la
+     * granularité des dates de modification et le cache d'attributs des montages réseau.
+     *
+     * @return la durée en millisecondes
+     */
+    public long getAckMtimeWindow( )
+    {
+        return _lAckMtimeWindow;
+    }
+
+    /**
+     * Retourne le délai au-delà duquel un paquet sans retour de FAST n'est plus suivi
+     *
+     * @return le délai en millisecondes
+     */
+    public long getAckTimeout( )
+    {
+        return _lAckTimeout;
+    }
+
+    /**
+     * Retourne true si les transmissions asynchrones passent par la file d'envoi
+     *
+     * @return true si la file d'envoi est utilisée
+     */
+    public boolean isAsyncEnabled( )
+    {
+        return _bAsyncEnabled;
+    }
+
+    /**
+     * Retourne le nombre de transmissions conservées en mémoire dans la file d'envoi
+     *
+     * @return la capacité de la file
+     */
+    public int getAsyncQueueCapacity( )
+    {
+        return _nAsyncQueueCapacity;
+    }
+
+    /**
+     * Retourne le nombre de threads qui vident la file d'envoi
+     *
+     * @return le nombre de threads
+     */
+    public int getAsyncWriters( )
+    {
+        return _nAsyncWriters;
+    }
+
+    /**
+     * Retourne le comportement de la file d'envoi lorsqu'elle est pleine
+     *
+     * @return la politique de rejet
+     */
+    public FastRejectionPolicy getAsyncRejectionPolicy( )
+    {
+        return _asyncRejectionPolicy;
+    }
+
+    /**
+     * Retourne le temps d'attente maximal d'une place dans la file d'envoi (politique BLOCK)
+     *
+     * @return le temps d'attente en millisecondes
+     */
+    public long getAsyncBlockTimeout( )
+    {
+        return _lAsyncBlockTimeout;
+    }
+
+    /**
+     * Retourne le répertoire dans lequel les transmissions sont écrites lorsque la file d'envoi est pleine (politique SPILL)
+     *
+     * @return le répertoire de débordement
+     */
+    public Path getAsyncSpillDirectory( )
+    {
+        return _asyncSpillDirectory;
+    }
+
+    /**
+     * Retourne le nombre maximal de nouvelles tentatives accordées à une transmission, toutes étapes confondues
+     *
+     * @return le nombre de nouvelles tentatives
+     */
+    public int getRetryMaxAttempts( )
+    {
+        return _nRetryMaxAttempts;
+    }
+
+    /**
+     * Retourne le délai d'attente avant la première nouvelle tentative
+     *
+     * @return le délai en millisecondes
+     */
+    public long getRetryInitialDelay( )
+    {
+        return _lRetryInitialDelay;
+    }
+
+    /**
+     * Retourne le délai d'attente maximal entre deux tentatives
+     *
+     * @return le délai en millisecondes
+     */
+    public long getRetryMaxDelay( )
+    {
+        return _lRetryMaxDelay;
+    }
+
+    /**
+     * Retourne le répertoire dans lequel sont conservés les paquets qui n'ont pas pu être déposés
+     *
+     * @return le répertoire des paquets en échec
+     */
+    public Path getDeadLetterDirectory( )
+    {
+        return _deadLetterDirectory;
+    }
+
+    /**
+     * Indique si les annexes sont conservées dans le magasin de contenus, pour n'écrire qu'une fois les annexes identiques
+     *
+     * @return true si le magasin est activé
+     */
+    public boolean isStoreEnabled( )
+    {
+        return _bStoreEnabled;
+    }
+
+    /**
+     * Retourne le répertoire du magasin de contenus
+     *
+     * @return le répertoire du magasin
+     */
+    public Path getStoreDirectory( )
+    {
+        return _storeDirectory;
+    }
+
+    /**
+     * Retourne la durée au-delà de laquelle un contenu du magasin qui n'est plus utilisé par aucun paquet est supprimé
+     *
+     * @return la durée en millisecondes
+     */
+    public long getStoreMaxAge( )
+    {
+        return _lStoreMaxAge;
+    }
+
+    /**
+     * Indique si le manifeste (empreintes SHA-256 des fichiers) est déposé à côté de chaque paquet
+     *
+     * @return true si le manifeste est déposé
+     */
+    public boolean isManifestEnabled( )
+    {
+        return _bManifestEnabled;
+    }
+
+    /**
+     * Indique si l'espace disque nécessaire à un paquet est réservé avant sa préparation
+     *
+     * @return true si le contrôle de l'espace disque est activé
+     */
+    public boolean isSpaceEnabled( )
+    {
+        return _bSpaceEnabled;
+    }
+
+    /**
+     * Retourne l'espace laissé libre sur les volumes du répertoire temporaire et du répertoire FAST
+     *
+     * @return l'espace en octets
+     */
+    public long getSpaceMinFree( )
+    {
+        return _lSpaceMinFree;
+    }
+
+    /**
+     * Retourne la taille réservée pour un fichier dont la taille n'est pas connue à l'avance (flux)
+     *
+     * @return la taille en octets
+     */
+    public long getSpaceUnknownSize( )
+    {
+        return _lSpaceUnknownSize;
+    }
+
+    /**
+     * Retourne l'attente maximale de la libération d'espace par les transmissions en cours
+     *
+     * @return la durée en millisecondes
+     */
+    public long getSpaceWaitTimeout( )
+    {
+        return _lSpaceWaitTimeout;
+    }
+
+    /**
+     * Lit les profils des collectivités. Les propriétés d'une collectivité sont préfixées par actes-fast.collectivity.&lt;code&gt; ; pour la ville et
+     * le département, le numéro SIREN et le DN peuvent encore être fournis par les propriétés actes-fast.odsville.* et actes-fast.odsdept.*. Le
+     * département et le répertoire FAST sont par défaut ceux du module.
+     *
+     * @param properties
+     *            les propriétés du module
+     * @return les profils indexés par code, dans l'ordre de la configuration
+     */
+    private Map<String, FastCollectivityProfile> readProfiles( Properties properties )
+    {
+        Map<String, FastCollectivityProfile> mapProfiles = new LinkedHashMap<String, FastCollectivityProfile>( );
+        int nLaneMaxConcurrent = Math.max( 1, getInt( properties, PROPERTY_LANE_MAX_CONCURRENT, _nBatchMaxConcurrent ) );
+
+        for ( String strCode : getCollectivityCodes( properties ) )
+        {
+            if ( mapProfiles.containsKey( strCode ) )
+            {
+                throw new AppException( "Actes FAST : collectivity " + strCode + " declared twice in " + PROPERTY_COLLECTIVITIES );
+            }
+
+            String strPrefix = PREFIX_COLLECTIVITY + strCode;
+            String strSirenKey = strPrefix + SUFFIX_COLLECTIVITY_SIREN;
+            String strDNKey = strPrefix + SUFFIX_COLLECTIVITY_DNUTILISATEUR;
+
+            if ( FastCollectivityProfile.CODE_VILLE.equals( strCode ) && ( properties.getProperty( strSirenKey ) == null ) )
+            {
+                strSirenKey = PROPERTY_ACTE_SIREN_VILLE;
+                strDNKey = PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE;
+            }
+            else if ( FastCollectivityProfile.CODE_DEPT.equals( strCode ) && ( properties.getProperty( strSirenKey ) == null ) )
+            {
+                strSirenKey = PROPERTY_ACTE_SIREN_DEPT;
+                strDNKey = PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT;
+            }
+
+            String strDepartement = getOptional( properties, strPrefix + SUFFIX_COLLECTIVITY_DEPARTEMENT, _strDepartement );
+            Path fastDirectory = getPath( properties, strPrefix + SUFFIX_COLLECTIVITY_FAST_DIR_PATH, _fastDirectory );
+            int nMaxConcurrent = Math.max( 1, getInt( properties, strPrefix + SUFFIX_COLLECTIVITY_MAX_CONCURRENT, nLaneMaxConcurrent ) );
+            mapProfiles.put( strCode, new FastCollectivityProfile( strCode, getMandatory( properties, strSirenKey ), strDepartement,
+                    getMandatory( properties, strDNKey ), _strWSTraitement, fastDirectory, nMaxConcurrent ) );
+        }
+
+        if ( mapProfiles.isEmpty( ) )
+        {
+            throw new AppException( "Actes FAST : no collectivity configured in " + PROPERTY_COLLECTIVITIES );
+        }
+
+        return Collections.unmodifiableMap( mapProfiles );
+    }
+
+    /**
+     * Retourne une propriété de type liste, séparée par des virgules
+     *
+     * @param properties
+     *            les propriétés
+     * @param strKey
+     *            la clé
+     * @param strDefault
+     *            la valeur par défaut si la propriété est absente ou vide
+     * @return la liste non modifiable des valeurs non vides
+     */
+    private static List<String> getList( Properties properties, String strKey, String strDefault )
+    {
+        List<String> listValues = new ArrayList<String>( );
+
+        for ( String strValue : getOptional( properties, strKey, strDefault ).split( LIST_SEPARATOR ) )
+        {
+            if ( !strValue.trim( ).isEmpty( ) )
+            {
+                listValues.add( strValue.trim( ) );
+            }
+        }
+
+        return Collections.unmodifiableList( listValues );
+    }
+
+    /**
+     * Retourne une propriété de type chemin
+     *
+     * @param properties
+     *            les propriétés
+     * @param strKey
+     *            la clé
+     * @param pathDefault
+     *            la valeur par défaut si la propriété est absente ou vide
+     * @return la valeur
+     */
+    private static Path getPath( Properties properties, String strKey, Path pathDefault )
+    {
+        String strValue = properties.getProperty( strKey );
+
+        return ( ( strValue == null ) || strValue.trim( ).isEmpty( ) ) ? pathDefault : Paths.get( strValue.trim( ) );
+    }
+
+    /**
+     * Retourne une propriété facultative
+     *
+     * @param properties
+     *            les propriétés
+     * @param strKey
+     *            la clé
+     * @param strDefault
+     *            la valeur par défaut si la propriété est absente ou vide
+     * @return la valeur
+     */
+    private static String getOptional( Properties properties, String strKey, String strDefault )
+    {
+        String strValue = properties.getProperty( strKey );
+
+        return ( ( strValue == null ) || strValue.trim( ).isEmpty( ) ) ? strDefault : strValue.trim( );
+    }
+
+    /**
+     * Retourne une propriété obligatoire
+     *
+     * @param properties
+     *            les propriétés
+     * @param strKey
+     *            la clé
+     * @return la valeur
+     */
+    private static String getMandatory( Properties properties, String strKey )
+    {
+        String strValue = properties.getProperty( strKey );
+
+        if ( ( strValue == null ) || strValue.trim( ).isEmpty( ) )
+        {
+            throw new AppException( "Actes FAST : missing property " + strKey );
+        }
+
+        return strValue.trim( );
+    }
+
+    /**
+     * Retourne une propriété entière
+     *
+     * @param properties
+     *            les propriétés
+     * @param strKey
+     *            la clé
+     * @param nDefault
+     *            la valeur par défaut si la propriété est absente ou vide, ou null si la propriété est obligatoire
+     * @return la valeur
+     */
+    private static int getInt( Properties properties, String strKey, Integer nDefault )
+    {
+        String strValue = properties.getProperty( strKey );
+
+        if ( ( ( strValue == null ) || strValue.trim( ).isEmpty( ) ) && ( nDefault != null ) )
+        {
+            return nDefault;
+        }
+
+        try
+        {
+            return Integer.parseInt( getMandatory( properties, strKey ) );
+        }
+        catch( NumberFormatException e )
+        {
+            throw new AppException( "Actes FAST : invalid number " + strKey + "=" + strValue, e );
+        }
+    }
+}
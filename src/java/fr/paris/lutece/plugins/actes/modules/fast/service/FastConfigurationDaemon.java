@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.ack.FastAckWatcher;
+import fr.paris.lutece.portal.service.daemon.Daemon;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Daemon de rechargement de la configuration : remplace la configuration courante lorsque les propriétés du module ont changé, par exemple après
+ * leur rechargement depuis l'administration de Lutece. La surveillance des fichiers retour est redémarrée sur les nouveaux répertoires FAST.
+ * Les propriétés lues seulement à la création des services partagés ou au démarrage sont signalées : elles demandent un redémarrage.
+ */
+public class FastConfigurationDaemon extends Daemon
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run( )
+    {
+        FastConfigurationService service = FastConfigurationService.getInstance( );
+        List<String> listChanged;
+
+        try
+        {
+            listChanged = service.reloadIfChanged( );
+
+            if ( listChanged.isEmpty( ) )
+            {
+                setLastRunLogs( "Configuration unchanged" );
+
+                return;
+            }
+        }
+        catch( AppException e )
+        {
+            AppLogService.error( "Actes FAST : invalid configuration, current configuration kept : " + e.getMessage( ), e );
+            setLastRunLogs( "Invalid configuration, current configuration kept : " + e.getMessage( ) );
+
+            return;
+        }
+
+        FastAckWatcher watcher = FastAckWatcher.getInstance( );
+        FastConfiguration configuration = service.getConfiguration( );
+
+        if ( watcher.isStarted( ) )
+        {
+            watcher.stop( );
+        }
+
+        if ( configuration.isAckEnabled( ) )
+        {
+            watcher.start( configuration );
+        }
+
+        List<String> listRestart = new ArrayList<String>( );
+
+        for ( String strKey : listChanged )
+        {
+            if ( FastConfiguration.isRestartRequired( strKey ) )
+            {
+                listRestart.add( strKey );
+            }
+        }
+
+        if ( listRestart.isEmpty( ) )
+        {
+            setLastRunLogs( "Configuration reloaded : " + listChanged );
+
+            return;
+        }
+
+        AppLogService.info( "Actes FAST : configuration reloaded, changes to " + listRestart + " will only be applied after a restart" );
+        setLastRunLogs( "Configuration reloaded : " + listChanged + ", restart required for " + listRestart );
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Fournit la configuration courante du module. La configuration est construite au démarrage du plugin et remplacée atomiquement par
+ * {@link #reloadIfChanged()} lorsque les propriétés ont changé ; {@link FastConfigurationDaemon} en vérifie périodiquement les valeurs, ce qui prend
+ * en compte un rechargement des propriétés depuis l'administration de Lutece.
+ */
+public final class FastConfigurationService
+{
+    private static final FastConfigurationService _singleton = new FastConfigurationService( );
+    private final AtomicReference<FastConfiguration> _configuration = new AtomicReference<FastConfiguration>( );
+    private volatile Properties _properties;
+
+    /**
+     * Constructeur privé
+     */
+    private FastConfigurationService( )
+    {
+    }
+
+    /**
+     * Retourne l'instance unique du service
+     *
+     * @return l'instance unique du service
+     */
+    public static FastConfigurationService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Retourne la configuration courante, en la construisant si nécessaire
+     *
+     * @return la configuration courante
+     */
+    public FastConfiguration getConfiguration( )
+    {
+        FastConfiguration configuration = _configuration.get( );
+
+        if ( configuration == null )
+        {
+            Properties properties = readProperties( );
+            configuration = FastConfiguration.fromProperties( properties );
+
+            if ( _configuration.compareAndSet( null, configuration ) )
+            {
+                _properties = properties;
+            }
+            else
+            {
+                configuration = _configuration.get( );
+            }
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Relit et valide les propriétés du module puis remplace la configuration courante. En cas d'erreur, la configuration courante est conservée.
+     *
+     * @return la nouvelle configuration
+     */
+    public synchronized FastConfiguration reload( )
+    {
+        return apply( readProperties( ) );
+    }
+
+    /**
+     * Relit les propriétés du module et remplace la configuration courante si elles ont changé depuis sa construction. En cas d'erreur, la
+     * configuration courante est conservée.
+     *
+     * @return les clés des propriétés modifiées, vide si la configuration n'a pas été remplacée
+     */
+    public synchronized List<String> reloadIfChanged( )
+    {
+        Properties properties = readProperties( );
+
+        if ( properties.equals( _properties ) )
+        {
+            return Collections.emptyList( );
+        }
+
+        List<String> listChanged = getChangedKeys( _properties, properties );
+        apply( properties );
+
+        return listChanged;
+    }
+
+    /**
+     * Retourne les clés des propriétés dont la valeur diffère entre deux lectures
+     *
+     * @param previous
+     *            les propriétés précédentes, ou null si elles ne sont pas connues
+     * @param properties
+     *            les nouvelles propriétés
+     * @return les clés modifiées, ajoutées ou supprimées, triées
+     */
+    private static List<String> getChangedKeys( Properties previous, Properties properties )
+    {
+        Set<String> setKeys = new TreeSet<String>( properties.stringPropertyNames( ) );
+
+        if ( previous == null )
+        {
+            return new ArrayList<String>( setKeys );
+        }
+
+        setKeys.addAll( previous.stringPropertyNames( ) );
+
+        List<String> listChanged = new ArrayList<String>( );
+
+        for ( String strKey : setKeys )
+        {
+            if ( !Objects.equals( previous.getProperty( strKey ), properties.getProperty( strKey ) ) )
+            {
+                listChanged.add( strKey );
+            }
+        }
+
+        return listChanged;
+    }
+
+    /**
+     * Construit la configuration à partir des propriétés et remplace la configuration courante
+     *
+     * @param properties
+     *            les propriétés du module
+     * @return la nouvelle configuration
+     */
+    private FastConfiguration apply( Properties properties )
+    {
+        FastConfiguration configuration = FastConfiguration.fromProperties( properties );
+        _configuration.set( configuration );
+        _properties = properties;
+        AppLogService.info( "Actes FAST : configuration loaded" );
+
+        return configuration;
+    }
+
+    /**
+     * Remplace la configuration courante (outils de test et de mesure)
+     *
+     * @param configuration
+     *            la configuration
+     */
+    public synchronized void setConfiguration( FastConfiguration configuration )
+    {
+        _configuration.set( configuration );
+        _properties = null;
+    }
+
+    /**
+     * Lit les propriétés du module, puis celles de chacune des collectivités configurées
+     *
+     * @return les propriétés du module
+     */
+    private static Properties readProperties( )
+    {
+        Properties properties = new Properties( );
+        readProperties( properties, FastConfiguration.getPropertyKeys( ) );
+
+        for ( String strCode : FastConfiguration.getCollectivityCodes( properties ) )
+        {
+            readProperties( properties, FastConfiguration.getCollectivityPropertyKeys( strCode ) );
+        }
+
+        return properties;
+    }
+
+    /**
+     * Lit des propriétés du module
+     *
+     * @param properties
+     *            les propriétés à compléter
+     * @param keys
+     *            les clés des propriétés
+     */
+    private static void readProperties( Properties properties, String [ ] keys )
+    {
+        for ( String strKey : keys )
+        {
+            String strValue = AppPropertiesService.getProperty( strKey );
+
+            if ( strValue != null )
+            {
+                properties.setProperty( strKey, strValue );
+            }
+        }
+    }
+}
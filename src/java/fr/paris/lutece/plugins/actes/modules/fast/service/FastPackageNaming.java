@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+
+/**
+ * Nommage des paquets FAST. Le préfixe Departement-Num_Siren- est précalculé par profil de collectivité ; seuls la date de décision et le
+ * numéro de délibération sont assemblés à chaque transmission. Le format de date est immuable et partagé entre les threads.
+ */
+public final class FastPackageNaming
+{
+    private static final DateTimeFormatter FORMAT_DATE_DECISION = DateTimeFormatter.ofPattern( "yyyyMMdd" );
+    private final String _strTypeSuffix;
+    private final String _strTransactionTransmission;
+    private final String _strTransactionAnnulation;
+
+    /**
+     * Constructeur
+     *
+     * @param strTypeLibelle
+     *            le libellé du type d'acte
+     * @param strTransactionTransmission
+     *            le code de transaction d'une transmission
+     * @param strTransactionAnnulation
+     *            le code de transaction d'une annulation
+     */
+    public FastPackageNaming( String strTypeLibelle, String strTransactionTransmission, String strTransactionAnnulation )
+    {
+        _strTypeSuffix = FastPackage.NAME_SEPARATOR + strTypeLibelle;
+        _strTransactionTransmission = strTransactionTransmission;
+        _strTransactionAnnulation = strTransactionAnnulation;
+    }
+
+    /**
+     * Retourne le paquet de la transmission d'un acte
+     *
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return le paquet
+     */
+    public FastPackage newTransmission( FastCollectivityProfile profile, String strNumeroDeliberation, Timestamp tsDateDecision )
+    {
+        return new FastPackage( getIdActe( profile, strNumeroDeliberation, tsDateDecision ), _strTransactionTransmission );
+    }
+
+    /**
+     * Retourne le paquet de l'annulation d'un acte
+     *
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return le paquet
+     */
+    public FastPackage newAnnulation( FastCollectivityProfile profile, String strNumeroDeliberation, Timestamp tsDateDecision )
+    {
+        return new FastPackage( getIdActe( profile, strNumeroDeliberation, tsDateDecision ), _strTransactionAnnulation );
+    }
+
+    /**
+     * Retourne l'identifiant de l'acte, de la forme Departement-Num_Siren-DateDecision-NumeroDelib-Type_Acte, par exemple
+     * 075-217500055-20090707-ODS000000000074-DE. La date de décision est celle du fuseau horaire de la JVM.
+     *
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return l'identifiant de l'acte
+     */
+    public String getIdActe( FastCollectivityProfile profile, String strNumeroDeliberation, Timestamp tsDateDecision )
+    {
+        String strPrefix = profile.getNamePrefix( );
+        StringBuilder sbIdActe = new StringBuilder( strPrefix.length( ) + 10 + strNumeroDeliberation.length( ) + _strTypeSuffix.length( ) );
+        sbIdActe.append( strPrefix );
+        FORMAT_DATE_DECISION.formatTo( tsDateDecision.toLocalDateTime( ), sbIdActe );
+        sbIdActe.append( FastPackage.NAME_SEPARATOR ).append( strNumeroDeliberation ).append( _strTypeSuffix );
+
+        return sbIdActe.toString( );
+    }
+}
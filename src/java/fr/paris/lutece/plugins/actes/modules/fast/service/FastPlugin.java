@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.io.IOException;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.ack.FastAckWatcher;
+import fr.paris.lutece.plugins.actes.modules.fast.service.index.FastSubmissionIndex;
+import fr.paris.lutece.plugins.actes.modules.fast.service.journal.FastJournalRecovery;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.plugins.actes.modules.fast.service.queue.FastOutboundQueue;
+import fr.paris.lutece.plugins.actes.modules.fast.service.xml.FastJaxbService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
+
+/**
+ * Plugin actes-fast
+ */
+public class FastPlugin extends PluginDefaultImplementation
+{
+    /** Nom du plugin */
+    public static final String PLUGIN_NAME = "actes-fast";
+
+    /**
+     * Initialisation du plugin
+     */
+    @Override
+    public void init( )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).reload( );
+
+        try
+        {
+            new FastJournalRecovery( ).recover( configuration );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : recovery of interrupted transmissions failed : " + e.getMessage( ), e );
+        }
+
+        FastJaxbService.getInstance( ).warmUp( );
+        FastMetrics.getInstance( ).register( );
+
+        // Un rejet de FAST retire le paquet de l'index, pour qu'un nouvel envoi du même acte soit déposé
+        FastAckWatcher.getInstance( ).addListener( FastSubmissionIndex::onAcknowledgement );
+
+        if ( configuration.isAckEnabled( ) )
+        {
+            FastAckWatcher.getInstance( ).start( configuration );
+        }
+
+        if ( configuration.isAsyncEnabled( ) )
+        {
+            // Démarre les threads d'envoi, qui reprennent les transmissions laissées sur disque
+            FastOutboundQueue.getInstance( );
+        }
+    }
+}
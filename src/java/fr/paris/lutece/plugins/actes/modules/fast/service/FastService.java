@@ -33,86 +33,71 @@
  */
 package fr.paris.lutece.plugins.actes.modules.fast.service;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 
 import fr.gouv.interieur.actes_v1.Annulation;
 import fr.gouv.interieur.actes_v1.DonneesActe;
 import fr.gouv.interieur.actes_v1.FichierSigne;
 import fr.gouv.interieur.actes_v1.DonneesActe.Annexes;
-import fr.paris.lutece.plugins.actes.util.ActeNamespacePrefixMapper;
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastBatchReport;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastManifest;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastSendResult;
+import fr.paris.lutece.plugins.actes.modules.fast.service.ack.FastAckWatcher;
+import fr.paris.lutece.plugins.actes.modules.fast.service.index.FastSubmissionIndex;
+import fr.paris.lutece.plugins.actes.modules.fast.service.index.FastSubmissionLock;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastDigest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.plugins.actes.modules.fast.service.journal.FastJournal;
+import fr.paris.lutece.plugins.actes.modules.fast.service.journal.FastJournalState;
+import fr.paris.lutece.plugins.actes.modules.fast.service.lane.FastLanePermit;
+import fr.paris.lutece.plugins.actes.modules.fast.service.lane.FastLaneScheduler;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastStage;
+import fr.paris.lutece.plugins.actes.modules.fast.service.queue.FastOutboundQueue;
+import fr.paris.lutece.plugins.actes.modules.fast.service.queue.FastOutboundRequest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.retry.FastDeadLetterStore;
+import fr.paris.lutece.plugins.actes.modules.fast.service.retry.FastRetryContext;
+import fr.paris.lutece.plugins.actes.modules.fast.service.retry.FastRetryableAction;
+import fr.paris.lutece.plugins.actes.modules.fast.service.space.FastSpaceController;
+import fr.paris.lutece.plugins.actes.modules.fast.service.space.FastSpaceReservation;
+import fr.paris.lutece.plugins.actes.modules.fast.service.store.FastAnnexStore;
+import fr.paris.lutece.plugins.actes.modules.fast.service.xml.FastJaxbService;
 import fr.paris.lutece.portal.service.util.AppLogService;
-import fr.paris.lutece.portal.service.util.AppPropertiesService;
-import fr.paris.lutece.util.date.DateUtil;
 
 /**
  * S2LOW implementation
  */
 public class FastService
 {
-    private static final Locale LOCALE = new Locale( "fr" );
-    private static final String EXTENSION_PDF_PJ = ".pdf";
-    private static final String EXTENSION_XML = ".xml";
-    private static final String EXTENSION_WS = ".ws";
-    private static final String EXTENSION_OK = ".OK";
-    private static final String PATH_SEPARATOR = "/";
-    private static final String NAME_SEPARATOR = "-";
-    private static final String NAME_UNDERSCOR_SEPARATOR = "_";
-    private static final String ETC = "...";
-    private static final String NUMERO_ZERO_PJ = "0";
-    private static final String PROPERTY_ACTE_DATE_CLASSIFICATION = "actes-fast.date.classification";
-    private static final String PROPERTY_ACTE_SIREN_VILLE = "actes-fast.odsville.siren";
-    private static final String PROPERTY_ACTE_SIREN_DEPT = "actes-fast.odsdept.siren";
-    private static final String PROPERTY_ACTE_DIR_PATH = "actes-fast.tmp.path.directory";
-    private static final String PROPERTY_ACTE_FAST_DIR_PATH = "actes-fast.fast.path.directory";
-    private static final String PROPERTY_ACTE_DEPT = "actes-fast.departement";
-    private static final String PROPERTY_ACTE_TRANSACTION_TRANSMISSION = "actes-fast.transaction.transmission";
-    private static final String PROPERTY_ACTE_TRANSACTION_ANNULATION = "actes-fast.transaction.annulation";
-    private static final String PROPERTY_ACTE_WS_TRAITEMENT = "actes-fast.ws.traitement";
-    private static final String PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE = "actes-fast.ws.odsville.dnutilisateur";
-    private static final String PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT = "actes-fast.ws.odsdept.dnutilisateur";
-    private static final String PROPERTY_ACTE_TYPE_LIBELLE = "actes-fast.type.libelle";
-    private static final String PROPERTY_ACTE_TYPE_NUM = "actes-fast.type.num";
-    private static final String PROPERTY_NB_CARACTERES_MAX = "actes-fast.nb.caracteres.max";
-    private static final String PROPERTY_CARACTERES_DEFICIENT = "actes-fast.caracteres.deficient";
-    private static final int NB_CARACTERES_MAX_DEFAULT = 400;
-    private static final String XML_ENTETE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
-    private static final String XML_WS_ENTETE = "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:SOAP-ENC=\"http://schemas.xmlsoap.org/soap/encoding/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:cascl=\"http://dev.cdcfast.fr/connecteur/V20\"><SOAP-ENV:Body>";
-    private static final String XML_WS_FERMETURE_ENTETE = "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
-    private static final String XML_WS_BALISE_ACTE = "<cascl:traiterACTES>";
-    private static final String XML_WS_BALISE_FERMETURE_ACTE = "</cascl:traiterACTES>";
-    private static final String XML_WS_BALISE_TRAITEMENT = "<cascl:typeTraitement>";
-    private static final String XML_WS_BALISE_FERMETURE_TRAITEMENT = "</cascl:typeTraitement>";
-    private static final String XML_WS_BALISE_DNUTILISATEUR = "<cascl:DNUtilisateur>";
-    private static final String XML_WS_BALISE_FERMETURE_DNUTILISATEUR = "</cascl:DNUtilisateur>";
-    private static final String XML_WS_BALISE_SIREN = "<cascl:SIREN>";
-    private static final String XML_WS_BALISE_FERMETURE_SIREN = "</cascl:SIREN>";
-    private static final String XML_WS_BALISE_FICHIER = "<cascl:fichierACTES>";
-    private static final String XML_WS_BALISE_FERMETURE_FICHIER = "</cascl:fichierACTES>";
-    private static final String XML_ENCODING = "actes-fast.xml.encoding";
-    private static final String XML_ENCODING_DEFAULT = "ISO-8859-1";
-    private static final String CONSTANTE_CARACTERS_DEFICIENT_SEPARATOR = ",";
-    private static final String CONSTANTE_CARACTERS_DEFICIENT_REPLACE = "?";
-    private static final String EMPTY_STRING = "";
-    private static final String CONSTANTE_PATTERN_DATE = "yyyyMMdd";
+    private static final String CONTENT_SEPARATOR = "-";
+    private static final String STEP_WORKSPACE = "Temporary directory creation";
+    private static final String STEP_WRITE = "Writing ";
+    private static final String STEP_COPY = "Copy to FAST directory";
+    private static final String STEP_MANIFEST = "Manifest publication";
+    private static final String STEP_MARKER = "Marker publication";
+    private final FastTransferEngine _transferEngine = new FastTransferEngine( );
 
     /**
      * Constructeur vide
@@ -147,41 +132,109 @@ public class FastService
     public boolean sendActe( String strNumeroDeliberation, List<byte [ ]> listFile, byte [ ] deliberationFinal, String strObjet, int nCodeMatiere1,
             int nCodeMatiere2, boolean bIsMunicipal, Timestamp tsDateDecision ) throws IOException
     {
-        fr.paris.lutece.plugins.actes.business.Acte acte = new fr.paris.lutece.plugins.actes.business.Acte( );
+        ActeSubmission submission = new ActeSubmission( );
+        submission.setNumeroDeliberation( strNumeroDeliberation );
+        submission.setDeliberationFinale( PayloadSource.fromBytes( deliberationFinal ) );
 
-        acte.setCodeNatureActe( Integer.parseInt( AppPropertiesService.getProperty( PROPERTY_ACTE_TYPE_NUM ) ) );
+        for ( byte [ ] b : listFile )
+        {
+            submission.addAnnexe( PayloadSource.fromBytes( b ) );
+        }
 
-        String strXmlEncoding = AppPropertiesService.getProperty( XML_ENCODING, XML_ENCODING_DEFAULT );
+        submission.setObjet( strObjet );
+        submission.setCodeMatiere1( nCodeMatiere1 );
+        submission.setCodeMatiere2( nCodeMatiere2 );
+        submission.setMunicipal( bIsMunicipal );
+        submission.setDateDecision( tsDateDecision );
 
-        String strObjetEncoded = new String( strObjet.getBytes( ), strXmlEncoding );
+        return sendActe( submission );
+    }
 
-        String [ ] strDeficientCaracters = getDeficientCaracteres( );
+    /**
+     * Envoi une transmission d'un acte dont les fichiers sont fournis en flux. Chaque fichier est recopié directement sur disque par blocs, sans être
+     * chargé en mémoire.
+     * 
+     * @param submission
+     *            la demande de transmission
+     * @return true si la transmission s'est bien déroulée, false sinon
+     * @throws IOException
+     *             IOException
+     */
+    public boolean sendActe( ActeSubmission submission ) throws IOException
+    {
+        return sendActe( submission, new FastManifest( ) );
+    }
 
-        for ( String strCaracters : strDeficientCaracters )
-        {
-            if ( !strCaracters.trim( ).equals( EMPTY_STRING ) )
-            {
-                strObjetEncoded = strObjetEncoded.replace( strCaracters.trim( ), CONSTANTE_CARACTERS_DEFICIENT_REPLACE );
-            }
-        }
+    /**
+     * Envoi une transmission d'un acte et complète le manifeste du paquet déposé. Les empreintes des fichiers sont calculées pendant leur écriture.
+     * La transmission attend au besoin une place dans la file de sa collectivité.
+     * 
+     * @param submission
+     *            la demande de transmission
+     * @param manifest
+     *            le manifeste à compléter ; son nom de paquet reste null si aucun paquet n'est déposé : il porte alors le nom du paquet
+     *            déjà déposé avec le même contenu, ou indique qu'un dépôt du même acte est en cours
+     * @return true si la transmission s'est bien déroulée ou si le même contenu avait déjà été déposé, false sinon, notamment si un dépôt du
+     *         même acte est déjà en cours
+     * @throws IOException
+     *             IOException
+     * @throws IllegalArgumentException
+     *             si la collectivité de la demande n'est pas configurée
+     */
+    public boolean sendActe( ActeSubmission submission, FastManifest manifest ) throws IOException
+    {
+        long lStart = System.nanoTime( );
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        FastCollectivityProfile profile = configuration.getProfile( submission.getCollectivity( ), submission.isMunicipal( ) );
+        FastLanePermit permit = null;
+        boolean bSuccess = false;
 
-        String strNumeroDeliberationEncoded = new String( strNumeroDeliberation.getBytes( ), strXmlEncoding );
+        try
+        {
+            permit = FastLaneScheduler.getInstance( ).acquire( profile, FastMetrics.TRANSACTION_TRANSMISSION );
+            bSuccess = envoyerActe( configuration, profile, submission, manifest );
 
-        // V�rification du nombre de caract�res maximum autoris�s
-        int nNbCaracteresMax = AppPropertiesService.getPropertyInt( PROPERTY_NB_CARACTERES_MAX, NB_CARACTERES_MAX_DEFAULT );
-        if ( strObjetEncoded.length( ) > nNbCaracteresMax )
+            return bSuccess;
+        }
+        finally
         {
-            strObjetEncoded = strObjetEncoded.substring( 0, nNbCaracteresMax - 3 ) + ETC;
+            releaseLane( permit );
+            FastMetrics.getInstance( ).recordTransmission( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, bSuccess, lStart );
         }
+    }
+
+    /**
+     * Prépare et dépose le paquet d'un acte
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param submission
+     *            la demande de transmission
+     * @param manifest
+     *            le manifeste à compléter
+     * @return true si la transmission s'est bien déroulée, false sinon
+     * @throws IOException
+     *             IOException
+     */
+    private boolean envoyerActe( FastConfiguration configuration, FastCollectivityProfile profile, ActeSubmission submission, FastManifest manifest )
+            throws IOException
+    {
+        FastMetrics metrics = FastMetrics.getInstance( );
+        String strNumeroDeliberation = submission.getNumeroDeliberation( );
+        String strObjet = submission.getObjet( );
+        Timestamp tsDateDecision = submission.getDateDecision( );
+        FastTitleSanitizer sanitizer = configuration.getSanitizer( );
+        fr.paris.lutece.plugins.actes.business.Acte acte = new fr.paris.lutece.plugins.actes.business.Acte( );
 
-        acte.setObjet( strObjetEncoded );
-        acte.setNumeroInterne( strNumeroDeliberationEncoded );
+        acte.setCodeNatureActe( configuration.getTypeNum( ) );
 
-        String strDateClassification = AppPropertiesService.getProperty( PROPERTY_ACTE_DATE_CLASSIFICATION );
-        Date dateClassification = DateUtil.formatDateSql( strDateClassification, LOCALE );
-        Calendar calClassificationd = new GregorianCalendar( );
-        calClassificationd.setTime( dateClassification );
-        acte.setClassificationDateVersion( calClassificationd );
+        long lStageStart = System.nanoTime( );
+        acte.setObjet( sanitizer.sanitizeObjet( strObjet ) );
+        acte.setNumeroInterne( sanitizer.sanitizeNumeroInterne( strNumeroDeliberation ) );
+        metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, FastStage.SANITIZE, lStageStart );
+        acte.setClassificationDateVersion( configuration.getClassificationDate( ) );
 
         // Date acte = date de vote/decision de l'acte
         GregorianCalendar calDecision = new GregorianCalendar( );
@@ -190,93 +243,250 @@ public class FastService
 
         // Classification acte
         DonneesActe.CodeMatiere1 cm1 = new DonneesActe.CodeMatiere1( );
-        cm1.setCodeMatiere( new Integer( nCodeMatiere1 ) );
+        cm1.setCodeMatiere( new Integer( submission.getCodeMatiere1( ) ) );
         acte.setCodeMatiere1( cm1 );
 
         DonneesActe.CodeMatiere2 cm2 = new DonneesActe.CodeMatiere2( );
-        cm2.setCodeMatiere( new Integer( nCodeMatiere2 ) );
+        cm2.setCodeMatiere( new Integer( submission.getCodeMatiere2( ) ) );
         acte.setCodeMatiere2( cm2 );
 
-        // Construction du r�pertoire temporaire
-        Long lCurrentDate = System.currentTimeMillis( );
-        String strTmpPath = AppPropertiesService.getProperty( PROPERTY_ACTE_DIR_PATH ) + PATH_SEPARATOR + lCurrentDate;
-        boolean bIsDirectoryCreated = new File( strTmpPath ).mkdir( );
+        /**************************** Construction des noms de fichier **********************************/
+        FastPackage fastPackage = configuration.getPackageNaming( ).newTransmission( profile, strNumeroDeliberation, tsDateDecision );
 
-        if ( bIsDirectoryCreated )
+        // Réservation de l'acte dans l'index des transmissions déjà déposées
+        String strIndexKey = fastPackage.getIndexKey( );
+        FastSubmissionIndex index = FastSubmissionIndex.getInstance( );
+        FastSubmissionLock lock = reserverIndex( index, strIndexKey, manifest );
+
+        if ( ( index != null ) && ( lock == null ) )
         {
-            Annexes annexes = new Annexes( );
+            return false;
+        }
 
-            /**************************** Construction des noms de fichier **********************************/
-            String strTypeActe = AppPropertiesService.getProperty( PROPERTY_ACTE_TYPE_LIBELLE );
-            String strDept = AppPropertiesService.getProperty( PROPERTY_ACTE_DEPT );
-            String strTransaction = AppPropertiesService.getProperty( PROPERTY_ACTE_TRANSACTION_TRANSMISSION );
-            String strSiren;
+        // Empreinte du contenu calculée avant toute écriture lorsque les fichiers peuvent être relus : un doublon est écarté sans rien écrire
+        String strContentHash = ( index != null ) ? hashContent( submission ) : null;
 
-            if ( bIsMunicipal )
-            {
-                strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_VILLE );
-            }
-            else
-            {
-                strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_DEPT );
-            }
+        if ( ( strContentHash != null ) && isDejaDepose( index, lock, strContentHash, manifest ) )
+        {
+            return true;
+        }
 
-            String strDateCurrentFormat = getDateDecision( tsDateDecision );
+        // Réservation de l'espace disque du paquet, avant toute écriture
+        FastSpaceReservation reservation = reserverEspace( fastPackage, profile, submission, index, lock );
 
-            // Piece jointe Annexe sans extension
-            String strNameFichierPJ = strDept + NAME_SEPARATOR + strSiren + NAME_SEPARATOR + strDateCurrentFormat + NAME_SEPARATOR + strNumeroDeliberation
-                    + NAME_SEPARATOR + strTypeActe + NAME_SEPARATOR + strTransaction + NAME_UNDERSCOR_SEPARATOR;
+        // Construction du r�pertoire temporaire
+        FastRetryContext retry = new FastRetryContext( configuration, fastPackage.getName( ) );
+        FastWorkspace workspace = allocateWorkspace( configuration, retry );
+
+        if ( workspace == null )
+        {
+            releaseSpace( reservation );
+            releaseIndex( index, lock );
 
-            // Piece jointe Metier sans extension
-            String strNameFichierPJMetier = strNameFichierPJ + NUMERO_ZERO_PJ;
+            return false;
+        }
+
+        try
+        {
+            Annexes annexes = new Annexes( );
 
-            // Piece jointe D�lib�ration final sans extension
-            int numeroPJ = 1;
-            String strNameFichierDeliberation = strNameFichierPJ + String.valueOf( numeroPJ );
+            // Empreinte du contenu, composée des empreintes des fichiers calculées pendant leur écriture si elle n'a pu l'être d'avance
+            MessageDigest contentDigest = newContentDigest( submission );
 
             // Cr�ation du fichier de d�lib�ration final
-            creationFichierDeliberationFinale( strTmpPath, strNameFichierDeliberation, deliberationFinal );
+            lStageStart = System.nanoTime( );
+            int numeroPJ = FastPackage.NUMERO_DELIBERATION;
+            String strNameFichierDeliberation = fastPackage.getAttachmentFileName( numeroPJ );
+            Path deliberation = workspace.resolve( strNameFichierDeliberation );
+            addEntry( manifest, contentDigest, deliberation, creationFichierPJ( retry, deliberation, submission.getDeliberationFinale( ), null ) );
 
             FichierSigne fichier = new FichierSigne( );
-            fichier.setNomFichier( strNameFichierDeliberation + EXTENSION_PDF_PJ );
+            fichier.setNomFichier( strNameFichierDeliberation );
             acte.setDocument( fichier );
 
             // Construction des fichiers piece jointe annexes
             numeroPJ++;
 
-            for ( byte [ ] b : listFile )
+            FastAnnexStore store = FastAnnexStore.getInstance( );
+
+            for ( PayloadSource annexe : submission.getAnnexes( ) )
             {
-                FileOutputStream fileOutputStream = new FileOutputStream( new File( strTmpPath + PATH_SEPARATOR + strNameFichierPJ + numeroPJ
-                        + EXTENSION_PDF_PJ ) );
-                BufferedOutputStream buffer = new BufferedOutputStream( fileOutputStream );
-                buffer.write( b );
-                buffer.close( );
+                String strNameFichierAnnexe = fastPackage.getAttachmentFileName( numeroPJ );
+                Path fichierPJ = workspace.resolve( strNameFichierAnnexe );
+                addEntry( manifest, contentDigest, fichierPJ, creationFichierPJ( retry, fichierPJ, annexe, store ) );
 
                 FichierSigne fichierAnnexe = new FichierSigne( );
-                fichierAnnexe.setNomFichier( strNameFichierPJ + numeroPJ + EXTENSION_PDF_PJ );
+                fichierAnnexe.setNomFichier( strNameFichierAnnexe );
                 annexes.getAnnexe( ).add( fichierAnnexe );
                 numeroPJ++;
             }
 
-            annexes.setNombre( numeroPJ - 2 );
+            int nNombreAnnexes = numeroPJ - FastPackage.NUMERO_DELIBERATION - 1;
+            annexes.setNombre( nNombreAnnexes );
             acte.setAnnexes( annexes );
+            metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, FastStage.ANNEXES, lStageStart );
+            metrics.recordAnnexes( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, nNombreAnnexes );
             // Creation du fichier Metier
-            creationFichierMetier( strTmpPath, strNameFichierPJMetier + EXTENSION_XML, acte.getXML( ) );
+            lStageStart = System.nanoTime( );
+            manifest.addEntry( retry.execute( STEP_WRITE + fastPackage.getMetierFileName( ),
+                    ( ) -> creationFichierMetier( workspace.resolve( fastPackage.getMetierFileName( ) ), acte ) ) );
+            metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, FastStage.XML, lStageStart );
             // Creation du fichier WebService
-            creationFichierWebService( strTmpPath, strNameFichierPJMetier, strNameFichierPJMetier + EXTENSION_XML, bIsMunicipal );
+            lStageStart = System.nanoTime( );
+            manifest.addEntry( retry.execute( STEP_WRITE + fastPackage.getEnvelopeFileName( ),
+                    ( ) -> creationFichierWebService( workspace.getPath( ), fastPackage, profile ) ) );
+            metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, FastStage.WS, lStageStart );
+            metrics.recordBytes( profile.getCode( ), FastMetrics.TRANSACTION_TRANSMISSION, manifest.getSize( ) );
             // Copie du r�pertoire temporaire vers r�pertoire fast
-            copierFichierDansFast( strTmpPath, strNameFichierPJ + NUMERO_ZERO_PJ );
+            deposerPaquet( configuration, profile, FastMetrics.TRANSACTION_TRANSMISSION, workspace, index, lock,
+                    ( strContentHash != null ) ? strContentHash : FastDigest.toHex( contentDigest.digest( ) ), fastPackage.getName( ), manifest, retry,
+                    ( index != null ) ? configuration.getPackageNaming( ).newAnnulation( profile, strNumeroDeliberation, tsDateDecision ).getIndexKey( )
+                            : null );
+        }
+        finally
+        {
             // Suppression r�pertoire temporaire
-            supprimerRepertoireTmp( strTmpPath );
+            supprimerRepertoireTmp( profile, FastMetrics.TRANSACTION_TRANSMISSION, workspace );
+            releaseSpace( reservation );
+            releaseIndex( index, lock );
         }
-        else
+
+        return true;
+    }
+
+    /**
+     * Envoi un lot de transmissions d'actes. Les paquets sont préparés en parallèle, dans la file de leur collectivité et dans la limite du nombre de
+     * transmissions simultanées configuré (actes-fast.batch.max.concurrent). L'échec d'un acte n'interrompt pas le lot.
+     * 
+     * @param submissions
+     *            les demandes de transmission
+     * @return le compte rendu du lot, un résultat par acte dans l'ordre des demandes
+     */
+    public FastBatchReport sendActes( Collection<ActeSubmission> submissions )
+    {
+        long lStart = System.currentTimeMillis( );
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        FastLaneScheduler scheduler = FastLaneScheduler.getInstance( );
+        List<Future<FastSendResult>> listFutures = new ArrayList<Future<FastSendResult>>( submissions.size( ) );
+
+        for ( final ActeSubmission submission : submissions )
         {
-            AppLogService.error( "Error when copying files : directory doesn't exist." );
+            try
+            {
+                FastCollectivityProfile profile = configuration.getProfile( submission.getCollectivity( ), submission.isMunicipal( ) );
+                listFutures.add( scheduler.submit( profile, FastMetrics.TRANSACTION_TRANSMISSION, ( ) -> sendActeWithResult( submission ) ) );
+            }
+            catch( IllegalArgumentException e )
+            {
+                listFutures.add( CompletableFuture.completedFuture( new FastSendResult( submission.getNumeroDeliberation( ), false, e.getMessage( ), e, 0 ) ) );
+            }
+        }
 
-            return false;
+        FastBatchReport report = new FastBatchReport( );
+        Iterator<ActeSubmission> iterSubmissions = submissions.iterator( );
+
+        for ( Future<FastSendResult> future : listFutures )
+        {
+            ActeSubmission submission = iterSubmissions.next( );
+
+            try
+            {
+                report.addResult( future.get( ) );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                future.cancel( true );
+                report.addResult( new FastSendResult( submission.getNumeroDeliberation( ), false, "Interrupted", e, 0 ) );
+            }
+            catch( ExecutionException e )
+            {
+                report.addResult( new FastSendResult( submission.getNumeroDeliberation( ), false, e.getCause( ).getMessage( ), e.getCause( ), 0 ) );
+            }
         }
 
-        return true;
+        report.setDuration( System.currentTimeMillis( ) - lStart );
+
+        return report;
+    }
+
+    /**
+     * Envoi une transmission d'un acte et en retourne le résultat au lieu de propager les erreurs
+     * 
+     * @param submission
+     *            la demande de transmission
+     * @return le résultat de la transmission
+     */
+    private FastSendResult sendActeWithResult( ActeSubmission submission )
+    {
+        return FastOutboundRequest.acte( submission ).execute( this );
+    }
+
+    /**
+     * Envoi une transmission d'un acte sans bloquer l'appelant. Si la file d'envoi est activée (actes-fast.async.enabled), la transmission y est
+     * placée et traitée par les threads d'envoi ; sinon elle est faite immédiatement.
+     * <p>
+     * Les fichiers fournis en flux ({@link PayloadSource#fromStream}, {@link PayloadSource#fromChannel}) ne peuvent être lus qu'une fois et
+     * l'appelant peut les fermer dès le retour de la méthode : une telle transmission est recopiée sur disque dès sa mise en file, dans le
+     * répertoire de débordement, quelle que soit la politique configurée. Elle est rejetée si ce répertoire est inutilisable.
+     * 
+     * @param submission
+     *            la demande de transmission
+     * @return le résultat à venir de la transmission
+     */
+    public CompletableFuture<FastSendResult> sendActeAsync( ActeSubmission submission )
+    {
+        return submit( FastOutboundRequest.acte( submission ) );
+    }
+
+    /**
+     * Envoie une demande d'annulation d'acte sans bloquer l'appelant. Si la file d'envoi est activée (actes-fast.async.enabled), la demande y est
+     * placée et traitée par les threads d'envoi ; sinon elle est faite immédiatement.
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param bIsMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return le résultat à venir de la transmission
+     */
+    public CompletableFuture<FastSendResult> sendAnnulationActeAsync( String strNumeroDeliberation, boolean bIsMunicipal, Timestamp tsDateDecision )
+    {
+        return submit( FastOutboundRequest.annulation( strNumeroDeliberation, bIsMunicipal, tsDateDecision ) );
+    }
+
+    /**
+     * Envoie sans bloquer l'appelant une demande d'annulation d'un acte d'une collectivité configurée
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return le résultat à venir de la transmission
+     */
+    public CompletableFuture<FastSendResult> sendAnnulationActeAsync( String strNumeroDeliberation, String strCollectivity, Timestamp tsDateDecision )
+    {
+        return submit( FastOutboundRequest.annulation( strNumeroDeliberation, strCollectivity, tsDateDecision ) );
+    }
+
+    /**
+     * Place une transmission dans la file d'envoi si elle est activée, ou l'effectue immédiatement
+     * 
+     * @param request
+     *            la transmission
+     * @return le résultat à venir de la transmission
+     */
+    private CompletableFuture<FastSendResult> submit( FastOutboundRequest request )
+    {
+        if ( FastConfigurationService.getInstance( ).getConfiguration( ).isAsyncEnabled( ) )
+        {
+            return FastOutboundQueue.getInstance( ).submit( request );
+        }
+
+        return CompletableFuture.completedFuture( request.execute( this ) );
     }
 
     /**
@@ -294,264 +504,903 @@ public class FastService
      */
     public boolean sendAnnulationActe( String strNumeroDeliberation, boolean bIsMunicipal, Timestamp tsDateDecision ) throws IOException
     {
-        Annulation d = new Annulation( );
+        return sendAnnulationActe( strNumeroDeliberation, bIsMunicipal, tsDateDecision, new FastManifest( ) );
+    }
 
-        // Construction du r�pertoire temporaire
-        Long lCurrentDate = System.currentTimeMillis( );
-        String strTmpPath = AppPropertiesService.getProperty( PROPERTY_ACTE_DIR_PATH ) + PATH_SEPARATOR + lCurrentDate;
-        boolean bIsDirectoryCreated = new File( strTmpPath ).mkdir( );
+    /**
+     * Envoie une demande d'annulation d'acte et complète le manifeste du paquet déposé
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param bIsMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @param manifest
+     *            le manifeste à compléter ; son nom de paquet reste null si aucun paquet n'est déposé : il porte alors le nom du paquet
+     *            déjà déposé, ou indique qu'un dépôt de la même annulation est en cours
+     * @return true si la transmission s'est bien déroulée ou si l'annulation avait déjà été déposée, false sinon, notamment si un dépôt de la
+     *         même annulation est déjà en cours
+     * @throws IOException
+     *             IOException
+     */
+    public boolean sendAnnulationActe( String strNumeroDeliberation, boolean bIsMunicipal, Timestamp tsDateDecision, FastManifest manifest )
+            throws IOException
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        return sendAnnulationActe( configuration, configuration.getProfile( bIsMunicipal ), strNumeroDeliberation, tsDateDecision, manifest );
+    }
+
+    /**
+     * Envoie une demande d'annulation d'un acte d'une collectivité configurée
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return true si la transmission s'est bien déroulée, false sinon
+     * @throws IOException
+     *             IOException
+     * @throws IllegalArgumentException
+     *             si la collectivité n'est pas configurée
+     */
+    public boolean sendAnnulationActe( String strNumeroDeliberation, String strCollectivity, Timestamp tsDateDecision ) throws IOException
+    {
+        return sendAnnulationActe( strNumeroDeliberation, strCollectivity, tsDateDecision, new FastManifest( ) );
+    }
+
+    /**
+     * Envoie une demande d'annulation d'un acte d'une collectivité configurée et complète le manifeste du paquet déposé
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @param manifest
+     *            le manifeste à compléter ; son nom de paquet reste null si aucun paquet n'est déposé : il porte alors le nom du paquet
+     *            déjà déposé, ou indique qu'un dépôt de la même annulation est en cours
+     * @return true si la transmission s'est bien déroulée ou si l'annulation avait déjà été déposée, false sinon, notamment si un dépôt de la
+     *         même annulation est déjà en cours
+     * @throws IOException
+     *             IOException
+     * @throws IllegalArgumentException
+     *             si la collectivité n'est pas configurée
+     */
+    public boolean sendAnnulationActe( String strNumeroDeliberation, String strCollectivity, Timestamp tsDateDecision, FastManifest manifest )
+            throws IOException
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        return sendAnnulationActe( configuration, configuration.getProfile( strCollectivity ), strNumeroDeliberation, tsDateDecision, manifest );
+    }
+
+    /**
+     * Oublie les transmissions et annulations d'un acte enregistrées dans l'index des transmissions déjà déposées : le prochain envoi de l'acte
+     * est déposé même si son contenu est inchangé, par exemple après le rejet de l'acte par FAST lorsque les fichiers retour ne sont pas
+     * surveillés.
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param bIsMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return true si au moins une entrée a été oubliée, false si l'index est désactivé, si l'acte n'y figure pas ou si un dépôt de l'acte est
+     *         en cours
+     * @throws IOException
+     *             IOException
+     */
+    public boolean forgetActe( String strNumeroDeliberation, boolean bIsMunicipal, Timestamp tsDateDecision ) throws IOException
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        return forgetActe( configuration, configuration.getProfile( bIsMunicipal ), strNumeroDeliberation, tsDateDecision );
+    }
 
-        if ( bIsDirectoryCreated )
+    /**
+     * Oublie les transmissions et annulations d'un acte d'une collectivité configurée enregistrées dans l'index des transmissions déjà déposées
+     * 
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return true si au moins une entrée a été oubliée, false si l'index est désactivé, si l'acte n'y figure pas ou si un dépôt de l'acte est
+     *         en cours
+     * @throws IOException
+     *             IOException
+     * @throws IllegalArgumentException
+     *             si la collectivité n'est pas configurée
+     */
+    public boolean forgetActe( String strNumeroDeliberation, String strCollectivity, Timestamp tsDateDecision ) throws IOException
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        return forgetActe( configuration, configuration.getProfile( strCollectivity ), strNumeroDeliberation, tsDateDecision );
+    }
+
+    /**
+     * Oublie les transmissions et annulations d'un acte enregistrées dans l'index
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return true si au moins une entrée a été oubliée
+     * @throws IOException
+     *             IOException
+     */
+    private boolean forgetActe( FastConfiguration configuration, FastCollectivityProfile profile, String strNumeroDeliberation,
+            Timestamp tsDateDecision ) throws IOException
+    {
+        FastSubmissionIndex index = FastSubmissionIndex.getInstance( );
+
+        if ( index == null )
         {
-            String strTypeActe = AppPropertiesService.getProperty( PROPERTY_ACTE_TYPE_LIBELLE );
-            String strDept = AppPropertiesService.getProperty( PROPERTY_ACTE_DEPT );
-            String strTransaction = AppPropertiesService.getProperty( PROPERTY_ACTE_TRANSACTION_ANNULATION );
-            String strSiren;
+            return false;
+        }
 
-            if ( bIsMunicipal )
-            {
-                strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_VILLE );
-            }
-            else
-            {
-                strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_DEPT );
-            }
+        FastPackageNaming naming = configuration.getPackageNaming( );
+        boolean bTransmission = index.forget( naming.newTransmission( profile, strNumeroDeliberation, tsDateDecision ).getIndexKey( ) );
+        boolean bAnnulation = index.forget( naming.newAnnulation( profile, strNumeroDeliberation, tsDateDecision ).getIndexKey( ) );
 
-            String strDateCurrentFormat = getDateDecision( tsDateDecision );
+        return bTransmission || bAnnulation;
+    }
 
-            /*
-             * Creation de l'id de l'acte IdActe est de la forme : 075-217500055-20090707-ODS000000000074-DE
-             * Departement-Num_Siren-DateJour-ODS+NumeroDelib-Type_Acte
-             */
-            String strIdActe = strDept + NAME_SEPARATOR + strSiren + NAME_SEPARATOR + strDateCurrentFormat + NAME_SEPARATOR + strNumeroDeliberation
-                    + NAME_SEPARATOR + strTypeActe;
+    /**
+     * Envoie une demande d'annulation d'acte, après avoir attendu au besoin une place dans la file de sa collectivité
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @param manifest
+     *            le manifeste à compléter
+     * @return true si la transmission s'est bien déroulée, false sinon
+     * @throws IOException
+     *             IOException
+     */
+    private boolean sendAnnulationActe( FastConfiguration configuration, FastCollectivityProfile profile, String strNumeroDeliberation,
+            Timestamp tsDateDecision, FastManifest manifest ) throws IOException
+    {
+        long lStart = System.nanoTime( );
+        FastLanePermit permit = null;
+        boolean bSuccess = false;
 
-            d.setIDActe( strIdActe );
+        try
+        {
+            permit = FastLaneScheduler.getInstance( ).acquire( profile, FastMetrics.TRANSACTION_ANNULATION );
+            bSuccess = envoyerAnnulationActe( configuration, profile, strNumeroDeliberation, tsDateDecision, manifest );
 
-            // G�n�ration du contenu XML
-            String strXmlEncoding = AppPropertiesService.getProperty( XML_ENCODING, XML_ENCODING_DEFAULT );
-            StringWriter sw = new StringWriter( );
-            try
-            {
-                JAXBContext jaxbContext = JAXBContext.newInstance( "fr.gouv.interieur.actes_v1" );
-                Marshaller marshaller = jaxbContext.createMarshaller( );
-                marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, true );
-                marshaller.setProperty( "com.sun.xml.bind.namespacePrefixMapper", new ActeNamespacePrefixMapper( ) );
-                marshaller.setProperty( Marshaller.JAXB_ENCODING, strXmlEncoding );
-                marshaller.marshal( d, sw );
-            }
-            catch( JAXBException e )
-            {
-                AppLogService.error( "Error marshalling Actes document : " + e.getMessage( ), e );
-            }
+            return bSuccess;
+        }
+        finally
+        {
+            releaseLane( permit );
+            FastMetrics.getInstance( ).recordTransmission( profile.getCode( ), FastMetrics.TRANSACTION_ANNULATION, bSuccess, lStart );
+        }
+    }
+
+    /**
+     * Prépare et dépose le paquet d'une demande d'annulation
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strNumeroDeliberation
+     *            le numéro de la déliberation
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @param manifest
+     *            le manifeste à compléter
+     * @return true si la transmission s'est bien déroulée, false sinon
+     * @throws IOException
+     *             IOException
+     */
+    private boolean envoyerAnnulationActe( FastConfiguration configuration, FastCollectivityProfile profile, String strNumeroDeliberation,
+            Timestamp tsDateDecision, FastManifest manifest ) throws IOException
+    {
+        FastMetrics metrics = FastMetrics.getInstance( );
+        Annulation d = new Annulation( );
+
+        /*
+         * Creation de l'id de l'acte IdActe est de la forme : 075-217500055-20090707-ODS000000000074-DE
+         * Departement-Num_Siren-DateJour-ODS+NumeroDelib-Type_Acte
+         */
+        FastPackage fastPackage = configuration.getPackageNaming( ).newAnnulation( profile, strNumeroDeliberation, tsDateDecision );
+
+        d.setIDActe( fastPackage.getIdActe( ) );
 
-            // Piece jointe Annexe sans extension
-            String strNameFichierPJ = strIdActe + NAME_SEPARATOR + strTransaction + NAME_UNDERSCOR_SEPARATOR;
+        // Une annulation ne dépend que de l'identifiant de l'acte : l'index est consulté avant toute écriture
+        String strIndexKey = fastPackage.getIndexKey( );
+        String strContentHash = FastDigest.sha256( fastPackage.getIdActe( ) );
+        FastSubmissionIndex index = FastSubmissionIndex.getInstance( );
+        FastSubmissionLock lock = reserverIndex( index, strIndexKey, manifest );
+
+        if ( ( index != null ) && ( lock == null ) )
+        {
+            return false;
+        }
+
+        if ( isDejaDepose( index, lock, strContentHash, manifest ) )
+        {
+            return true;
+        }
 
-            // Piece jointe Metier sans extension
-            String strNameFichierPJMetier = strNameFichierPJ + NUMERO_ZERO_PJ;
+        // Réservation de l'espace disque du paquet, avant toute écriture
+        FastSpaceReservation reservation = reserverEspace( fastPackage, profile, null, index, lock );
 
+        // Construction du r�pertoire temporaire
+        FastRetryContext retry = new FastRetryContext( configuration, fastPackage.getName( ) );
+        FastWorkspace workspace = allocateWorkspace( configuration, retry );
+
+        if ( workspace == null )
+        {
+            releaseSpace( reservation );
+            releaseIndex( index, lock );
+
+            return false;
+        }
+
+        try
+        {
             // Creation du fichier Metier
-            creationFichierMetier( strTmpPath, strNameFichierPJMetier + EXTENSION_XML, sw.toString( ) );
+            long lStageStart = System.nanoTime( );
+            manifest.addEntry( retry.execute( STEP_WRITE + fastPackage.getMetierFileName( ),
+                    ( ) -> creationFichierMetier( workspace.resolve( fastPackage.getMetierFileName( ) ), d ) ) );
+            metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_ANNULATION, FastStage.XML, lStageStart );
             // Creation du fichier WebService
-            creationFichierWebService( strTmpPath, strNameFichierPJMetier, strNameFichierPJMetier + EXTENSION_XML, bIsMunicipal );
+            lStageStart = System.nanoTime( );
+            manifest.addEntry( retry.execute( STEP_WRITE + fastPackage.getEnvelopeFileName( ),
+                    ( ) -> creationFichierWebService( workspace.getPath( ), fastPackage, profile ) ) );
+            metrics.recordStage( profile.getCode( ), FastMetrics.TRANSACTION_ANNULATION, FastStage.WS, lStageStart );
+            metrics.recordBytes( profile.getCode( ), FastMetrics.TRANSACTION_ANNULATION, manifest.getSize( ) );
             // Copie du r�pertoire temporaire vers r�pertoire fast
-            copierFichierDansFast( strTmpPath, strNameFichierPJ + NUMERO_ZERO_PJ );
-            // Suppression r�pertoire temporaire
-            supprimerRepertoireTmp( strTmpPath );
+            deposerPaquet( configuration, profile, FastMetrics.TRANSACTION_ANNULATION, workspace, index, lock, strContentHash, fastPackage.getName( ),
+                    manifest, retry, ( index != null ) ? configuration.getPackageNaming( ).newTransmission( profile, strNumeroDeliberation, tsDateDecision ).getIndexKey( )
+                            : null );
         }
-        else
+        finally
         {
-            return false;
+            // Suppression r�pertoire temporaire
+            supprimerRepertoireTmp( profile, FastMetrics.TRANSACTION_ANNULATION, workspace );
+            releaseSpace( reservation );
+            releaseIndex( index, lock );
         }
 
         return true;
     }
 
     /**
-     * Copier les fichiers necessaires � la transmission dans le dossier local correspondant
+     * Dépose le paquet dans le répertoire FAST, sauf si le même contenu y a déjà été déposé pour cet acte. Une fois le paquet déposé, l'opération
+     * inverse sur le même acte est oubliée par l'index : une annulation permet un nouvel envoi de l'acte, et un nouvel envoi une nouvelle
+     * annulation.
      * 
-     * @param strPath
-     *            le chemin vers le dossier local de destination
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction, pour les métriques
+     * @param workspace
+     *            le répertoire temporaire de la transmission
+     * @param index
+     *            l'index des transmissions déjà déposées, ou null s'il est désactivé
+     * @param lock
+     *            la réservation de l'acte dans l'index, ou null s'il est désactivé
+     * @param strContentHash
+     *            l'empreinte du contenu de l'acte
      * @param strName
-     *            le nom du r�pertoire
+     *            le nom du paquet
+     * @param manifest
+     *            le manifeste du paquet
+     * @param retry
+     *            les nouvelles tentatives de la transmission
+     * @param strSupersededKey
+     *            la clé de l'opération inverse sur le même acte, ou null si l'index est désactivé
+     * @throws IOException
+     *             IOException
+     */
+    private void deposerPaquet( FastConfiguration configuration, FastCollectivityProfile profile, String strTransactionType, FastWorkspace workspace,
+            FastSubmissionIndex index, FastSubmissionLock lock, String strContentHash, String strName, FastManifest manifest, FastRetryContext retry,
+            String strSupersededKey )
+            throws IOException
+    {
+        if ( isDejaDepose( index, lock, strContentHash, manifest ) )
+        {
+            return;
+        }
+
+        copierFichierDansFast( configuration, profile, strTransactionType, workspace, strName, manifest, retry, lock, strContentHash );
+
+        if ( index != null )
+        {
+            index.record( lock.getKey( ), strContentHash, strName );
+            oublierIndex( index, strSupersededKey );
+        }
+    }
+
+    /**
+     * Oublie les paquets déposés sous une clé de l'index. Une erreur est seulement tracée : le paquet en cours est déjà déposé.
+     * 
+     * @param index
+     *            l'index
+     * @param strKey
+     *            la clé
+     */
+    private void oublierIndex( FastSubmissionIndex index, String strKey )
+    {
+        try
+        {
+            index.forget( strKey );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Acte " + strKey + " could not be removed from the index : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Réserve un acte dans l'index des transmissions déjà déposées
+     * 
+     * @param index
+     *            l'index, ou null s'il est désactivé
+     * @param strIndexKey
+     *            la clé de l'acte
+     * @param manifest
+     *            le manifeste, qui indique si un dépôt du même acte est en cours
+     * @return la réservation, ou null si l'index est désactivé ou si un dépôt du même acte est en cours
+     * @throws IOException
+     *             IOException
+     */
+    private FastSubmissionLock reserverIndex( FastSubmissionIndex index, String strIndexKey, FastManifest manifest ) throws IOException
+    {
+        if ( index == null )
+        {
+            return null;
+        }
+
+        FastSubmissionLock lock = index.claim( strIndexKey );
+
+        if ( lock == null )
+        {
+            AppLogService.info( "Acte " + strIndexKey + " is already being sent, duplicate submission not deposited" );
+            manifest.setInProgress( true );
+        }
+
+        return lock;
+    }
+
+    /**
+     * Indique si le même contenu a déjà été déposé pour cet acte. Dans ce cas, le nom du paquet déjà déposé est reporté dans le manifeste et la
+     * réservation de l'acte est libérée.
+     * 
+     * @param index
+     *            l'index, ou null s'il est désactivé
+     * @param lock
+     *            la réservation de l'acte
+     * @param strContentHash
+     *            l'empreinte du contenu
+     * @param manifest
+     *            le manifeste
+     * @return true si le contenu a déjà été déposé
      * @throws IOException
      *             IOException
      */
-    private void copierFichierDansFast( String strPath, String strName ) throws IOException
+    private boolean isDejaDepose( FastSubmissionIndex index, FastSubmissionLock lock, String strContentHash, FastManifest manifest )
+            throws IOException
     {
-        String strPathFAST = AppPropertiesService.getProperty( PROPERTY_ACTE_FAST_DIR_PATH );
-        File repdest = new File( strPathFAST + PATH_SEPARATOR + strName );
-        repdest.mkdir( );
+        if ( index == null )
+        {
+            return false;
+        }
 
-        File tmpDir = new File( strPath );
-        String [ ] fileNames = tmpDir.list( );
+        String strPackageName = index.find( lock.getKey( ), strContentHash );
 
-        if ( fileNames != null )
+        if ( strPackageName == null )
         {
-            // Prendre tous les fichiers du r�pertoire courant
-            for ( int i = 0; i < fileNames.length; i++ )
+            return false;
+        }
+
+        AppLogService.info( "Acte " + lock.getKey( ) + " already sent in package " + strPackageName + ", duplicate submission skipped" );
+        manifest.setPreviousPackageName( strPackageName );
+        releaseIndex( index, lock );
+
+        return true;
+    }
+
+    /**
+     * Calcule d'avance l'empreinte du contenu d'une transmission, si tous ses fichiers peuvent être relus. Elle est composée comme celle calculée
+     * pendant l'écriture des fichiers.
+     * 
+     * @param submission
+     *            la demande de transmission
+     * @return l'empreinte en hexadécimal, ou null si un fichier ne peut être lu qu'une fois
+     * @throws IOException
+     *             IOException
+     */
+    private static String hashContent( ActeSubmission submission ) throws IOException
+    {
+        List<PayloadSource> listSources = new ArrayList<PayloadSource>( );
+        listSources.add( submission.getDeliberationFinale( ) );
+        listSources.addAll( submission.getAnnexes( ) );
+
+        for ( PayloadSource source : listSources )
+        {
+            if ( !source.isRepeatable( ) )
             {
-                FileOutputStream fileOutputStream = new FileOutputStream( new File( strPathFAST + PATH_SEPARATOR + strName + PATH_SEPARATOR + fileNames [i] ) );
-                byte [ ] buf = new byte [ 1024];
-                int len;
-                FileInputStream fin = new FileInputStream( new File( tmpDir, fileNames [i] ) );
-                BufferedInputStream in = new BufferedInputStream( fin );
-
-                while ( ( len = in.read( buf ) ) != -1 )
-                {
-                    fileOutputStream.write( buf, 0, len );
-                }
-
-                in.close( );
-                fileOutputStream.close( );
+                return null;
             }
         }
-        else
+
+        MessageDigest contentDigest = newContentDigest( submission );
+
+        for ( PayloadSource source : listSources )
         {
-            new IOException( );
+            MessageDigest digest = FastDigest.newDigest( );
+            source.digest( digest );
+            contentDigest.update( digest.digest( ) );
         }
 
-        // Creation du fichier temoin
-        FileWriter temoinSortie = new FileWriter( strPathFAST + PATH_SEPARATOR + strName + EXTENSION_OK );
-        temoinSortie.close( );
+        return FastDigest.toHex( contentDigest.digest( ) );
     }
 
     /**
-     * Cr�e le fichier de webService (extension .ws)
+     * Crée l'empreinte du contenu d'une transmission, initialisée avec l'objet et la classification de l'acte
      * 
-     * @param strPath
-     *            le repertoire dans lequel le fichier sera cr��
-     * @param strNameFichier
-     *            le nom du fichier
-     * @param strNameFichierMetier
-     *            le nom du fichier metier (fichier XML)
-     * @param bIsMunicipal
-     *            true si la formation conseil est MUNICIPAL
+     * @param submission
+     *            la demande de transmission
+     * @return l'empreinte, à compléter avec les empreintes des fichiers
+     */
+    private static MessageDigest newContentDigest( ActeSubmission submission )
+    {
+        MessageDigest contentDigest = FastDigest.newDigest( );
+        contentDigest.update( ( submission.getObjet( ) + CONTENT_SEPARATOR + submission.getCodeMatiere1( ) + CONTENT_SEPARATOR
+                + submission.getCodeMatiere2( ) ).getBytes( StandardCharsets.UTF_8 ) );
+
+        return contentDigest;
+    }
+
+    /**
+     * Réserve l'espace disque d'un paquet. En cas d'espace insuffisant, la réservation de l'acte dans l'index est libérée.
+     * 
+     * @param fastPackage
+     *            le paquet
+     * @param profile
+     *            le profil de la collectivité émettrice, qui donne le répertoire FAST
+     * @param submission
+     *            la demande de transmission, ou null pour une annulation
+     * @param index
+     *            l'index, ou null s'il est désactivé
+     * @param lock
+     *            la réservation de l'acte dans l'index
+     * @return la réservation, ou null si le contrôle de l'espace disque est désactivé
+     * @throws IOException
+     *             si l'espace disque est insuffisant
+     */
+    private FastSpaceReservation reserverEspace( FastPackage fastPackage, FastCollectivityProfile profile, ActeSubmission submission,
+            FastSubmissionIndex index, FastSubmissionLock lock ) throws IOException
+    {
+        FastSpaceController controller = FastSpaceController.getInstance( );
+
+        if ( controller == null )
+        {
+            return null;
+        }
+
+        long lSize = ( submission != null ) ? controller.estimate( submission ) : FastSpaceController.PACKAGE_OVERHEAD;
+
+        try
+        {
+            return controller.reserve( fastPackage.getName( ), profile.getFastDirectory( ), lSize );
+        }
+        catch( IOException e )
+        {
+            releaseIndex( index, lock );
+
+            throw e;
+        }
+    }
+
+    /**
+     * Libère l'espace disque réservé pour un paquet
+     * 
+     * @param reservation
+     *            la réservation, ou null si le contrôle de l'espace disque est désactivé
+     */
+    private void releaseSpace( FastSpaceReservation reservation )
+    {
+        if ( reservation != null )
+        {
+            reservation.release( );
+        }
+    }
+
+    /**
+     * Libère la place d'une transmission dans la file de sa collectivité
+     * 
+     * @param permit
+     *            la place, ou null si elle n'a pas été obtenue
+     */
+    private void releaseLane( FastLanePermit permit )
+    {
+        if ( permit != null )
+        {
+            permit.release( );
+        }
+    }
+
+    /**
+     * Libère la réservation d'un acte dans l'index
+     * 
+     * @param index
+     *            l'index, ou null s'il est désactivé
+     * @param lock
+     *            la réservation de l'acte, ou null
+     */
+    private void releaseIndex( FastSubmissionIndex index, FastSubmissionLock lock )
+    {
+        if ( ( index != null ) && ( lock != null ) )
+        {
+            index.release( lock );
+        }
+    }
+
+    /**
+     * Copier les fichiers necessaires � la transmission dans le dossier local correspondant. Une nouvelle tentative reprend le dépôt là où
+     * il s'est arrêté : les fichiers déjà déposés sont conservés. Si le dépôt (copie, manifeste ou fichier témoin) échoue
+     * définitivement, le paquet est conservé dans le répertoire des paquets en échec ; une erreur d'écriture du journal est seulement tracée.
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param profile
+     *            le profil de la collectivité émettrice, qui donne le répertoire FAST
+     * @param strTransactionType
+     *            le type de transaction, pour les métriques
+     * @param workspace
+     *            le répertoire temporaire de la transmission
+     * @param strName
+     *            le nom du r�pertoire
+     * @param manifest
+     *            le manifeste du paquet, déposé à côté du paquet avant le fichier témoin
+     * @param retry
+     *            les nouvelles tentatives de la transmission
+     * @param lock
+     *            la réservation de l'acte dans l'index, journalisée pour que la reprise enregistre le paquet dans l'index ; null si l'index est
+     *            désactivé
+     * @param strContentHash
+     *            l'empreinte du contenu de l'acte
      * @throws IOException
      *             IOException
      */
-    private void creationFichierWebService( String strPath, String strNameFichier, String strNameFichierMetier, boolean bIsMunicipal ) throws IOException
+    private void copierFichierDansFast( FastConfiguration configuration, FastCollectivityProfile profile, String strTransactionType,
+            FastWorkspace workspace, String strName, FastManifest manifest, FastRetryContext retry, FastSubmissionLock lock, String strContentHash )
+            throws IOException
     {
-        String strSiren;
-        String strDNUtilisateurWS;
+        Path fastDirectory = profile.getFastDirectory( );
+        FastJournal journal = FastJournal.getInstance( );
+        manifest.setPackageName( strName );
 
-        if ( bIsMunicipal )
+        if ( lock != null )
         {
-            strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_VILLE );
-            strDNUtilisateurWS = AppPropertiesService.getProperty( PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE );
+            journal.append( FastJournalState.PREPARED, workspace.getId( ), fastDirectory, strName, lock.getKey( ), strContentHash, lock.getToken( ) );
         }
         else
         {
-            strSiren = AppPropertiesService.getProperty( PROPERTY_ACTE_SIREN_DEPT );
-            strDNUtilisateurWS = AppPropertiesService.getProperty( PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT );
+            journal.append( FastJournalState.PREPARED, workspace.getId( ), fastDirectory, strName );
+        }
+
+        try
+        {
+            long lStageStart = System.nanoTime( );
+            retry.execute( STEP_COPY, ( ) -> {
+                _transferEngine.transfer( workspace.getPath( ), fastDirectory, strName );
+
+                return null;
+            } );
+            journaliser( journal, FastJournalState.COPIED, workspace, fastDirectory, strName );
+            FastMetrics.getInstance( ).recordStage( profile.getCode( ), strTransactionType, FastStage.COPY, lStageStart );
+
+            lStageStart = System.nanoTime( );
+
+            if ( configuration.isManifestEnabled( ) )
+            {
+                byte [ ] content = manifest.format( ).getBytes( StandardCharsets.UTF_8 );
+                retry.execute( STEP_MANIFEST, ( ) -> {
+                    _transferEngine.publishManifest( fastDirectory, strName, content );
+
+                    return null;
+                } );
+            }
+
+            // Le paquet est suivi avant la publication du fichier témoin : un retour rapide de FAST ne peut pas être manqué
+            if ( FastAckWatcher.getInstance( ).isStarted( ) )
+            {
+                FastAckWatcher.getInstance( ).track( strName, null );
+            }
+
+            retry.execute( STEP_MARKER, ( ) -> {
+                _transferEngine.publishMarker( fastDirectory, strName );
+
+                return null;
+            } );
+            FastMetrics.getInstance( ).recordStage( profile.getCode( ), strTransactionType, FastStage.MARKER, lStageStart );
         }
+        catch( IOException e )
+        {
+            FastAckWatcher.getInstance( ).untrack( strName );
 
-        String strTraitementWS = AppPropertiesService.getProperty( PROPERTY_ACTE_WS_TRAITEMENT );
-        String strXMLWS = XML_ENTETE + XML_WS_ENTETE + XML_WS_BALISE_ACTE + XML_WS_BALISE_TRAITEMENT + strTraitementWS + XML_WS_BALISE_FERMETURE_TRAITEMENT
-                + XML_WS_BALISE_DNUTILISATEUR + strDNUtilisateurWS + XML_WS_BALISE_FERMETURE_DNUTILISATEUR + XML_WS_BALISE_SIREN + strSiren
-                + XML_WS_BALISE_FERMETURE_SIREN + XML_WS_BALISE_FICHIER + strNameFichierMetier + XML_WS_BALISE_FERMETURE_FICHIER + XML_WS_BALISE_FERMETURE_ACTE
-                + XML_WS_FERMETURE_ENTETE;
+            if ( Thread.currentThread( ).isInterrupted( ) )
+            {
+                _transferEngine.rollback( fastDirectory, strName );
+            }
+            else
+            {
+                new FastDeadLetterStore( configuration.getDeadLetterDirectory( ) ).store( workspace, fastDirectory, strName, manifest, retry.getRetries( ),
+                        e );
+            }
 
-        FileWriter wsSortie = new FileWriter( strPath + PATH_SEPARATOR + strNameFichier + EXTENSION_WS );
-        wsSortie.write( strXMLWS );
+            throw e;
+        }
 
-        wsSortie.close( );
+        journaliser( journal, FastJournalState.PUBLISHED, workspace, fastDirectory, strName );
     }
 
     /**
-     * Cr�e le fichier de la d�lib�raion finale
+     * Enregistre une étape d'un dépôt commencé dans le journal. Une erreur d'écriture du journal ne fait pas échouer le dépôt, qui est déjà dans
+     * le répertoire FAST : elle est seulement tracée, et la reprise au démarrage repartira de l'étape précédente.
      * 
-     * @param strPath
-     *            le repertoire dans lequel le fichier sera cr��
+     * @param journal
+     *            le journal
+     * @param state
+     *            l'étape atteinte
+     * @param workspace
+     *            le répertoire temporaire de la transmission
+     * @param fastDirectory
+     *            le répertoire FAST de la collectivité émettrice
      * @param strName
-     *            le nom du fichier
-     * @param deliberationFinal
-     *            la d�lib�ration finale
+     *            le nom du paquet
+     */
+    private void journaliser( FastJournal journal, FastJournalState state, FastWorkspace workspace, Path fastDirectory, String strName )
+    {
+        try
+        {
+            journal.append( state, workspace.getId( ), fastDirectory, strName );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Error writing the transmission journal for package " + strName + " (" + state + ") : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Supprime le répertoire temporaire de la transmission et enregistre la fin de la transmission dans le journal
+     * 
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction, pour les métriques
+     * @param workspace
+     *            le répertoire temporaire de la transmission
+     */
+    private void supprimerRepertoireTmp( FastCollectivityProfile profile, String strTransactionType, FastWorkspace workspace )
+    {
+        long lStageStart = System.nanoTime( );
+        workspace.delete( );
+        FastMetrics.getInstance( ).recordStage( profile.getCode( ), strTransactionType, FastStage.CLEANUP, lStageStart );
+
+        try
+        {
+            FastJournal.getInstance( ).cleaned( workspace.getId( ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Error writing the transmission journal : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Cr�e le fichier de webService (extension .ws). Visible dans le paquet pour les benchmarks.
+     * 
+     * @param directory
+     *            le repertoire dans lequel le fichier sera cr��
+     * @param fastPackage
+     *            le paquet, qui donne le nom de l'enveloppe et celui du fichier metier (fichier XML)
+     * @param profile
+     *            le profil de la collectivité émettrice
+     * @return l'entrée du manifeste correspondant au fichier
      * @throws IOException
      *             IOException
      */
-    private void creationFichierDeliberationFinale( String strPath, String strName, byte [ ] deliberationFinal ) throws IOException
+    FastManifest.Entry creationFichierWebService( Path directory, FastPackage fastPackage, FastCollectivityProfile profile ) throws IOException
     {
-        FileOutputStream fileOutputStreamdb = new FileOutputStream( strPath + PATH_SEPARATOR + strName + EXTENSION_PDF_PJ );
-        BufferedOutputStream bufferdb = new BufferedOutputStream( fileOutputStreamdb );
-        bufferdb.write( deliberationFinal );
-        bufferdb.close( );
+        Path target = directory.resolve( fastPackage.getEnvelopeFileName( ) );
+        MessageDigest digest = FastDigest.newDigest( );
+        profile.getEnvelopeTemplate( ).write( target, fastPackage.getMetierFileName( ), digest );
+
+        return newEntry( target, digest.digest( ) );
     }
 
     /**
-     * Cr�e le fichier m�tier (fichier XML)
+     * Crée le fichier d'une pièce jointe (délibération finale ou annexe), directement ou à partir du magasin des annexes. L'écriture est rejouée
+     * en cas d'erreur passagère si le contenu peut être relu.
      * 
-     * @param strTmpPath
-     *            le repertoire temporaire dans lequel le fichier sera cr��
-     * @param strNameFichierMetier
-     *            le nom du fichier metier
-     * @param strXMLMetier
-     *            le flux XML
+     * @param retry
+     *            les nouvelles tentatives de la transmission
+     * @param target
+     *            le fichier à créer
+     * @param source
+     *            le contenu de la pièce jointe
+     * @param store
+     *            le magasin des annexes, ou null pour écrire directement le fichier
+     * @return l'empreinte SHA-256 du contenu
      * @throws IOException
      *             IOException
      */
-    private void creationFichierMetier( String strTmpPath, String strNameFichierMetier, String strXMLMetier ) throws IOException
+    private byte [ ] creationFichierPJ( FastRetryContext retry, Path target, PayloadSource source, FastAnnexStore store ) throws IOException
     {
-        String strNameFichierMetierXML = strTmpPath + PATH_SEPARATOR + strNameFichierMetier;
-        FileWriter sortie = new FileWriter( strNameFichierMetierXML );
-        sortie.write( strXMLMetier );
-        sortie.close( );
+        FastRetryableAction<byte [ ]> action = ( ) -> {
+            if ( store != null )
+            {
+                return store.materialize( source, target );
+            }
+
+            MessageDigest digest = FastDigest.newDigest( );
+            source.writeTo( target, digest );
+
+            return digest.digest( );
+        };
+
+        return source.isRepeatable( ) ? retry.execute( STEP_WRITE + target.getFileName( ), action ) : action.run( );
     }
 
     /**
-     * Supprimer le dossier temporaire de travail
+     * Crée le fichier métier (fichier XML) d'un acte
      * 
-     * @param strTmpPath
-     *            le repertoire temporaire � supprimer
+     * @param target
+     *            le fichier metier à créer dans le répertoire temporaire
+     * @param acte
+     *            l'acte
+     * @return l'entrée du manifeste correspondant au fichier
+     * @throws IOException
+     *             si l'acte ne peut être sérialisé ou écrit
      */
-    private void supprimerRepertoireTmp( String strTmpPath )
+    private FastManifest.Entry creationFichierMetier( Path target, fr.paris.lutece.plugins.actes.business.Acte acte ) throws IOException
     {
-        File fileTmp = new File( strTmpPath );
-        String [ ] fileNames = fileTmp.list( );
+        MessageDigest digest = FastDigest.newDigest( );
 
-        if ( fileNames != null )
+        try
         {
-            for ( int i = 0; i < fileNames.length; i++ )
-            {
-                File file = new File( fileTmp, fileNames [i] );
-                file.delete( );
-            }
+            marshal( target, acte, digest );
+        }
+        catch( JAXBException e )
+        {
+            throw new IOException( "Error marshalling Actes document : " + e.getMessage( ), e );
         }
 
-        fileTmp.delete( );
+        return newEntry( target, digest.digest( ) );
     }
 
     /**
-     * Retourne le tableau des caract�res interdits
+     * Crée le fichier métier (fichier XML) d'une annulation
      * 
-     * @return le tableau des caract�res interdits
+     * @param target
+     *            le fichier metier à créer dans le répertoire temporaire
+     * @param annulation
+     *            l'annulation
+     * @return l'entrée du manifeste correspondant au fichier
+     * @throws IOException
+     *             si l'annulation ne peut être sérialisée ou écrite
      */
-    private String [ ] getDeficientCaracteres( )
+    private FastManifest.Entry creationFichierMetier( Path target, Annulation annulation ) throws IOException
     {
-        String strDeficientCaracteres = AppPropertiesService.getProperty( PROPERTY_CARACTERES_DEFICIENT );
-        String [ ] strTabDeficientCaracteres = null;
+        MessageDigest digest = FastDigest.newDigest( );
 
-        if ( strDeficientCaracteres != null )
+        try
         {
-            strTabDeficientCaracteres = strDeficientCaracteres.split( CONSTANTE_CARACTERS_DEFICIENT_SEPARATOR );
+            marshal( target, annulation, digest );
+        }
+        catch( JAXBException e )
+        {
+            throw new IOException( "Error marshalling Actes document : " + e.getMessage( ), e );
         }
 
-        return strTabDeficientCaracteres;
+        return newEntry( target, digest.digest( ) );
     }
 
     /**
-     * Retourne la date de decision au format attendu
+     * Sérialise un document directement dans le fichier cible, dans l'encodage déclaré par son prologue, en calculant son empreinte au passage
      * 
-     * @param tsDateDecision
-     *            la date de decision
-     * @return la date de decision au format attendu
+     * @param target
+     *            le fichier cible
+     * @param document
+     *            le document JAXB
+     * @param digest
+     *            le calcul d'empreinte à alimenter
+     * @throws IOException
+     *             IOException
+     * @throws JAXBException
+     *             JAXBException
      */
-    private String getDateDecision( Timestamp tsDateDecision )
+    private void marshal( Path target, Object document, MessageDigest digest ) throws IOException, JAXBException
     {
-        DateFormat format = new SimpleDateFormat( CONSTANTE_PATTERN_DATE );
-        String strDateDecisionFormat = format.format( DateUtil.formatDate( DateUtil.getDateString( tsDateDecision ), LOCALE ) );
+        try ( OutputStream out = new BufferedOutputStream( new DigestOutputStream( Files.newOutputStream( target ), digest ) ) )
+        {
+            FastJaxbService.getInstance( ).marshal( document, out );
+        }
+    }
 
-        return strDateDecisionFormat;
+    /**
+     * Ajoute une pièce jointe au manifeste et à l'empreinte du contenu de la transmission
+     * 
+     * @param manifest
+     *            le manifeste du paquet
+     * @param contentDigest
+     *            l'empreinte du contenu de la transmission
+     * @param file
+     *            le fichier de la pièce jointe
+     * @param digest
+     *            l'empreinte SHA-256 du fichier
+     * @throws IOException
+     *             IOException
+     */
+    private static void addEntry( FastManifest manifest, MessageDigest contentDigest, Path file, byte [ ] digest ) throws IOException
+    {
+        contentDigest.update( digest );
+        manifest.addEntry( newEntry( file, digest ) );
+    }
+
+    /**
+     * Crée l'entrée du manifeste d'un fichier du paquet
+     * 
+     * @param file
+     *            le fichier
+     * @param digest
+     *            l'empreinte SHA-256 du fichier
+     * @return l'entrée du manifeste
+     * @throws IOException
+     *             IOException
+     */
+    private static FastManifest.Entry newEntry( Path file, byte [ ] digest ) throws IOException
+    {
+        return new FastManifest.Entry( file.getFileName( ).toString( ), Files.size( file ), FastDigest.toHex( digest ) );
+    }
+
+    /**
+     * Alloue le répertoire temporaire propre à une transmission
+     * 
+     * @param configuration
+     *            la configuration courante
+     * @param retry
+     *            les nouvelles tentatives de la transmission
+     * @return le répertoire de travail, ou null s'il n'a pas pu être créé
+     */
+    private FastWorkspace allocateWorkspace( FastConfiguration configuration, FastRetryContext retry )
+    {
+        try
+        {
+            return retry.execute( STEP_WORKSPACE, ( ) -> FastWorkspace.allocate( configuration.getTmpDirectory( ) ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Error when creating the temporary directory : " + e.getMessage( ), e );
+
+            return null;
+        }
     }
 }
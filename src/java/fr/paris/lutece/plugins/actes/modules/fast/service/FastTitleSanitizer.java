@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Nettoyage des libellés transmis dans le fichier métier : remplacement des caractères interdits et des caractères non représentables dans
+ * l'encodage du fichier, puis troncature. Le nettoyage est fait en un seul parcours du libellé ; aucune chaîne n'est créée si le libellé est déjà
+ * conforme. Construit une seule fois à partir de la configuration.
+ */
+public final class FastTitleSanitizer
+{
+    private static final String CONSTANTE_CARACTERS_DEFICIENT_SEPARATOR = ",";
+    private static final char CONSTANTE_CARACTERS_DEFICIENT_REPLACE = '?';
+    private static final String ETC = "...";
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+    private static final int BUFFER_MAX_CAPACITY = 4096;
+    private final Charset _charset;
+    private final BitSet _encodable;
+    private final BitSet _deficientFirstCaracters;
+    private final String [ ] _deficientCaracters;
+    private final int _nNbCaracteresMax;
+    private final ThreadLocal<StringBuilder> _buffer = new ThreadLocal<StringBuilder>( )
+    {
+        @Override
+        protected StringBuilder initialValue( )
+        {
+            return new StringBuilder( );
+        }
+    };
+
+    /**
+     * Constructeur
+     *
+     * @param charset
+     *            l'encodage du fichier métier
+     * @param strDeficientCaracters
+     *            la liste des caractères interdits, séparés par des virgules
+     * @param nNbCaracteresMax
+     *            le nombre de caractères maximum de l'objet
+     */
+    public FastTitleSanitizer( Charset charset, String strDeficientCaracters, int nNbCaracteresMax )
+    {
+        List<String> listDeficient = new ArrayList<String>( );
+
+        if ( strDeficientCaracters != null )
+        {
+            for ( String strCaracters : strDeficientCaracters.split( CONSTANTE_CARACTERS_DEFICIENT_SEPARATOR ) )
+            {
+                if ( !strCaracters.trim( ).isEmpty( ) )
+                {
+                    listDeficient.add( strCaracters.trim( ) );
+                }
+            }
+        }
+
+        // Les séquences les plus longues sont testées en premier
+        Collections.sort( listDeficient, new Comparator<String>( )
+        {
+            @Override
+            public int compare( String str1, String str2 )
+            {
+                return str2.length( ) - str1.length( );
+            }
+        } );
+
+        _deficientFirstCaracters = new BitSet( );
+
+        for ( String strCaracters : listDeficient )
+        {
+            _deficientFirstCaracters.set( strCaracters.charAt( 0 ) );
+        }
+
+        _charset = charset;
+        _encodable = computeEncodable( charset );
+        _deficientCaracters = listDeficient.toArray( new String [ listDeficient.size( )] );
+        _nNbCaracteresMax = Math.max( nNbCaracteresMax, ETC.length( ) );
+    }
+
+    /**
+     * Nettoie l'objet d'un acte
+     *
+     * @param strObjet
+     *            l'objet
+     * @return l'objet représentable dans l'encodage du fichier métier, sans caractères interdits et tronqué
+     */
+    public String sanitizeObjet( String strObjet )
+    {
+        return sanitize( strObjet, _nNbCaracteresMax );
+    }
+
+    /**
+     * Nettoie le numéro interne d'un acte, sans le tronquer
+     *
+     * @param strNumeroInterne
+     *            le numéro interne
+     * @return le numéro représentable dans l'encodage du fichier métier et sans caractères interdits
+     */
+    public String sanitizeNumeroInterne( String strNumeroInterne )
+    {
+        return sanitize( strNumeroInterne, NO_LIMIT );
+    }
+
+    /**
+     * Nettoie un libellé en un seul parcours. Tant qu'aucun caractère n'est modifié, rien n'est recopié : le libellé d'origine est rendu s'il est
+     * conforme.
+     *
+     * @param strValue
+     *            le libellé
+     * @param nMax
+     *            le nombre de caractères maximum
+     * @return le libellé nettoyé
+     */
+    private String sanitize( String strValue, int nMax )
+    {
+        if ( strValue == null )
+        {
+            return null;
+        }
+
+        int nLength = strValue.length( );
+        StringBuilder sbResult = null;
+        int i = 0;
+
+        while ( i < nLength )
+        {
+            char c = strValue.charAt( i );
+            int nConsumed = 1;
+            boolean bReplace;
+
+            String strDeficient = _deficientFirstCaracters.get( c ) ? matchDeficient( strValue, i ) : null;
+
+            if ( strDeficient != null )
+            {
+                nConsumed = strDeficient.length( );
+                bReplace = true;
+            }
+            else if ( Character.isHighSurrogate( c ) && ( i + 1 < nLength ) && Character.isLowSurrogate( strValue.charAt( i + 1 ) ) )
+            {
+                nConsumed = 2;
+                bReplace = !canEncode( strValue.substring( i, i + 2 ) );
+            }
+            else
+            {
+                bReplace = !_encodable.get( c );
+            }
+
+            if ( bReplace && ( sbResult == null ) )
+            {
+                sbResult = getBuffer( );
+                sbResult.append( strValue, 0, i );
+            }
+
+            if ( sbResult != null )
+            {
+                if ( bReplace )
+                {
+                    sbResult.append( CONSTANTE_CARACTERS_DEFICIENT_REPLACE );
+                }
+                else
+                {
+                    sbResult.append( strValue, i, i + nConsumed );
+                }
+
+                if ( sbResult.length( ) > nMax )
+                {
+                    return truncate( sbResult, nMax );
+                }
+            }
+            else if ( i + nConsumed > nMax )
+            {
+                sbResult = getBuffer( );
+                sbResult.append( strValue, 0, i + nConsumed );
+
+                return truncate( sbResult, nMax );
+            }
+
+            i += nConsumed;
+        }
+
+        return ( sbResult == null ) ? strValue : sbResult.toString( );
+    }
+
+    /**
+     * Retourne la séquence interdite présente à une position du libellé
+     *
+     * @param strValue
+     *            le libellé
+     * @param nIndex
+     *            la position
+     * @return la séquence interdite, ou null
+     */
+    private String matchDeficient( String strValue, int nIndex )
+    {
+        for ( String strCaracters : _deficientCaracters )
+        {
+            if ( strValue.startsWith( strCaracters, nIndex ) )
+            {
+                return strCaracters;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tronque le libellé au nombre de caractères maximum, points de suspension compris, sans couper un caractère hors BMP
+     *
+     * @param sbValue
+     *            le libellé
+     * @param nMax
+     *            le nombre de caractères maximum
+     * @return le libellé tronqué
+     */
+    private static String truncate( StringBuilder sbValue, int nMax )
+    {
+        int nLength = nMax - ETC.length( );
+
+        if ( ( nLength > 0 ) && Character.isHighSurrogate( sbValue.charAt( nLength - 1 ) ) )
+        {
+            nLength--;
+        }
+
+        sbValue.setLength( nLength );
+
+        return sbValue.append( ETC ).toString( );
+    }
+
+    /**
+     * Retourne le tampon du thread courant, vidé
+     *
+     * @return le tampon
+     */
+    private StringBuilder getBuffer( )
+    {
+        StringBuilder sbBuffer = _buffer.get( );
+
+        if ( sbBuffer.capacity( ) > BUFFER_MAX_CAPACITY )
+        {
+            sbBuffer = new StringBuilder( );
+            _buffer.set( sbBuffer );
+        }
+
+        sbBuffer.setLength( 0 );
+
+        return sbBuffer;
+    }
+
+    /**
+     * Indique si un caractère hors BMP est représentable dans l'encodage. Cas rare : un encodeur est créé à chaque appel.
+     *
+     * @param strCodePoint
+     *            la paire de substitution
+     * @return true si le caractère est représentable
+     */
+    private boolean canEncode( String strCodePoint )
+    {
+        return _charset.newEncoder( ).canEncode( strCodePoint );
+    }
+
+    /**
+     * Calcule une fois pour toutes les caractères du BMP représentables dans l'encodage
+     *
+     * @param charset
+     *            l'encodage
+     * @return l'ensemble des caractères représentables
+     */
+    private static BitSet computeEncodable( Charset charset )
+    {
+        CharsetEncoder encoder = charset.newEncoder( );
+        BitSet encodable = new BitSet( Character.MAX_VALUE + 1 );
+
+        for ( int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++ )
+        {
+            if ( !Character.isSurrogate( (char) c ) && encoder.canEncode( (char) c ) )
+            {
+                encodable.set( c );
+            }
+        }
+
+        return encodable;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.ack;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Conserve sur disque les paquets en attente de retour, pour que leur suivi reprenne après un redémarrage. Chaque paquet suivi est un fichier
+ * vide portant son nom, daté de son dépôt. Le fichier n'est pas synchronisé sur disque : un suivi perdu lors d'une coupure laisse seulement le
+ * retour du paquet sans effet.
+ */
+final class FastAckStore
+{
+    private final Path _directory;
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire des paquets suivis
+     * @throws IOException
+     *             IOException
+     */
+    FastAckStore( Path directory ) throws IOException
+    {
+        _directory = Files.createDirectories( directory );
+    }
+
+    /**
+     * Relit les paquets suivis lors d'une exécution précédente
+     *
+     * @return la date de dépôt de chaque paquet, par nom de paquet
+     * @throws IOException
+     *             IOException
+     */
+    Map<String, Long> load( ) throws IOException
+    {
+        Map<String, Long> mapSentTimes = new HashMap<String, Long>( );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( _directory ) )
+        {
+            for ( Path file : files )
+            {
+                mapSentTimes.put( file.getFileName( ).toString( ), Files.getLastModifiedTime( file ).toMillis( ) );
+            }
+        }
+
+        return mapSentTimes;
+    }
+
+    /**
+     * Enregistre un paquet suivi
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     * @param lSentTime
+     *            la date de dépôt
+     */
+    void add( String strPackageName, long lSentTime )
+    {
+        try
+        {
+            Path file = _directory.resolve( strPackageName );
+
+            if ( !Files.exists( file ) )
+            {
+                Files.createFile( file );
+            }
+
+            Files.setLastModifiedTime( file, FileTime.fromMillis( lSentTime ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to keep track of package " + strPackageName + " : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Retire un paquet qui n'est plus suivi
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     */
+    void remove( String strPackageName )
+    {
+        try
+        {
+            Files.deleteIfExists( _directory.resolve( strPackageName ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to stop tracking package " + strPackageName + " : " + e.getMessage( ), e );
+        }
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.ack;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastAcknowledgement;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastAcknowledgement.Status;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Surveillance des fichiers retour déposés par FAST dans les répertoires FAST des collectivités.
+ * <p>
+ * Les paquets déposés sont suivis dans une table indexée par nom : chaque fichier retour est rattaché à son paquet en retirant son suffixe, sans
+ * parcourir la liste des paquets en attente. Les créations de fichiers sont reçues par un {@link WatchService} ; comme celui-ci ne voit pas les
+ * fichiers créés par un autre hôte sur un montage réseau, chaque répertoire est aussi relu à chaque intervalle, si sa date de modification a changé
+ * depuis la lecture précédente ou si elle est encore trop proche de cette lecture pour être fiable (granularité des dates, cache d'attributs NFS).
+ * <p>
+ * Un paquet sans retour dans le délai configuré n'est plus suivi : les écouteurs en sont notifiés avec le statut TIMEOUT.
+ * <p>
+ * Les paquets suivis sont aussi conservés dans un répertoire de ce noeud, à côté du journal des transmissions : au démarrage, le suivi des
+ * paquets déposés lors d'une exécution précédente reprend là où il s'était arrêté, sans écouteur propre au paquet.
+ */
+public final class FastAckWatcher
+{
+    private static final String THREAD_NAME = "actes-fast-ack";
+    private static final String DIRECTORY_PREFIX = "ack-";
+    private static final FastAckWatcher _singleton = new FastAckWatcher( );
+    private final Map<String, Tracking> _mapInFlight = new ConcurrentHashMap<String, Tracking>( );
+    private final List<FastAckListener> _listListeners = new CopyOnWriteArrayList<FastAckListener>( );
+    private volatile Thread _thread;
+    private volatile WatchService _watchService;
+    private volatile FastAckStore _store;
+    private List<Path> _listDirectories;
+    private List<String> _listSuffixesAcknowledged;
+    private List<String> _listSuffixesRejected;
+    private long _lPollInterval;
+    private long _lMtimeWindow;
+    private long _lTimeout;
+    private final Map<Path, Long> _mapLastModified = new HashMap<Path, Long>( );
+    private long _lLastScan;
+
+    /**
+     * Constructeur privé
+     */
+    private FastAckWatcher( )
+    {
+    }
+
+    /**
+     * Retourne l'instance unique
+     *
+     * @return l'instance unique
+     */
+    public static FastAckWatcher getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Démarre la surveillance des répertoires FAST
+     *
+     * @param configuration
+     *            la configuration courante
+     */
+    public synchronized void start( FastConfiguration configuration )
+    {
+        if ( _thread != null )
+        {
+            return;
+        }
+
+        _listDirectories = configuration.getFastDirectories( );
+        _listSuffixesAcknowledged = configuration.getAckSuffixesAcknowledged( );
+        _listSuffixesRejected = configuration.getAckSuffixesRejected( );
+        _lPollInterval = configuration.getAckPollInterval( );
+        _lMtimeWindow = configuration.getAckMtimeWindow( );
+        _lTimeout = configuration.getAckTimeout( );
+        _store = openStore( configuration.getJournalDirectory( ).resolve( DIRECTORY_PREFIX + FastWorkspace.getNodeName( ) ) );
+
+        _watchService = openWatchService( _listDirectories );
+
+        Thread thread = new Thread( this::run, THREAD_NAME );
+        thread.setDaemon( true );
+        _thread = thread;
+        thread.start( );
+    }
+
+    /**
+     * Ouvre le répertoire des paquets suivis et reprend le suivi des paquets déposés lors d'une exécution précédente
+     *
+     * @param directory
+     *            le répertoire des paquets suivis
+     * @return le répertoire, ou null s'il est indisponible : le suivi n'est alors conservé qu'en mémoire
+     */
+    private FastAckStore openStore( Path directory )
+    {
+        try
+        {
+            FastAckStore store = new FastAckStore( directory );
+            int nRestored = 0;
+
+            for ( Map.Entry<String, Long> entry : store.load( ).entrySet( ) )
+            {
+                if ( _mapInFlight.putIfAbsent( entry.getKey( ), new Tracking( entry.getValue( ), null ) ) == null )
+                {
+                    nRestored++;
+                }
+            }
+
+            if ( nRestored > 0 )
+            {
+                AppLogService.info( "Actes FAST : tracking of " + nRestored + " package(s) awaiting acknowledgement resumed from " + directory );
+            }
+
+            return store;
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : acknowledgement tracking directory " + directory + " unavailable, tracking kept in memory only : "
+                    + e.getMessage( ), e );
+
+            return null;
+        }
+    }
+
+    /**
+     * Ouvre le service de notification et y inscrit les répertoires. Un répertoire qui ne peut être inscrit (montage réseau, autre système de
+     * fichiers) n'est surveillé que par relecture.
+     *
+     * @param listDirectories
+     *            les répertoires FAST
+     * @return le service, ou null si aucun répertoire n'a pu être inscrit
+     */
+    private static WatchService openWatchService( List<Path> listDirectories )
+    {
+        WatchService watchService;
+
+        try
+        {
+            watchService = listDirectories.get( 0 ).getFileSystem( ).newWatchService( );
+        }
+        catch( IOException | UnsupportedOperationException e )
+        {
+            AppLogService.info( "Actes FAST : file system events unavailable, polling only : " + e.getMessage( ) );
+
+            return null;
+        }
+
+        boolean bRegistered = false;
+
+        for ( Path directory : listDirectories )
+        {
+            try
+            {
+                directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY );
+                bRegistered = true;
+            }
+            catch( IOException | UnsupportedOperationException | ProviderMismatchException e )
+            {
+                AppLogService.info( "Actes FAST : file system events unavailable for " + directory + ", polling only : " + e.getMessage( ) );
+            }
+        }
+
+        if ( bRegistered )
+        {
+            return watchService;
+        }
+
+        try
+        {
+            watchService.close( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : error closing watch service : " + e.getMessage( ), e );
+        }
+
+        return null;
+    }
+
+    /**
+     * Arrête la surveillance
+     */
+    public synchronized void stop( )
+    {
+        Thread thread = _thread;
+        _thread = null;
+
+        if ( thread != null )
+        {
+            thread.interrupt( );
+        }
+
+        if ( _watchService != null )
+        {
+            try
+            {
+                _watchService.close( );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Actes FAST : error closing watch service : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Retourne true si la surveillance est démarrée
+     *
+     * @return true si la surveillance est démarrée
+     */
+    public boolean isStarted( )
+    {
+        return _thread != null;
+    }
+
+    /**
+     * Ajoute un écouteur notifié de tous les retours
+     *
+     * @param listener
+     *            l'écouteur
+     */
+    public void addListener( FastAckListener listener )
+    {
+        _listListeners.add( listener );
+    }
+
+    /**
+     * Retire un écouteur
+     *
+     * @param listener
+     *            l'écouteur
+     */
+    public void removeListener( FastAckListener listener )
+    {
+        _listListeners.remove( listener );
+    }
+
+    /**
+     * Suit un paquet, avant la publication de son fichier témoin afin qu'aucun retour rapide ne soit manqué
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     * @param listener
+     *            un écouteur propre à ce paquet, ou null
+     */
+    public void track( String strPackageName, FastAckListener listener )
+    {
+        Tracking tracking = new Tracking( System.currentTimeMillis( ), listener );
+        _mapInFlight.put( strPackageName, tracking );
+
+        FastAckStore store = _store;
+
+        if ( store != null )
+        {
+            store.add( strPackageName, tracking._lSentTime );
+        }
+    }
+
+    /**
+     * Arrête le suivi d'un paquet dont le dépôt a échoué
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     */
+    public void untrack( String strPackageName )
+    {
+        if ( _mapInFlight.remove( strPackageName ) != null )
+        {
+            forget( strPackageName );
+        }
+    }
+
+    /**
+     * Retire un paquet qui n'est plus suivi du répertoire des paquets suivis
+     *
+     * @param strPackageName
+     *            le nom du paquet
+     */
+    private void forget( String strPackageName )
+    {
+        FastAckStore store = _store;
+
+        if ( store != null )
+        {
+            store.remove( strPackageName );
+        }
+    }
+
+    /**
+     * Retourne le nombre de paquets en attente de retour
+     *
+     * @return le nombre de paquets en attente
+     */
+    public int getInFlightCount( )
+    {
+        return _mapInFlight.size( );
+    }
+
+    /**
+     * Boucle de surveillance
+     */
+    private void run( )
+    {
+        while ( _thread == Thread.currentThread( ) )
+        {
+            try
+            {
+                WatchService watchService = _watchService;
+
+                if ( watchService != null )
+                {
+                    WatchKey key = watchService.poll( _lPollInterval, TimeUnit.MILLISECONDS );
+
+                    if ( key != null )
+                    {
+                        Path directory = (Path) key.watchable( );
+
+                        for ( WatchEvent<?> event : key.pollEvents( ) )
+                        {
+                            if ( event.context( ) instanceof Path )
+                            {
+                                onFile( directory.resolve( (Path) event.context( ) ) );
+                            }
+                        }
+
+                        key.reset( );
+                    }
+                }
+                else
+                {
+                    Thread.sleep( _lPollInterval );
+                }
+
+                if ( System.currentTimeMillis( ) - _lLastScan >= _lPollInterval )
+                {
+                    long lPreviousScan = _lLastScan;
+                    _lLastScan = System.currentTimeMillis( );
+
+                    if ( !_mapInFlight.isEmpty( ) )
+                    {
+                        for ( Path directory : _listDirectories )
+                        {
+                            scanIfModified( directory, lPreviousScan );
+                        }
+
+                        expire( _lLastScan );
+                    }
+                }
+            }
+            catch( InterruptedException | ClosedWatchServiceException e )
+            {
+                return;
+            }
+            catch( RuntimeException e )
+            {
+                AppLogService.error( "Actes FAST : error watching acknowledgements : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Relit un répertoire FAST si sa date de modification a changé, ou si elle est trop proche de la lecture précédente pour qu'un fichier créé
+     * juste après cette lecture l'ait forcément changée
+     *
+     * @param directory
+     *            le répertoire
+     * @param lPreviousScan
+     *            la date de la lecture précédente
+     */
+    private void scanIfModified( Path directory, long lPreviousScan )
+    {
+        try
+        {
+            long lLastModified = Files.getLastModifiedTime( directory ).toMillis( );
+            Long lPrevious = _mapLastModified.put( directory, lLastModified );
+
+            if ( ( lPrevious != null ) && ( lPrevious == lLastModified ) && ( lLastModified < ( lPreviousScan - _lMtimeWindow ) ) )
+            {
+                return;
+            }
+
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) )
+            {
+                for ( Path file : files )
+                {
+                    onFile( file );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to scan " + directory + " : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Rattache un fichier à un paquet en attente et notifie les écouteurs
+     *
+     * @param file
+     *            le fichier apparu dans un répertoire FAST
+     */
+    private void onFile( Path file )
+    {
+        String strFileName = file.getFileName( ).toString( );
+        Status status = Status.ACKNOWLEDGED;
+        String strPackageName = matchSuffix( strFileName, _listSuffixesAcknowledged );
+
+        if ( strPackageName == null )
+        {
+            status = Status.REJECTED;
+            strPackageName = matchSuffix( strFileName, _listSuffixesRejected );
+        }
+
+        if ( strPackageName == null )
+        {
+            return;
+        }
+
+        Tracking tracking = _mapInFlight.remove( strPackageName );
+
+        if ( tracking == null )
+        {
+            return;
+        }
+
+        forget( strPackageName );
+        notifyListeners( tracking, new FastAcknowledgement( strPackageName, status, file, tracking._lSentTime, System.currentTimeMillis( ) ) );
+    }
+
+    /**
+     * Cesse de suivre les paquets restés sans retour au-delà du délai configuré et notifie les écouteurs
+     *
+     * @param lNow
+     *            la date courante
+     */
+    private void expire( long lNow )
+    {
+        for ( Map.Entry<String, Tracking> entry : _mapInFlight.entrySet( ) )
+        {
+            Tracking tracking = entry.getValue( );
+
+            if ( ( lNow - tracking._lSentTime > _lTimeout ) && _mapInFlight.remove( entry.getKey( ), tracking ) )
+            {
+                AppLogService.error( "Actes FAST : no acknowledgement received for package " + entry.getKey( ) );
+                forget( entry.getKey( ) );
+                notifyListeners( tracking, new FastAcknowledgement( entry.getKey( ), Status.TIMEOUT, null, tracking._lSentTime, lNow ) );
+            }
+        }
+    }
+
+    /**
+     * Notifie l'écouteur propre au paquet puis les écouteurs de tous les retours
+     *
+     * @param tracking
+     *            le suivi du paquet
+     * @param acknowledgement
+     *            le retour
+     */
+    private void notifyListeners( Tracking tracking, FastAcknowledgement acknowledgement )
+    {
+        if ( tracking._listener != null )
+        {
+            notify( tracking._listener, acknowledgement );
+        }
+
+        for ( FastAckListener listener : _listListeners )
+        {
+            notify( listener, acknowledgement );
+        }
+    }
+
+    /**
+     * Retourne le nom du paquet si le fichier porte l'un des suffixes
+     *
+     * @param strFileName
+     *            le nom du fichier
+     * @param listSuffixes
+     *            les suffixes
+     * @return le nom du paquet, ou null
+     */
+    private static String matchSuffix( String strFileName, List<String> listSuffixes )
+    {
+        for ( String strSuffix : listSuffixes )
+        {
+            if ( strFileName.endsWith( strSuffix ) && ( strFileName.length( ) > strSuffix.length( ) ) )
+            {
+                return strFileName.substring( 0, strFileName.length( ) - strSuffix.length( ) );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Notifie un écouteur en isolant ses erreurs
+     *
+     * @param listener
+     *            l'écouteur
+     * @param acknowledgement
+     *            le retour
+     */
+    private static void notify( FastAckListener listener, FastAcknowledgement acknowledgement )
+    {
+        try
+        {
+            listener.onAcknowledgement( acknowledgement );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Actes FAST : acknowledgement listener failed : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Suivi d'un paquet en attente de retour
+     */
+    private static final class Tracking
+    {
+        private final long _lSentTime;
+        private final FastAckListener _listener;
+
+        Tracking( long lSentTime, FastAckListener listener )
+        {
+            _lSentTime = lSentTime;
+            _listener = listener;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastAcknowledgement;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastPackage;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastDigest;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Index sur disque des transmissions déjà déposées dans FAST, pour ne pas déposer deux fois le même acte (double clic, relance d'un workflow).
+ * <p>
+ * La clé est l'identifiant de l'acte suivi du code de transaction ; l'entrée contient les empreintes des contenus déjà déposés sous cette clé.
+ * Chaque entrée est un petit fichier dont le chemin est dérivé de l'empreinte de la clé (deux niveaux de sous-répertoires), ce qui donne une
+ * recherche en temps constant sans charger l'index en mémoire, quel que soit le nombre d'entrées. Un fichier de verrou par clé évite que deux
+ * dépôts identiques simultanés, sur le même noeud ou sur deux noeuds, passent tous les deux.
+ * <p>
+ * La date de modification d'un verrou est rafraîchie tant que le dépôt est en cours ; un verrou qui n'a pas été rafraîchi depuis dix minutes
+ * est celui d'un noeud arrêté. Il est repris par un renommage atomique, qui ne réussit que pour un seul des dépôts concurrents.
+ * <p>
+ * Un paquet est oublié lorsque FAST le rejette (fichier retour, si la surveillance des retours est active). Les envois d'un acte sont oubliés
+ * lorsque son annulation est déposée, et inversement ; ils peuvent aussi l'être à la demande ({@code FastService.forgetActe}).
+ */
+public final class FastSubmissionIndex
+{
+    private static final String EXTENSION_LOCK = ".lock";
+    private static final String EXTENSION_STALE = ".stale-";
+    private static final String EXTENSION_TMP = ".tmp";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String THREAD_NAME = "actes-fast-index-locks";
+    private static final long LOCK_MAX_AGE = 10 * 60 * 1000L;
+    private static final long LOCK_REFRESH_INTERVAL = 60 * 1000L;
+    private static final int CLAIM_ATTEMPTS = 3;
+    private static final Map<Path, FastSubmissionLock> _mapHeld = new ConcurrentHashMap<Path, FastSubmissionLock>( );
+    private static volatile ScheduledExecutorService _refresher;
+    private static volatile FastSubmissionIndex _singleton;
+    private final Path _directory;
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire de l'index
+     */
+    FastSubmissionIndex( Path directory )
+    {
+        _directory = directory;
+    }
+
+    /**
+     * Retourne l'instance unique, ou null si l'index est désactivé
+     *
+     * @return l'index, ou null
+     */
+    public static FastSubmissionIndex getInstance( )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        if ( !configuration.isIndexEnabled( ) )
+        {
+            return null;
+        }
+
+        FastSubmissionIndex index = _singleton;
+
+        if ( ( index == null ) || !index._directory.equals( configuration.getIndexDirectory( ) ) )
+        {
+            index = new FastSubmissionIndex( configuration.getIndexDirectory( ) );
+            _singleton = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Oublie le paquet d'un retour de rejet de FAST, afin qu'un nouvel envoi du même acte soit déposé. A inscrire auprès de la surveillance des
+     * fichiers retour.
+     *
+     * @param acknowledgement
+     *            le retour
+     */
+    public static void onAcknowledgement( FastAcknowledgement acknowledgement )
+    {
+        FastSubmissionIndex index = getInstance( );
+
+        if ( ( index == null ) || ( acknowledgement.getStatus( ) != FastAcknowledgement.Status.REJECTED ) )
+        {
+            return;
+        }
+
+        String strPackageName = acknowledgement.getPackageName( );
+
+        try
+        {
+            index.invalidate( FastPackage.toIndexKey( strPackageName ), strPackageName );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to remove rejected package " + strPackageName + " from the index : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Réserve une clé pour un dépôt
+     *
+     * @param strKey
+     *            la clé
+     * @return la réservation, ou null si un dépôt de la même clé est déjà en cours
+     * @throws IOException
+     *             IOException
+     */
+    public FastSubmissionLock claim( String strKey ) throws IOException
+    {
+        Path lock = getLockFile( strKey );
+        Files.createDirectories( lock.getParent( ) );
+
+        return claim( strKey, UUID.randomUUID( ).toString( ), lock );
+    }
+
+    /**
+     * Reprend après un redémarrage la réservation d'une clé, si elle n'a pas été reprise entre-temps par un autre dépôt
+     *
+     * @param strKey
+     *            la clé
+     * @param strToken
+     *            le jeton journalisé de la réservation
+     * @return la réservation, ou null si un autre dépôt de la même clé est en cours
+     * @throws IOException
+     *             IOException
+     */
+    public FastSubmissionLock reclaim( String strKey, String strToken ) throws IOException
+    {
+        Path lock = getLockFile( strKey );
+
+        if ( strToken.equals( readToken( lock ) ) )
+        {
+            Files.setLastModifiedTime( lock, FileTime.fromMillis( System.currentTimeMillis( ) ) );
+
+            return hold( new FastSubmissionLock( strKey, strToken, lock ) );
+        }
+
+        Files.createDirectories( lock.getParent( ) );
+
+        return claim( strKey, strToken, lock );
+    }
+
+    /**
+     * Libère une réservation. Le verrou n'est supprimé que s'il porte encore le jeton de la réservation.
+     *
+     * @param lock
+     *            la réservation
+     */
+    public void release( FastSubmissionLock lock )
+    {
+        _mapHeld.remove( lock.getFile( ), lock );
+
+        try
+        {
+            if ( lock.getToken( ).equals( readToken( lock.getFile( ) ) ) )
+            {
+                Files.deleteIfExists( lock.getFile( ) );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to release submission lock for " + lock.getKey( ) + " : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Indique si un contenu a déjà été déposé sous une clé
+     *
+     * @param strKey
+     *            la clé
+     * @param strContentHash
+     *            l'empreinte du contenu
+     * @return le nom du paquet déjà déposé, ou null
+     * @throws IOException
+     *             IOException
+     */
+    public String find( String strKey, String strContentHash ) throws IOException
+    {
+        for ( String strLine : readEntry( getEntryFile( strKey ) ) )
+        {
+            String [ ] fields = strLine.split( FIELD_SEPARATOR );
+
+            if ( ( fields.length >= 2 ) && fields [0].equals( strContentHash ) )
+            {
+                return fields [1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Enregistre un dépôt réussi. Doit être appelé sous réservation de la clé.
+     *
+     * @param strKey
+     *            la clé
+     * @param strContentHash
+     *            l'empreinte du contenu
+     * @param strPackageName
+     *            le nom du paquet déposé
+     * @throws IOException
+     *             IOException
+     */
+    public void record( String strKey, String strContentHash, String strPackageName ) throws IOException
+    {
+        Path entry = getEntryFile( strKey );
+        Path tmp = entry.resolveSibling( entry.getFileName( ) + EXTENSION_TMP );
+        Files.createDirectories( entry.getParent( ) );
+
+        if ( Files.exists( entry ) )
+        {
+            Files.copy( entry, tmp, StandardCopyOption.REPLACE_EXISTING );
+        }
+
+        String strLine = strContentHash + FIELD_SEPARATOR + strPackageName + FIELD_SEPARATOR + System.currentTimeMillis( ) + LINE_SEPARATOR;
+        Files.write( tmp, strLine.getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+        Files.move( tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    /**
+     * Oublie un paquet déposé sous une clé, par exemple après son rejet par FAST : un nouvel envoi du même contenu sera déposé
+     *
+     * @param strKey
+     *            la clé
+     * @param strPackageName
+     *            le nom du paquet
+     * @return true si le paquet a été retiré de l'index, false s'il n'y figurait pas ou si un dépôt de la clé est en cours
+     * @throws IOException
+     *             IOException
+     */
+    public boolean invalidate( String strKey, String strPackageName ) throws IOException
+    {
+        return remove( strKey, strPackageName );
+    }
+
+    /**
+     * Oublie tous les paquets déposés sous une clé : un nouvel envoi de l'acte sera déposé quel que soit son contenu
+     *
+     * @param strKey
+     *            la clé
+     * @return true si l'entrée a été supprimée, false si elle n'existait pas ou si un dépôt de la clé est en cours
+     * @throws IOException
+     *             IOException
+     */
+    public boolean forget( String strKey ) throws IOException
+    {
+        return remove( strKey, null );
+    }
+
+    /**
+     * Retire des paquets de l'entrée d'une clé, sous réservation de la clé
+     *
+     * @param strKey
+     *            la clé
+     * @param strPackageName
+     *            le nom du paquet à retirer, ou null pour les retirer tous
+     * @return true si au moins un paquet a été retiré, false sinon ou si un dépôt de la clé est en cours
+     * @throws IOException
+     *             IOException
+     */
+    private boolean remove( String strKey, String strPackageName ) throws IOException
+    {
+        String strTarget = ( strPackageName != null ) ? ( "package " + strPackageName ) : ( "acte " + strKey );
+        FastSubmissionLock lock = claim( strKey );
+
+        if ( lock == null )
+        {
+            AppLogService.info( "Actes FAST : " + strTarget + " not removed from the index, a deposit of " + strKey + " is in progress" );
+
+            return false;
+        }
+
+        try
+        {
+            Path entry = getEntryFile( strKey );
+            List<String> listLines = readEntry( entry );
+            List<String> listKept = new ArrayList<String>( listLines.size( ) );
+
+            for ( String strLine : listLines )
+            {
+                String [ ] fields = strLine.split( FIELD_SEPARATOR );
+
+                if ( ( strPackageName != null ) && ( ( fields.length < 2 ) || !fields [1].equals( strPackageName ) ) )
+                {
+                    listKept.add( strLine );
+                }
+            }
+
+            if ( listKept.size( ) == listLines.size( ) )
+            {
+                return false;
+            }
+
+            if ( listKept.isEmpty( ) )
+            {
+                Files.deleteIfExists( entry );
+            }
+            else
+            {
+                Path tmp = entry.resolveSibling( entry.getFileName( ) + EXTENSION_TMP );
+                Files.write( tmp, listKept, StandardCharsets.UTF_8 );
+                Files.move( tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }
+
+            AppLogService.info( "Actes FAST : " + strTarget + " removed from the index" );
+
+            return true;
+        }
+        finally
+        {
+            release( lock );
+        }
+    }
+
+    /**
+     * Crée le verrou d'une clé, en reprenant au besoin un verrou abandonné
+     *
+     * @param strKey
+     *            la clé
+     * @param strToken
+     *            le jeton de la réservation
+     * @param lock
+     *            le fichier de verrou
+     * @return la réservation, ou null si un dépôt de la même clé est en cours
+     * @throws IOException
+     *             IOException
+     */
+    private FastSubmissionLock claim( String strKey, String strToken, Path lock ) throws IOException
+    {
+        for ( int i = 0; i < CLAIM_ATTEMPTS; i++ )
+        {
+            try
+            {
+                Files.write( lock, strToken.getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+
+                return hold( new FastSubmissionLock( strKey, strToken, lock ) );
+            }
+            catch( FileAlreadyExistsException e )
+            {
+                if ( !takeOverIfStale( strKey, lock ) )
+                {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retire un verrou qui n'est plus rafraîchi. Le verrou est d'abord renommé sous un nom unique : un seul des dépôts concurrents y parvient,
+     * et un verrou recréé entre-temps par un autre dépôt n'est jamais supprimé.
+     *
+     * @param strKey
+     *            la clé
+     * @param lock
+     *            le fichier de verrou
+     * @return true si le verrou a disparu et qu'une nouvelle création peut être tentée, false s'il est encore tenu
+     * @throws IOException
+     *             IOException
+     */
+    private boolean takeOverIfStale( String strKey, Path lock ) throws IOException
+    {
+        try
+        {
+            if ( Files.getLastModifiedTime( lock ).toMillis( ) >= ( System.currentTimeMillis( ) - LOCK_MAX_AGE ) )
+            {
+                return false;
+            }
+
+            Path stale = lock.resolveSibling( lock.getFileName( ) + EXTENSION_STALE + UUID.randomUUID( ) );
+            Files.move( lock, stale, StandardCopyOption.ATOMIC_MOVE );
+            Files.delete( stale );
+            AppLogService.info( "Actes FAST : stale submission lock removed for " + strKey );
+        }
+        catch( NoSuchFileException e )
+        {
+            // Verrou libéré, ou repris par un autre dépôt
+        }
+
+        return true;
+    }
+
+    /**
+     * Inscrit une réservation parmi celles dont le verrou est rafraîchi
+     *
+     * @param lock
+     *            la réservation
+     * @return la réservation
+     */
+    private static FastSubmissionLock hold( FastSubmissionLock lock )
+    {
+        _mapHeld.put( lock.getFile( ), lock );
+
+        if ( _refresher == null )
+        {
+            synchronized( FastSubmissionIndex.class )
+            {
+                if ( _refresher == null )
+                {
+                    ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                        Thread thread = new Thread( runnable, THREAD_NAME );
+                        thread.setDaemon( true );
+
+                        return thread;
+                    } );
+                    refresher.scheduleWithFixedDelay( FastSubmissionIndex::refreshLocks, LOCK_REFRESH_INTERVAL, LOCK_REFRESH_INTERVAL,
+                            TimeUnit.MILLISECONDS );
+                    _refresher = refresher;
+                }
+            }
+        }
+
+        return lock;
+    }
+
+    /**
+     * Rafraîchit la date de modification des verrous tenus par les dépôts en cours
+     */
+    private static void refreshLocks( )
+    {
+        FileTime now = FileTime.fromMillis( System.currentTimeMillis( ) );
+
+        for ( FastSubmissionLock lock : _mapHeld.values( ) )
+        {
+            try
+            {
+                if ( lock.getToken( ).equals( readToken( lock.getFile( ) ) ) )
+                {
+                    Files.setLastModifiedTime( lock.getFile( ), now );
+                }
+                else
+                {
+                    AppLogService.error( "Actes FAST : submission lock for " + lock.getKey( ) + " was taken over by another deposit" );
+                    _mapHeld.remove( lock.getFile( ), lock );
+                }
+            }
+            catch( IOException | RuntimeException e )
+            {
+                AppLogService.error( "Actes FAST : unable to refresh submission lock for " + lock.getKey( ) + " : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Lit le jeton d'un verrou
+     *
+     * @param lock
+     *            le fichier de verrou
+     * @return le jeton, ou null si le verrou n'existe pas
+     * @throws IOException
+     *             IOException
+     */
+    private static String readToken( Path lock ) throws IOException
+    {
+        try
+        {
+            return new String( Files.readAllBytes( lock ), StandardCharsets.UTF_8 );
+        }
+        catch( NoSuchFileException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Lit les lignes d'une entrée
+     *
+     * @param entry
+     *            le fichier d'entrée
+     * @return les lignes, vide si l'entrée n'existe pas
+     * @throws IOException
+     *             IOException
+     */
+    private static List<String> readEntry( Path entry ) throws IOException
+    {
+        try
+        {
+            return Files.readAllLines( entry, StandardCharsets.UTF_8 );
+        }
+        catch( NoSuchFileException e )
+        {
+            return new ArrayList<String>( );
+        }
+    }
+
+    /**
+     * Retourne le fichier d'entrée d'une clé
+     *
+     * @param strKey
+     *            la clé
+     * @return le fichier
+     */
+    private Path getEntryFile( String strKey )
+    {
+        String strHash = FastDigest.sha256( strKey );
+
+        return _directory.resolve( strHash.substring( 0, 2 ) ).resolve( strHash.substring( 2, 4 ) ).resolve( strHash );
+    }
+
+    /**
+     * Retourne le fichier de verrou d'une clé
+     *
+     * @param strKey
+     *            la clé
+     * @return le fichier
+     */
+    private Path getLockFile( String strKey )
+    {
+        Path entry = getEntryFile( strKey );
+
+        return entry.resolveSibling( entry.getFileName( ) + EXTENSION_LOCK );
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.index;
+
+import java.nio.file.Path;
+
+/**
+ * Réservation d'une clé de l'index par un dépôt. Le fichier de verrou contient le jeton de la réservation, ce qui permet de la reprendre après un
+ * redémarrage et de ne jamais libérer la réservation d'un autre dépôt.
+ */
+public final class FastSubmissionLock
+{
+    private final String _strKey;
+    private final String _strToken;
+    private final Path _file;
+
+    /**
+     * Constructeur
+     *
+     * @param strKey
+     *            la clé réservée
+     * @param strToken
+     *            le jeton de la réservation
+     * @param file
+     *            le fichier de verrou
+     */
+    FastSubmissionLock( String strKey, String strToken, Path file )
+    {
+        _strKey = strKey;
+        _strToken = strToken;
+        _file = file;
+    }
+
+    /**
+     * Retourne la clé réservée
+     *
+     * @return la clé
+     */
+    public String getKey( )
+    {
+        return _strKey;
+    }
+
+    /**
+     * Retourne le jeton de la réservation, à journaliser pour la reprendre après un redémarrage
+     *
+     * @return le jeton
+     */
+    public String getToken( )
+    {
+        return _strToken;
+    }
+
+    /**
+     * Retourne le fichier de verrou
+     *
+     * @return le fichier
+     */
+    Path getFile( )
+    {
+        return _file;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.io;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Outils de calcul d'empreintes SHA-256
+ */
+public final class FastDigest
+{
+    private static final String ALGORITHM = "SHA-256";
+    private static final char [ ] HEX = "0123456789abcdef".toCharArray( );
+
+    /**
+     * Constructeur privé
+     */
+    private FastDigest( )
+    {
+    }
+
+    /**
+     * Crée un calcul d'empreinte SHA-256
+     *
+     * @return le calcul d'empreinte
+     */
+    public static MessageDigest newDigest( )
+    {
+        try
+        {
+            return MessageDigest.getInstance( ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            // SHA-256 est fourni par toutes les JVM
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Retourne l'empreinte SHA-256 d'une chaîne, en hexadécimal
+     *
+     * @param strValue
+     *            la chaîne
+     * @return l'empreinte
+     */
+    public static String sha256( String strValue )
+    {
+        return toHex( newDigest( ).digest( strValue.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    /**
+     * Convertit une empreinte en hexadécimal
+     *
+     * @param digest
+     *            l'empreinte
+     * @return l'empreinte en hexadécimal
+     */
+    public static String toHex( byte [ ] digest )
+    {
+        char [ ] hex = new char [ digest.length * 2];
+
+        for ( int i = 0; i < digest.length; i++ )
+        {
+            hex [2 * i] = HEX [( digest [i] >> 4 ) & 0xF];
+            hex [( 2 * i ) + 1] = HEX [digest [i] & 0xF];
+        }
+
+        return new String( hex );
+    }
+}
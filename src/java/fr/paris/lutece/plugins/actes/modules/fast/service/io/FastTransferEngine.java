@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Dépose le contenu d'un répertoire de travail dans le répertoire FAST. Les fichiers sont déplacés par simple renommage lorsque les deux répertoires
+ * sont sur le même système de fichiers, et recopiés par {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} sinon. Le
+ * fichier témoin n'est créé qu'une fois tous les fichiers du paquet écrits et synchronisés sur disque : un fichier déplacé est synchronisé après son
+ * renommage, ses données n'ayant pas été forcées lors de leur écriture dans le répertoire de travail.
+ */
+public class FastTransferEngine
+{
+    private static final String EXTENSION_OK = ".OK";
+
+    /** Extension du manifeste déposé à côté du paquet */
+    public static final String EXTENSION_MANIFEST = ".sha256";
+
+    /**
+     * Dépose les fichiers du répertoire de travail dans un sous-répertoire du répertoire FAST puis publie le fichier témoin
+     *
+     * @param workspace
+     *            le répertoire de travail
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet (nom du sous-répertoire et du fichier témoin)
+     * @throws IOException
+     *             IOException
+     */
+    public void publish( Path workspace, Path fastDirectory, String strName ) throws IOException
+    {
+        transfer( workspace, fastDirectory, strName );
+        publishMarker( fastDirectory, strName );
+    }
+
+    /**
+     * Dépose les fichiers du répertoire de travail dans un sous-répertoire du répertoire FAST. Les fichiers déjà déposés par une tentative
+     * précédente sont conservés.
+     *
+     * @param workspace
+     *            le répertoire de travail
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     * @throws IOException
+     *             IOException
+     */
+    public void transfer( Path workspace, Path fastDirectory, String strName ) throws IOException
+    {
+        Path target = Files.createDirectories( fastDirectory.resolve( strName ) );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( workspace ) )
+        {
+            for ( Path file : files )
+            {
+                transfer( file, target.resolve( file.getFileName( ).toString( ) ) );
+            }
+        }
+
+        syncDirectory( target );
+    }
+
+    /**
+     * Dépose le manifeste d'un paquet à côté de son sous-répertoire. Le manifeste est écrit sur disque avant la publication du fichier témoin.
+     *
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     * @param content
+     *            le contenu du manifeste
+     * @throws IOException
+     *             IOException
+     */
+    public void publishManifest( Path fastDirectory, String strName, byte [ ] content ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( fastDirectory.resolve( strName + EXTENSION_MANIFEST ), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( content );
+
+            while ( buffer.hasRemaining( ) )
+            {
+                channel.write( buffer );
+            }
+
+            channel.force( true );
+        }
+    }
+
+    /**
+     * Publie le fichier témoin d'un paquet entièrement déposé
+     *
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     * @throws IOException
+     *             IOException
+     */
+    public void publishMarker( Path fastDirectory, String strName ) throws IOException
+    {
+        // Creation du fichier temoin
+        Path marker = fastDirectory.resolve( strName + EXTENSION_OK );
+
+        try ( FileChannel channel = FileChannel.open( marker, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            channel.force( true );
+        }
+
+        syncDirectory( fastDirectory );
+    }
+
+    /**
+     * Indique si le fichier témoin d'un paquet est publié
+     *
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     * @return true si le paquet est publié
+     */
+    public boolean isPublished( Path fastDirectory, String strName )
+    {
+        return Files.exists( fastDirectory.resolve( strName + EXTENSION_OK ) );
+    }
+
+    /**
+     * Retire un paquet partiellement déposé, et son manifeste, du répertoire FAST. Un paquet dont le fichier témoin est publié n'est pas modifié.
+     *
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     */
+    public void rollback( Path fastDirectory, String strName )
+    {
+        if ( isPublished( fastDirectory, strName ) )
+        {
+            return;
+        }
+
+        FastWorkspace.of( fastDirectory.resolve( strName ) ).delete( );
+
+        try
+        {
+            Files.deleteIfExists( fastDirectory.resolve( strName + EXTENSION_MANIFEST ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to delete manifest of package " + strName + " : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Déplace un fichier vers sa destination, ou le recopie si les deux chemins ne sont pas sur le même système de fichiers. Le fichier déposé est
+     * synchronisé sur disque dans les deux cas.
+     *
+     * @param source
+     *            le fichier source
+     * @param target
+     *            le fichier destination
+     * @throws IOException
+     *             IOException
+     */
+    void transfer( Path source, Path target ) throws IOException
+    {
+        try
+        {
+            Files.move( source, target, StandardCopyOption.ATOMIC_MOVE );
+            force( target );
+        }
+        catch( AtomicMoveNotSupportedException e )
+        {
+            copy( source, target );
+            Files.delete( source );
+        }
+    }
+
+    /**
+     * Recopie un fichier sans passer par un tampon applicatif, puis force son écriture sur disque
+     *
+     * @param source
+     *            le fichier source
+     * @param target
+     *            le fichier destination
+     * @throws IOException
+     *             IOException
+     */
+    public static void copy( Path source, Path target ) throws IOException
+    {
+        try ( FileChannel in = FileChannel.open( source, StandardOpenOption.READ );
+                FileChannel out = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            transferAll( in, out, source );
+            out.force( true );
+        }
+    }
+
+    /**
+     * Recopie tout le contenu d'un fichier, dont la taille est lue au début de la copie
+     *
+     * @param in
+     *            le fichier source
+     * @param out
+     *            le fichier destination
+     * @param source
+     *            le chemin du fichier source, pour les erreurs
+     * @return le nombre d'octets recopiés
+     * @throws IOException
+     *             si le fichier source est tronqué pendant la copie
+     */
+    static long transferAll( FileChannel in, FileChannel out, Path source ) throws IOException
+    {
+        long lSize = in.size( );
+        long lPosition = 0;
+
+        while ( lPosition < lSize )
+        {
+            long lTransferred = in.transferTo( lPosition, lSize - lPosition, out );
+
+            if ( ( lTransferred == 0 ) && ( lPosition >= in.size( ) ) )
+            {
+                throw new IOException( "File " + source + " truncated during copy (" + lPosition + " of " + lSize + " bytes)" );
+            }
+
+            lPosition += lTransferred;
+        }
+
+        return lPosition;
+    }
+
+    /**
+     * Force l'écriture sur disque du contenu d'un fichier
+     *
+     * @param file
+     *            le fichier
+     * @throws IOException
+     *             IOException
+     */
+    public static void force( Path file ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.WRITE ) )
+        {
+            channel.force( true );
+        }
+    }
+
+    /**
+     * Synchronise les entrées d'un répertoire sur disque, lorsque le système le permet
+     *
+     * @param directory
+     *            le répertoire
+     */
+    public static void syncDirectory( Path directory )
+    {
+        try ( FileChannel channel = FileChannel.open( directory, StandardOpenOption.READ ) )
+        {
+            channel.force( true );
+        }
+        catch( IOException e )
+        {
+            // Certains systèmes (Windows) ne permettent pas d'ouvrir un répertoire
+            AppLogService.debug( "Unable to sync directory " + directory + " : " + e.getMessage( ) );
+        }
+    }
+}
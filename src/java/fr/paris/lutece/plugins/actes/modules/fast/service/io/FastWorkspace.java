@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Répertoire de travail propre à une transmission. Chaque répertoire est créé avec un nom aléatoire unique par
+ * {@link Files#createTempDirectory(Path, String, java.nio.file.attribute.FileAttribute...)}, dont la création est atomique : plusieurs threads ou
+ * plusieurs noeuds partageant le même répertoire temporaire ne peuvent pas obtenir le même répertoire. Le nom du répertoire commence par celui du
+ * noeud, ce qui permet à chaque noeud de ne nettoyer que ses propres répertoires.
+ */
+public final class FastWorkspace
+{
+    /** Préfixe des répertoires de travail */
+    public static final String PREFIX = "fast-";
+    private static final String NODE_SEPARATOR = "_";
+    private static final String NODE_DEFAULT = "localhost";
+    private static final String NODE_INVALID_CHARACTERS = "[^A-Za-z0-9.-]";
+    private static final String NODE_REPLACEMENT = "-";
+    private static final String NODE_NAME = resolveNodeName( );
+    private final Path _path;
+
+    /**
+     * Constructeur
+     *
+     * @param path
+     *            le répertoire de travail
+     */
+    private FastWorkspace( Path path )
+    {
+        _path = path;
+    }
+
+    /**
+     * Alloue un nouveau répertoire de travail
+     *
+     * @param tmpDirectory
+     *            le répertoire temporaire racine
+     * @return le répertoire de travail
+     * @throws IOException
+     *             si le répertoire ne peut pas être créé
+     */
+    public static FastWorkspace allocate( Path tmpDirectory ) throws IOException
+    {
+        return new FastWorkspace( Files.createTempDirectory( tmpDirectory, getNodePrefix( ) ) );
+    }
+
+    /**
+     * Retourne le préfixe des répertoires de travail de ce noeud
+     *
+     * @return le préfixe
+     */
+    public static String getNodePrefix( )
+    {
+        return PREFIX + NODE_NAME + NODE_SEPARATOR;
+    }
+
+    /**
+     * Retourne le nom de ce noeud, utilisable dans un nom de fichier
+     *
+     * @return le nom du noeud
+     */
+    public static String getNodeName( )
+    {
+        return NODE_NAME;
+    }
+
+    /**
+     * Détermine le nom de ce noeud à partir du nom de la machine
+     *
+     * @return le nom du noeud
+     */
+    private static String resolveNodeName( )
+    {
+        try
+        {
+            return InetAddress.getLocalHost( ).getHostName( ).replaceAll( NODE_INVALID_CHARACTERS, NODE_REPLACEMENT );
+        }
+        catch( UnknownHostException e )
+        {
+            return NODE_DEFAULT;
+        }
+    }
+
+    /**
+     * Rattache un répertoire de travail existant
+     *
+     * @param path
+     *            le répertoire de travail
+     * @return le répertoire de travail
+     */
+    public static FastWorkspace of( Path path )
+    {
+        return new FastWorkspace( path );
+    }
+
+    /**
+     * Retourne l'identifiant de la transmission (nom du répertoire de travail)
+     *
+     * @return l'identifiant
+     */
+    public String getId( )
+    {
+        return _path.getFileName( ).toString( );
+    }
+
+    /**
+     * Retourne le chemin du répertoire de travail
+     *
+     * @return le chemin
+     */
+    public Path getPath( )
+    {
+        return _path;
+    }
+
+    /**
+     * Retourne le chemin d'un fichier du répertoire de travail
+     *
+     * @param strFileName
+     *            le nom du fichier
+     * @return le chemin du fichier
+     */
+    public Path resolve( String strFileName )
+    {
+        return _path.resolve( strFileName );
+    }
+
+    /**
+     * Supprime le répertoire de travail et son contenu
+     */
+    public void delete( )
+    {
+        try
+        {
+            if ( Files.exists( _path ) )
+            {
+                try ( DirectoryStream<Path> files = Files.newDirectoryStream( _path ) )
+                {
+                    for ( Path file : files )
+                    {
+                        Files.deleteIfExists( file );
+                    }
+                }
+
+                Files.deleteIfExists( _path );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to delete temporary directory " + _path + " : " + e.getMessage( ), e );
+        }
+    }
+}
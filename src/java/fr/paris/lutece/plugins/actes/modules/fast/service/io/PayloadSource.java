@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Source d'un fichier à transmettre (délibération ou annexe). Le contenu est recopié sur disque par blocs de taille bornée, sans jamais être chargé
+ * entièrement en mémoire. Les sources flux ou canal ne peuvent être lues qu'une seule fois.
+ */
+public abstract class PayloadSource
+{
+    /** Taille du tampon de recopie */
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Taille inconnue */
+    public static final long UNKNOWN_SIZE = -1L;
+
+    /**
+     * Retourne la taille du contenu si elle est connue à l'avance
+     *
+     * @return la taille en octets, ou {@link #UNKNOWN_SIZE}
+     */
+    public abstract long getSize( );
+
+    /**
+     * Indique si le contenu peut être relu, par exemple pour une nouvelle tentative d'écriture
+     *
+     * @return true si {@link #writeTo(Path, MessageDigest)} peut être appelé plusieurs fois
+     */
+    public boolean isRepeatable( )
+    {
+        return false;
+    }
+
+    /**
+     * Ecrit le contenu dans le fichier cible (créé ou écrasé)
+     *
+     * @param target
+     *            le fichier cible
+     * @return le nombre d'octets écrits
+     * @throws IOException
+     *             IOException
+     */
+    public long writeTo( Path target ) throws IOException
+    {
+        return writeTo( target, null );
+    }
+
+    /**
+     * Ecrit le contenu dans le fichier cible (créé ou écrasé) en calculant son empreinte au passage, sans relire le fichier
+     *
+     * @param target
+     *            le fichier cible
+     * @param digest
+     *            le calcul d'empreinte à alimenter, ou null
+     * @return le nombre d'octets écrits
+     * @throws IOException
+     *             IOException
+     */
+    public abstract long writeTo( Path target, MessageDigest digest ) throws IOException;
+
+    /**
+     * Calcule l'empreinte du contenu sans l'écrire. Seules les sources relisibles le permettent.
+     *
+     * @param digest
+     *            le calcul d'empreinte à alimenter
+     * @throws IOException
+     *             IOException
+     */
+    public void digest( MessageDigest digest ) throws IOException
+    {
+        throw new IllegalStateException( "The content of this source can only be read once" );
+    }
+
+    /**
+     * Crée une source à partir d'un tableau d'octets
+     *
+     * @param content
+     *            le contenu
+     * @return la source
+     */
+    public static PayloadSource fromBytes( byte [ ] content )
+    {
+        return new BytesSource( content );
+    }
+
+    /**
+     * Crée une source à partir d'un fichier existant
+     *
+     * @param path
+     *            le fichier
+     * @return la source
+     */
+    public static PayloadSource fromPath( Path path )
+    {
+        return new PathSource( path );
+    }
+
+    /**
+     * Crée une source à partir d'un flux, lu une seule fois puis fermé
+     *
+     * @param inputStream
+     *            le flux
+     * @return la source
+     */
+    public static PayloadSource fromStream( InputStream inputStream )
+    {
+        return new StreamSource( inputStream );
+    }
+
+    /**
+     * Crée une source à partir d'un canal, lu une seule fois puis fermé
+     *
+     * @param channel
+     *            le canal
+     * @return la source
+     */
+    public static PayloadSource fromChannel( ReadableByteChannel channel )
+    {
+        return new ChannelSource( channel );
+    }
+
+    /**
+     * Recopie un canal dans le fichier cible avec un tampon borné
+     *
+     * @param in
+     *            le canal source
+     * @param target
+     *            le fichier cible
+     * @param digest
+     *            le calcul d'empreinte à alimenter, ou null
+     * @return le nombre d'octets écrits
+     * @throws IOException
+     *             IOException
+     */
+    protected static long copy( ReadableByteChannel in, Path target, MessageDigest digest ) throws IOException
+    {
+        long lTotal = 0;
+        ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+
+        try ( FileChannel out = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            while ( in.read( buffer ) != -1 )
+            {
+                buffer.flip( );
+
+                if ( digest != null )
+                {
+                    digest.update( buffer.array( ), 0, buffer.limit( ) );
+                }
+
+                while ( buffer.hasRemaining( ) )
+                {
+                    lTotal += out.write( buffer );
+                }
+
+                buffer.clear( );
+            }
+        }
+
+        return lTotal;
+    }
+
+    /**
+     * Source tableau d'octets (adaptateur de l'ancienne API)
+     */
+    private static final class BytesSource extends PayloadSource
+    {
+        private final byte [ ] _content;
+
+        BytesSource( byte [ ] content )
+        {
+            _content = content;
+        }
+
+        @Override
+        public boolean isRepeatable( )
+        {
+            return true;
+        }
+
+        @Override
+        public long getSize( )
+        {
+            return _content.length;
+        }
+
+        @Override
+        public void digest( MessageDigest digest )
+        {
+            digest.update( _content );
+        }
+
+        @Override
+        public long writeTo( Path target, MessageDigest digest ) throws IOException
+        {
+            if ( digest != null )
+            {
+                digest.update( _content );
+            }
+
+            Files.write( target, _content );
+
+            return _content.length;
+        }
+    }
+
+    /**
+     * Source fichier
+     */
+    private static final class PathSource extends PayloadSource
+    {
+        private final Path _path;
+
+        PathSource( Path path )
+        {
+            _path = path;
+        }
+
+        @Override
+        public boolean isRepeatable( )
+        {
+            return true;
+        }
+
+        @Override
+        public long getSize( )
+        {
+            try
+            {
+                return Files.size( _path );
+            }
+            catch( IOException e )
+            {
+                return UNKNOWN_SIZE;
+            }
+        }
+
+        @Override
+        public void digest( MessageDigest digest ) throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+
+            try ( FileChannel in = FileChannel.open( _path, StandardOpenOption.READ ) )
+            {
+                while ( in.read( buffer ) != -1 )
+                {
+                    buffer.flip( );
+                    digest.update( buffer );
+                    buffer.clear( );
+                }
+            }
+        }
+
+        @Override
+        public long writeTo( Path target, MessageDigest digest ) throws IOException
+        {
+            if ( digest != null )
+            {
+                // L'empreinte impose de lire le contenu : pas de transfert direct dans ce cas
+                try ( FileChannel in = FileChannel.open( _path, StandardOpenOption.READ ) )
+                {
+                    return copy( in, target, digest );
+                }
+            }
+
+            try ( FileChannel in = FileChannel.open( _path, StandardOpenOption.READ );
+                    FileChannel out = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+            {
+                return FastTransferEngine.transferAll( in, out, _path );
+            }
+        }
+    }
+
+    /**
+     * Source flux
+     */
+    private static final class StreamSource extends PayloadSource
+    {
+        private final InputStream _inputStream;
+
+        StreamSource( InputStream inputStream )
+        {
+            _inputStream = inputStream;
+        }
+
+        @Override
+        public long getSize( )
+        {
+            return UNKNOWN_SIZE;
+        }
+
+        @Override
+        public long writeTo( Path target, MessageDigest digest ) throws IOException
+        {
+            try ( InputStream in = ( digest != null ) ? new DigestInputStream( _inputStream, digest ) : _inputStream )
+            {
+                return Files.copy( in, target, StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+    }
+
+    /**
+     * Source canal
+     */
+    private static final class ChannelSource extends PayloadSource
+    {
+        private final ReadableByteChannel _channel;
+
+        ChannelSource( ReadableByteChannel channel )
+        {
+            _channel = channel;
+        }
+
+        @Override
+        public long getSize( )
+        {
+            return UNKNOWN_SIZE;
+        }
+
+        @Override
+        public long writeTo( Path target, MessageDigest digest ) throws IOException
+        {
+            try ( ReadableByteChannel in = _channel )
+            {
+                return copy( in, target, digest );
+            }
+        }
+    }
+}
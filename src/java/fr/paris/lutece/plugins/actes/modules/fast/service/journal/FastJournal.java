@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.journal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+
+/**
+ * Journal local des transmissions, en ajout seul. Chaque étape d'une transmission y est enregistrée afin de pouvoir terminer ou annuler au
+ * redémarrage les paquets interrompus par un arrêt de la JVM.
+ * <p>
+ * Les écritures sont synchronisées sur disque par groupes : les threads qui attendent la durabilité d'un enregistrement profitent du même appel à
+ * {@link FileChannel#force(boolean)}. Le journal est vidé dès qu'aucune transmission n'est en cours et que sa taille dépasse le seuil configuré.
+ * Chaque noeud d'un cluster utilise son propre fichier.
+ */
+public final class FastJournal
+{
+    private static final String FILE_PREFIX = "journal-";
+    private static final String FILE_EXTENSION = ".log";
+    private static volatile FastJournal _singleton;
+    private final Path _file;
+    private final long _lCompactionSize;
+    private final Object _writeLock = new Object( );
+    private final Object _syncLock = new Object( );
+    private final Map<String, FastJournalRecord> _mapInFlight = new ConcurrentHashMap<String, FastJournalRecord>( );
+    private final FileChannel _channel;
+    private long _lWrittenSequence;
+    private volatile long _lSyncedSequence;
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire du journal
+     * @param lCompactionSize
+     *            la taille au-delà de laquelle le journal est vidé lorsqu'aucune transmission n'est en cours
+     * @throws IOException
+     *             IOException
+     */
+    FastJournal( Path directory, long lCompactionSize ) throws IOException
+    {
+        Files.createDirectories( directory );
+        _file = directory.resolve( FILE_PREFIX + FastWorkspace.getNodeName( ) + FILE_EXTENSION );
+        _lCompactionSize = lCompactionSize;
+        _channel = open( _file );
+    }
+
+    /**
+     * Retourne l'instance unique, ouverte au premier appel dans le répertoire configuré
+     *
+     * @return le journal
+     * @throws IOException
+     *             si le journal ne peut pas être ouvert
+     */
+    public static FastJournal getInstance( ) throws IOException
+    {
+        FastJournal journal = _singleton;
+
+        if ( journal == null )
+        {
+            synchronized( FastJournal.class )
+            {
+                journal = _singleton;
+
+                if ( journal == null )
+                {
+                    FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+                    journal = new FastJournal( configuration.getJournalDirectory( ), configuration.getJournalCompactionSize( ) );
+                    _singleton = journal;
+                }
+            }
+        }
+
+        return journal;
+    }
+
+    /**
+     * Enregistre une étape d'une transmission. Les étapes PREPARED, COPIED et PUBLISHED sont durables au retour de la méthode ; l'étape CLEANED,
+     * qui ne conditionne aucune reprise, ne l'est pas.
+     *
+     * @param state
+     *            l'étape atteinte
+     * @param strTransmissionId
+     *            l'identifiant de la transmission
+     * @param fastDirectory
+     *            le répertoire FAST de destination
+     * @param strPackageName
+     *            le nom du paquet FAST
+     * @throws IOException
+     *             IOException
+     */
+    public void append( FastJournalState state, String strTransmissionId, Path fastDirectory, String strPackageName ) throws IOException
+    {
+        FastJournalRecord previous = _mapInFlight.get( strTransmissionId );
+
+        if ( previous != null )
+        {
+            append( state, strTransmissionId, fastDirectory, strPackageName, previous.getIndexKey( ), previous.getContentHash( ),
+                    previous.getLockToken( ) );
+        }
+        else
+        {
+            append( state, strTransmissionId, fastDirectory, strPackageName, null, null, null );
+        }
+    }
+
+    /**
+     * Enregistre une étape d'une transmission réservée dans l'index des paquets déposés. Les étapes suivantes de la transmission reprennent la
+     * clé, l'empreinte et le jeton enregistrés ici.
+     *
+     * @param state
+     *            l'étape atteinte
+     * @param strTransmissionId
+     *            l'identifiant de la transmission
+     * @param fastDirectory
+     *            le répertoire FAST de destination
+     * @param strPackageName
+     *            le nom du paquet FAST
+     * @param strIndexKey
+     *            la clé de l'acte dans l'index, ou null
+     * @param strContentHash
+     *            l'empreinte du contenu, ou null
+     * @param strLockToken
+     *            le jeton de la réservation de l'acte dans l'index, ou null
+     * @throws IOException
+     *             IOException
+     */
+    public void append( FastJournalState state, String strTransmissionId, Path fastDirectory, String strPackageName, String strIndexKey,
+            String strContentHash, String strLockToken ) throws IOException
+    {
+        FastJournalRecord record = new FastJournalRecord( System.currentTimeMillis( ), state, strTransmissionId, fastDirectory, strPackageName,
+                strIndexKey, strContentHash, strLockToken );
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode( record.format( ) );
+        long lSequence;
+
+        synchronized( _writeLock )
+        {
+            while ( buffer.hasRemaining( ) )
+            {
+                _channel.write( buffer );
+            }
+
+            lSequence = ++_lWrittenSequence;
+
+            if ( state == FastJournalState.CLEANED )
+            {
+                _mapInFlight.remove( strTransmissionId );
+                compactIfIdle( );
+
+                return;
+            }
+
+            _mapInFlight.put( strTransmissionId, record );
+        }
+
+        sync( lSequence );
+    }
+
+    /**
+     * Enregistre la fin d'une transmission si elle a été journalisée
+     *
+     * @param strTransmissionId
+     *            l'identifiant de la transmission
+     * @throws IOException
+     *             IOException
+     */
+    public void cleaned( String strTransmissionId ) throws IOException
+    {
+        FastJournalRecord record = _mapInFlight.get( strTransmissionId );
+
+        if ( record != null )
+        {
+            append( FastJournalState.CLEANED, strTransmissionId, record.getFastDirectory( ), record.getPackageName( ) );
+        }
+    }
+
+    /**
+     * Relit le journal et retourne la dernière étape de chaque transmission non terminée
+     *
+     * @return les transmissions non terminées
+     * @throws IOException
+     *             IOException
+     */
+    public List<FastJournalRecord> readIncomplete( ) throws IOException
+    {
+        Map<String, FastJournalRecord> mapLast = new LinkedHashMap<String, FastJournalRecord>( );
+
+        synchronized( _writeLock )
+        {
+            try ( BufferedReader reader = Files.newBufferedReader( _file, StandardCharsets.UTF_8 ) )
+            {
+                String strLine;
+
+                while ( ( strLine = reader.readLine( ) ) != null )
+                {
+                    FastJournalRecord record = FastJournalRecord.parse( strLine );
+
+                    if ( record == null )
+                    {
+                        continue;
+                    }
+
+                    if ( record.getState( ) == FastJournalState.CLEANED )
+                    {
+                        mapLast.remove( record.getTransmissionId( ) );
+                    }
+                    else
+                    {
+                        mapLast.put( record.getTransmissionId( ), record );
+                    }
+                }
+            }
+            catch( NoSuchFileException e )
+            {
+                // Journal vide
+            }
+        }
+
+        return new ArrayList<FastJournalRecord>( mapLast.values( ) );
+    }
+
+    /**
+     * Vide le journal s'il ne reste aucune transmission en cours. Appelé après la reprise au démarrage.
+     *
+     * @throws IOException
+     *             IOException
+     */
+    public void compact( ) throws IOException
+    {
+        synchronized( _writeLock )
+        {
+            if ( _mapInFlight.isEmpty( ) )
+            {
+                truncate( );
+            }
+        }
+    }
+
+    /**
+     * Vide le journal si aucune transmission n'est en cours et qu'il dépasse la taille configurée. Appelé sous le verrou d'écriture.
+     *
+     * @throws IOException
+     *             IOException
+     */
+    private void compactIfIdle( ) throws IOException
+    {
+        if ( _mapInFlight.isEmpty( ) && ( _channel.size( ) > _lCompactionSize ) )
+        {
+            truncate( );
+        }
+    }
+
+    /**
+     * Vide le journal. Appelé sous le verrou d'écriture.
+     *
+     * @throws IOException
+     *             IOException
+     */
+    private void truncate( ) throws IOException
+    {
+        _channel.truncate( 0 );
+        _channel.force( true );
+    }
+
+    /**
+     * Attend que l'enregistrement de numéro donné soit sur disque. Un seul thread synchronise le fichier pour tous les enregistrements écrits
+     * jusque-là ; les autres attendent puis constatent que leur enregistrement est déjà durable.
+     *
+     * @param lSequence
+     *            le numéro de l'enregistrement
+     * @throws IOException
+     *             IOException
+     */
+    private void sync( long lSequence ) throws IOException
+    {
+        if ( _lSyncedSequence >= lSequence )
+        {
+            return;
+        }
+
+        synchronized( _syncLock )
+        {
+            if ( _lSyncedSequence >= lSequence )
+            {
+                return;
+            }
+
+            long lTarget;
+
+            synchronized( _writeLock )
+            {
+                lTarget = _lWrittenSequence;
+            }
+
+            _channel.force( false );
+            _lSyncedSequence = lTarget;
+        }
+    }
+
+    /**
+     * Ouvre le fichier du journal en ajout
+     *
+     * @param file
+     *            le fichier
+     * @return le canal
+     * @throws IOException
+     *             IOException
+     */
+    private static FileChannel open( Path file ) throws IOException
+    {
+        return FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.journal;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Enregistrement du journal : une ligne par changement d'étape d'une transmission. Une transmission réservée dans l'index des paquets déposés porte
+ * aussi sa clé, l'empreinte de son contenu et le jeton de sa réservation, afin que la reprise puisse enregistrer le paquet dans l'index.
+ */
+public final class FastJournalRecord
+{
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String FIELD_EMPTY = "";
+    private static final int NB_FIELDS_PACKAGE = 5;
+    private static final int NB_FIELDS = 8;
+    private final long _lTimestamp;
+    private final FastJournalState _state;
+    private final String _strTransmissionId;
+    private final Path _fastDirectory;
+    private final String _strPackageName;
+    private final String _strIndexKey;
+    private final String _strContentHash;
+    private final String _strLockToken;
+
+    /**
+     * Constructeur
+     *
+     * @param lTimestamp
+     *            la date de l'enregistrement
+     * @param state
+     *            l'étape atteinte
+     * @param strTransmissionId
+     *            l'identifiant de la transmission (nom du répertoire de travail)
+     * @param fastDirectory
+     *            le répertoire FAST de destination
+     * @param strPackageName
+     *            le nom du paquet FAST
+     */
+    public FastJournalRecord( long lTimestamp, FastJournalState state, String strTransmissionId, Path fastDirectory, String strPackageName )
+    {
+        this( lTimestamp, state, strTransmissionId, fastDirectory, strPackageName, null, null, null );
+    }
+
+    /**
+     * Constructeur
+     *
+     * @param lTimestamp
+     *            la date de l'enregistrement
+     * @param state
+     *            l'étape atteinte
+     * @param strTransmissionId
+     *            l'identifiant de la transmission (nom du répertoire de travail)
+     * @param fastDirectory
+     *            le répertoire FAST de destination
+     * @param strPackageName
+     *            le nom du paquet FAST
+     * @param strIndexKey
+     *            la clé de l'acte dans l'index, ou null
+     * @param strContentHash
+     *            l'empreinte du contenu, ou null
+     * @param strLockToken
+     *            le jeton de la réservation de l'acte dans l'index, ou null
+     */
+    public FastJournalRecord( long lTimestamp, FastJournalState state, String strTransmissionId, Path fastDirectory, String strPackageName,
+            String strIndexKey, String strContentHash, String strLockToken )
+    {
+        _lTimestamp = lTimestamp;
+        _state = state;
+        _strTransmissionId = strTransmissionId;
+        _fastDirectory = fastDirectory;
+        _strPackageName = strPackageName;
+        _strIndexKey = strIndexKey;
+        _strContentHash = strContentHash;
+        _strLockToken = strLockToken;
+    }
+
+    /**
+     * Relit un enregistrement
+     *
+     * @param strLine
+     *            la ligne du journal
+     * @return l'enregistrement, ou null si la ligne est incomplète (écriture interrompue)
+     */
+    static FastJournalRecord parse( String strLine )
+    {
+        String [ ] fields = strLine.split( FIELD_SEPARATOR, -1 );
+
+        if ( ( fields.length != NB_FIELDS ) && ( fields.length != NB_FIELDS_PACKAGE ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            boolean bIndexed = fields.length == NB_FIELDS;
+
+            return new FastJournalRecord( Long.parseLong( fields [0] ), FastJournalState.valueOf( fields [1] ), fields [2], Paths.get( fields [3] ),
+                    fields [4], bIndexed ? toValue( fields [5] ) : null, bIndexed ? toValue( fields [6] ) : null, bIndexed ? toValue( fields [7] ) : null );
+        }
+        catch( IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Retourne la ligne du journal correspondant à l'enregistrement
+     *
+     * @return la ligne, terminée par un retour à la ligne
+     */
+    String format( )
+    {
+        return _lTimestamp + FIELD_SEPARATOR + _state.name( ) + FIELD_SEPARATOR + _strTransmissionId + FIELD_SEPARATOR + _fastDirectory + FIELD_SEPARATOR
+                + _strPackageName + FIELD_SEPARATOR + toField( _strIndexKey ) + FIELD_SEPARATOR + toField( _strContentHash ) + FIELD_SEPARATOR
+                + toField( _strLockToken ) + "\n";
+    }
+
+    /**
+     * Retourne le champ du journal correspondant à une valeur facultative
+     *
+     * @param strValue
+     *            la valeur, ou null
+     * @return le champ
+     */
+    private static String toField( String strValue )
+    {
+        return ( strValue != null ) ? strValue : FIELD_EMPTY;
+    }
+
+    /**
+     * Retourne la valeur facultative correspondant à un champ du journal
+     *
+     * @param strField
+     *            le champ
+     * @return la valeur, ou null si le champ est vide
+     */
+    private static String toValue( String strField )
+    {
+        return strField.isEmpty( ) ? null : strField;
+    }
+
+    /**
+     * Retourne la date de l'enregistrement
+     *
+     * @return la date en millisecondes
+     */
+    public long getTimestamp( )
+    {
+        return _lTimestamp;
+    }
+
+    /**
+     * Retourne l'étape atteinte
+     *
+     * @return l'étape
+     */
+    public FastJournalState getState( )
+    {
+        return _state;
+    }
+
+    /**
+     * Retourne l'identifiant de la transmission
+     *
+     * @return l'identifiant
+     */
+    public String getTransmissionId( )
+    {
+        return _strTransmissionId;
+    }
+
+    /**
+     * Retourne le répertoire FAST de destination
+     *
+     * @return le répertoire FAST
+     */
+    public Path getFastDirectory( )
+    {
+        return _fastDirectory;
+    }
+
+    /**
+     * Retourne le nom du paquet FAST
+     *
+     * @return le nom du paquet
+     */
+    public String getPackageName( )
+    {
+        return _strPackageName;
+    }
+
+    /**
+     * Retourne la clé de l'acte dans l'index des paquets déposés
+     *
+     * @return la clé, ou null si la transmission n'est pas réservée dans l'index
+     */
+    public String getIndexKey( )
+    {
+        return _strIndexKey;
+    }
+
+    /**
+     * Retourne l'empreinte du contenu de la transmission
+     *
+     * @return l'empreinte, ou null
+     */
+    public String getContentHash( )
+    {
+        return _strContentHash;
+    }
+
+    /**
+     * Retourne le jeton de la réservation de l'acte dans l'index
+     *
+     * @return le jeton, ou null
+     */
+    public String getLockToken( )
+    {
+        return _strLockToken;
+    }
+}
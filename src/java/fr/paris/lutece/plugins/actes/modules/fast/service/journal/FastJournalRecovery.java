@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.journal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastManifest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.index.FastSubmissionIndex;
+import fr.paris.lutece.plugins.actes.modules.fast.service.index.FastSubmissionLock;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastDigest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.plugins.actes.modules.fast.service.retry.FastDeadLetterStore;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Reprise au démarrage des transmissions interrompues. Pour chaque transmission non terminée du journal :
+ * <ul>
+ * <li>PREPARED : le dépôt dans le répertoire FAST est terminé puis le manifeste et le fichier témoin sont publiés ;</li>
+ * <li>COPIED : le manifeste et le fichier témoin sont publiés ;</li>
+ * <li>PUBLISHED : seul le répertoire de travail reste à supprimer.</li>
+ * </ul>
+ * Un paquet publié est enregistré dans l'index des paquets déposés et la réservation de l'acte est libérée. Si la reprise échoue, le paquet
+ * partiel est retiré du répertoire FAST et conservé avec le répertoire de travail dans le répertoire des paquets en échec, comme lors d'un
+ * dépôt ; s'il ne peut pas y être conservé, la transmission reste inachevée dans le journal et sera reprise au prochain démarrage. Les répertoires de travail de ce noeud inconnus du journal et plus anciens que le délai configuré sont
+ * ensuite supprimés ; ceux des autres noeuds partageant le répertoire temporaire ne sont jamais touchés.
+ */
+public final class FastJournalRecovery
+{
+    private final FastTransferEngine _transferEngine = new FastTransferEngine( );
+
+    /**
+     * Lance la reprise
+     *
+     * @param configuration
+     *            la configuration courante
+     * @throws IOException
+     *             si le journal ne peut pas être lu
+     */
+    public void recover( FastConfiguration configuration ) throws IOException
+    {
+        FastJournal journal = FastJournal.getInstance( );
+        List<FastJournalRecord> listIncomplete = journal.readIncomplete( );
+        Set<String> setRecovered = new HashSet<String>( );
+
+        for ( FastJournalRecord record : listIncomplete )
+        {
+            recover( journal, configuration, record );
+            setRecovered.add( record.getTransmissionId( ) );
+        }
+
+        collectOrphanWorkspaces( configuration, setRecovered );
+        journal.compact( );
+
+        if ( !listIncomplete.isEmpty( ) )
+        {
+            AppLogService.info( "Actes FAST : " + listIncomplete.size( ) + " interrupted transmission(s) recovered" );
+        }
+    }
+
+    /**
+     * Reprend une transmission interrompue
+     *
+     * @param journal
+     *            le journal
+     * @param configuration
+     *            la configuration courante
+     * @param record
+     *            la dernière étape enregistrée
+     * @throws IOException
+     *             si le journal ne peut pas être écrit
+     */
+    private void recover( FastJournal journal, FastConfiguration configuration, FastJournalRecord record ) throws IOException
+    {
+        FastWorkspace workspace = FastWorkspace.of( configuration.getTmpDirectory( ).resolve( record.getTransmissionId( ) ) );
+        Path fastDirectory = record.getFastDirectory( );
+        String strPackageName = record.getPackageName( );
+        boolean bPublished = true;
+
+        try
+        {
+            switch( record.getState( ) )
+            {
+                case PREPARED:
+                    if ( !Files.isDirectory( workspace.getPath( ) ) )
+                    {
+                        throw new IOException( "Temporary directory " + workspace.getPath( ) + " is missing" );
+                    }
+
+                    _transferEngine.transfer( workspace.getPath( ), fastDirectory, strPackageName );
+                    journal.append( FastJournalState.COPIED, record.getTransmissionId( ), fastDirectory, strPackageName );
+                    publishManifest( configuration, fastDirectory, strPackageName );
+                    _transferEngine.publishMarker( fastDirectory, strPackageName );
+                    journal.append( FastJournalState.PUBLISHED, record.getTransmissionId( ), fastDirectory, strPackageName );
+                    AppLogService.info( "Actes FAST : package " + strPackageName + " completed and published" );
+                    break;
+                case COPIED:
+                    publishManifest( configuration, fastDirectory, strPackageName );
+                    _transferEngine.publishMarker( fastDirectory, strPackageName );
+                    journal.append( FastJournalState.PUBLISHED, record.getTransmissionId( ), fastDirectory, strPackageName );
+                    AppLogService.info( "Actes FAST : package " + strPackageName + " published" );
+                    break;
+                default:
+                    break;
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to recover package " + strPackageName + " : " + e.getMessage( ), e );
+            bPublished = _transferEngine.isPublished( fastDirectory, strPackageName );
+
+            if ( !bPublished
+                    && !new FastDeadLetterStore( configuration.getDeadLetterDirectory( ) ).store( workspace, fastDirectory, strPackageName, null, 0, e ) )
+            {
+                // Le paquet n'a pas pu être conservé : la transmission reste inachevée dans le journal et sera reprise au prochain démarrage
+                return;
+            }
+        }
+
+        updateIndex( record, bPublished );
+        workspace.delete( );
+        journal.append( FastJournalState.CLEANED, record.getTransmissionId( ), fastDirectory, strPackageName );
+    }
+
+    /**
+     * Publie le manifeste d'un paquet repris, recalculé à partir des fichiers déposés dans le répertoire FAST
+     *
+     * @param configuration
+     *            la configuration courante
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strPackageName
+     *            le nom du paquet
+     * @throws IOException
+     *             IOException
+     */
+    private void publishManifest( FastConfiguration configuration, Path fastDirectory, String strPackageName ) throws IOException
+    {
+        if ( !configuration.isManifestEnabled( ) )
+        {
+            return;
+        }
+
+        FastManifest manifest = new FastManifest( );
+        manifest.setPackageName( strPackageName );
+
+        List<Path> listFiles = new ArrayList<Path>( );
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( fastDirectory.resolve( strPackageName ) ) )
+        {
+            for ( Path file : files )
+            {
+                listFiles.add( file );
+            }
+        }
+
+        Collections.sort( listFiles );
+
+        for ( Path file : listFiles )
+        {
+            MessageDigest digest = FastDigest.newDigest( );
+            PayloadSource.fromPath( file ).digest( digest );
+            manifest.addEntry( new FastManifest.Entry( file.getFileName( ).toString( ), Files.size( file ), FastDigest.toHex( digest.digest( ) ) ) );
+        }
+
+        _transferEngine.publishManifest( fastDirectory, strPackageName, manifest.format( ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Enregistre un paquet publié dans l'index des paquets déposés et libère la réservation de l'acte laissée par la transmission interrompue
+     *
+     * @param record
+     *            la dernière étape enregistrée
+     * @param bPublished
+     *            true si le paquet est publié, false s'il a été retiré du répertoire FAST
+     */
+    private void updateIndex( FastJournalRecord record, boolean bPublished )
+    {
+        String strIndexKey = record.getIndexKey( );
+        FastSubmissionIndex index = FastSubmissionIndex.getInstance( );
+
+        if ( ( strIndexKey == null ) || ( index == null ) )
+        {
+            return;
+        }
+
+        try
+        {
+            FastSubmissionLock lock = index.reclaim( strIndexKey, record.getLockToken( ) );
+
+            if ( lock == null )
+            {
+                AppLogService.error( "Actes FAST : package " + record.getPackageName( ) + " not recorded in the index, a deposit of " + strIndexKey
+                        + " is in progress" );
+
+                return;
+            }
+
+            try
+            {
+                if ( bPublished && ( index.find( strIndexKey, record.getContentHash( ) ) == null ) )
+                {
+                    index.record( strIndexKey, record.getContentHash( ), record.getPackageName( ) );
+                }
+            }
+            finally
+            {
+                index.release( lock );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to record package " + record.getPackageName( ) + " in the index : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Supprime les répertoires de travail de ce noeud abandonnés avant d'avoir été journalisés
+     *
+     * @param configuration
+     *            la configuration courante
+     * @param setRecovered
+     *            les transmissions déjà traitées par la reprise
+     */
+    private void collectOrphanWorkspaces( FastConfiguration configuration, Set<String> setRecovered )
+    {
+        long lLimit = System.currentTimeMillis( ) - configuration.getOrphanWorkspaceMaxAge( );
+
+        try ( DirectoryStream<Path> directories = Files.newDirectoryStream( configuration.getTmpDirectory( ), FastWorkspace.getNodePrefix( ) + "*" ) )
+        {
+            for ( Path directory : directories )
+            {
+                if ( Files.isDirectory( directory ) && !setRecovered.contains( directory.getFileName( ).toString( ) )
+                        && ( Files.getLastModifiedTime( directory ).toMillis( ) < lLimit ) )
+                {
+                    AppLogService.info( "Actes FAST : removing abandoned temporary directory " + directory );
+                    FastWorkspace.of( directory ).delete( );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to scan temporary directory : " + e.getMessage( ), e );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.lane;
+
+/**
+ * Place accordée à une transmission dans la file de sa collectivité
+ */
+public final class FastLanePermit
+{
+    private final FastLaneScheduler _scheduler;
+    private final String _strCollectivity;
+    private boolean _bReleased;
+
+    /**
+     * Constructeur
+     *
+     * @param scheduler
+     *            l'ordonnanceur qui a accordé la place, ou null pour une place déjà détenue par le thread courant
+     * @param strCollectivity
+     *            le code de la collectivité
+     */
+    FastLanePermit( FastLaneScheduler scheduler, String strCollectivity )
+    {
+        _scheduler = scheduler;
+        _strCollectivity = strCollectivity;
+    }
+
+    /**
+     * Retourne le code de la collectivité
+     *
+     * @return le code de la collectivité
+     */
+    public String getCollectivity( )
+    {
+        return _strCollectivity;
+    }
+
+    /**
+     * Libère la place, une fois le paquet déposé ou abandonné. Un second appel est sans effet.
+     */
+    public void release( )
+    {
+        if ( _scheduler != null )
+        {
+            _scheduler.release( this );
+        }
+    }
+
+    /**
+     * Marque la place comme libérée. Appelé par l'ordonnanceur, qui synchronise les accès.
+     *
+     * @return true si la place n'était pas déjà libérée
+     */
+    boolean markReleased( )
+    {
+        boolean bReleased = _bReleased;
+        _bReleased = true;
+
+        return !bReleased;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.lane;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastBatchExecutor;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastCollectivityProfile;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastStage;
+
+/**
+ * Ordonnancement des transmissions par collectivité. Chaque collectivité dispose de sa propre file, dont le nombre de paquets préparés
+ * simultanément est borné (actes-fast.collectivity.&lt;code&gt;.max.concurrent) ; l'ensemble des files reste borné par le nombre de paquets préparés
+ * simultanément par l'application (actes-fast.batch.max.concurrent).
+ * <p>
+ * Les places qui se libèrent sont attribuées à tour de rôle aux files en attente, et non dans l'ordre d'arrivée des transmissions : une rafale de
+ * transmissions d'une collectivité n'attend que sur sa propre file et ne retarde les autres collectivités que d'une place à chaque tour.
+ * <p>
+ * Une transmission qui s'exécute déjà dans la file de sa collectivité (tâche d'un lot) n'y reprend pas de place lorsqu'elle appelle
+ * {@link #acquire(FastCollectivityProfile, String)}.
+ */
+public final class FastLaneScheduler
+{
+    private static final ThreadLocal<FastLanePermit> _current = new ThreadLocal<FastLanePermit>( );
+    private static volatile FastLaneScheduler _singleton;
+    private volatile FastConfiguration _configuration;
+    private final List<Lane> _listLanes = new ArrayList<Lane>( );
+    private final Map<String, Lane> _mapLanes = new HashMap<String, Lane>( );
+    private int _nMaxConcurrent;
+    private int _nActive;
+    private int _nNextLane;
+
+    /**
+     * Constructeur
+     *
+     * @param configuration
+     *            la configuration courante
+     */
+    FastLaneScheduler( FastConfiguration configuration )
+    {
+        configure( configuration );
+    }
+
+    /**
+     * Retourne l'instance unique. Lorsque la configuration est rechargée, l'instance est conservée avec les places déjà accordées et seules les
+     * limites des files sont remplacées.
+     *
+     * @return l'ordonnanceur
+     */
+    public static FastLaneScheduler getInstance( )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        FastLaneScheduler scheduler = _singleton;
+
+        if ( scheduler == null )
+        {
+            synchronized( FastLaneScheduler.class )
+            {
+                scheduler = _singleton;
+
+                if ( scheduler == null )
+                {
+                    scheduler = new FastLaneScheduler( configuration );
+                    _singleton = scheduler;
+                }
+            }
+        }
+
+        if ( scheduler._configuration != configuration )
+        {
+            scheduler.reconfigure( configuration );
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Applique une configuration rechargée. Les places accordées restent comptées ; les nouvelles limites s'appliquent aux places suivantes, et les
+     * places libérées par une limite plus haute sont attribuées tout de suite. Une collectivité retirée de la configuration garde sa file jusqu'au
+     * redémarrage, le temps que ses transmissions en cours se terminent.
+     *
+     * @param configuration
+     *            la nouvelle configuration
+     */
+    synchronized void reconfigure( FastConfiguration configuration )
+    {
+        if ( _configuration == configuration )
+        {
+            return;
+        }
+
+        configure( configuration );
+        dispatch( );
+        notifyAll( );
+    }
+
+    /**
+     * Lit les limites des files dans la configuration, en créant les files des nouvelles collectivités
+     *
+     * @param configuration
+     *            la configuration
+     */
+    private void configure( FastConfiguration configuration )
+    {
+        _nMaxConcurrent = configuration.getBatchMaxConcurrent( );
+
+        for ( FastCollectivityProfile profile : configuration.getProfiles( ) )
+        {
+            Lane lane = _mapLanes.get( profile.getCode( ) );
+
+            if ( lane == null )
+            {
+                lane = new Lane( profile.getCode( ) );
+                _listLanes.add( lane );
+                _mapLanes.put( lane._strCode, lane );
+            }
+
+            lane._nMaxConcurrent = profile.getMaxConcurrent( );
+        }
+
+        _configuration = configuration;
+    }
+
+    /**
+     * Attend une place dans la file d'une collectivité
+     *
+     * @param profile
+     *            le profil de la collectivité
+     * @param strTransactionType
+     *            le type de transaction, pour les métriques
+     * @return la place, à libérer une fois le paquet déposé ou abandonné
+     * @throws InterruptedIOException
+     *             si le thread est interrompu pendant l'attente
+     */
+    public FastLanePermit acquire( FastCollectivityProfile profile, String strTransactionType ) throws InterruptedIOException
+    {
+        FastLanePermit current = _current.get( );
+
+        if ( ( current != null ) && current.getCollectivity( ).equals( profile.getCode( ) ) )
+        {
+            return new FastLanePermit( null, profile.getCode( ) );
+        }
+
+        Waiter waiter = new Waiter( getLane( profile ), strTransactionType, null );
+
+        synchronized( this )
+        {
+            waiter._lane._queueWaiters.add( waiter );
+            dispatch( );
+
+            try
+            {
+                while ( waiter._permit == null )
+                {
+                    wait( );
+                }
+            }
+            catch( InterruptedException e )
+            {
+                if ( waiter._permit != null )
+                {
+                    release( waiter._permit );
+                }
+                else
+                {
+                    waiter._lane._queueWaiters.remove( waiter );
+                }
+
+                Thread.currentThread( ).interrupt( );
+
+                throw new InterruptedIOException( "Interrupted while waiting for a place in the lane of collectivity " + profile.getCode( ) );
+            }
+        }
+
+        _current.set( waiter._permit );
+
+        return waiter._permit;
+    }
+
+    /**
+     * Place une tâche dans la file d'une collectivité. Elle est exécutée par les threads des lots lorsqu'une place lui est attribuée, et la place est
+     * libérée à la fin de la tâche.
+     *
+     * @param <T>
+     *            le type du résultat
+     * @param profile
+     *            le profil de la collectivité
+     * @param strTransactionType
+     *            le type de transaction, pour les métriques
+     * @param task
+     *            la tâche
+     * @return le résultat à venir
+     */
+    public <T> Future<T> submit( FastCollectivityProfile profile, String strTransactionType, Callable<T> task )
+    {
+        FutureTask<T> future = new FutureTask<T>( task );
+
+        synchronized( this )
+        {
+            Lane lane = getLane( profile );
+            lane._queueWaiters.add( new Waiter( lane, strTransactionType, future ) );
+            dispatch( );
+        }
+
+        return future;
+    }
+
+    /**
+     * Retourne le rang de la file d'une collectivité dans le tour en cours, pour choisir la prochaine transmission à traiter parmi plusieurs
+     *
+     * @param strCode
+     *            le code de la collectivité
+     * @return 0 pour la file servie en premier, ou -1 si la file est pleine
+     */
+    public synchronized int getRank( String strCode )
+    {
+        Lane lane = _mapLanes.get( strCode );
+
+        if ( lane == null )
+        {
+            return 0;
+        }
+
+        if ( lane._nActive >= lane._nMaxConcurrent )
+        {
+            return -1;
+        }
+
+        int nRank = _listLanes.indexOf( lane ) - _nNextLane;
+
+        return ( nRank < 0 ) ? ( nRank + _listLanes.size( ) ) : nRank;
+    }
+
+    /**
+     * Attend la libération d'une place, dans la limite d'un délai
+     *
+     * @param lTimeout
+     *            le délai en millisecondes
+     * @throws InterruptedException
+     *             InterruptedException
+     */
+    public synchronized void awaitRelease( long lTimeout ) throws InterruptedException
+    {
+        wait( lTimeout );
+    }
+
+    /**
+     * Libère une place et l'attribue à la file suivante
+     *
+     * @param permit
+     *            la place
+     */
+    synchronized void release( FastLanePermit permit )
+    {
+        if ( _current.get( ) == permit )
+        {
+            _current.remove( );
+        }
+
+        if ( !permit.markReleased( ) )
+        {
+            return;
+        }
+
+        _mapLanes.get( permit.getCollectivity( ) )._nActive--;
+        _nActive--;
+        dispatch( );
+        notifyAll( );
+    }
+
+    /**
+     * Attribue les places libres aux files en attente, à tour de rôle. Appelé par un thread qui détient le moniteur.
+     */
+    private void dispatch( )
+    {
+        int nLanes = _listLanes.size( );
+        boolean bGranted = false;
+
+        while ( _nActive < _nMaxConcurrent )
+        {
+            Lane selected = null;
+
+            for ( int i = 0; ( i < nLanes ) && ( selected == null ); i++ )
+            {
+                Lane lane = _listLanes.get( ( _nNextLane + i ) % nLanes );
+
+                if ( !lane._queueWaiters.isEmpty( ) && ( lane._nActive < lane._nMaxConcurrent ) )
+                {
+                    selected = lane;
+                    _nNextLane = ( _nNextLane + i + 1 ) % nLanes;
+                }
+            }
+
+            if ( selected == null )
+            {
+                break;
+            }
+
+            grant( selected._queueWaiters.poll( ) );
+            bGranted = true;
+        }
+
+        if ( bGranted )
+        {
+            notifyAll( );
+        }
+    }
+
+    /**
+     * Attribue une place : un thread en attente est réveillé, une tâche est confiée aux threads des lots
+     *
+     * @param waiter
+     *            la transmission en attente
+     */
+    private void grant( Waiter waiter )
+    {
+        waiter._lane._nActive++;
+        _nActive++;
+        FastMetrics.getInstance( ).recordStage( waiter._lane._strCode, waiter._strTransactionType, FastStage.LANE, waiter._lQueued );
+
+        FastLanePermit permit = new FastLanePermit( this, waiter._lane._strCode );
+        waiter._permit = permit;
+
+        if ( waiter._task != null )
+        {
+            FutureTask<?> task = waiter._task;
+            FastBatchExecutor.getInstance( ).submit( ( ) -> {
+                _current.set( permit );
+
+                try
+                {
+                    task.run( );
+                }
+                finally
+                {
+                    permit.release( );
+                }
+
+                return null;
+            } );
+        }
+    }
+
+    /**
+     * Retourne la file d'une collectivité
+     *
+     * @param profile
+     *            le profil de la collectivité
+     * @return la file
+     */
+    private Lane getLane( FastCollectivityProfile profile )
+    {
+        Lane lane = _mapLanes.get( profile.getCode( ) );
+
+        if ( lane == null )
+        {
+            throw new IllegalArgumentException( "Actes FAST : unknown collectivity " + profile.getCode( ) );
+        }
+
+        return lane;
+    }
+
+    /**
+     * File d'une collectivité
+     */
+    private static final class Lane
+    {
+        private final String _strCode;
+        private final Queue<Waiter> _queueWaiters = new ArrayDeque<Waiter>( );
+        private int _nMaxConcurrent;
+        private int _nActive;
+
+        Lane( String strCode )
+        {
+            _strCode = strCode;
+        }
+    }
+
+    /**
+     * Transmission en attente d'une place : thread bloqué dans {@link FastLaneScheduler#acquire(FastCollectivityProfile, String)}, ou tâche d'un lot
+     */
+    private static final class Waiter
+    {
+        private final Lane _lane;
+        private final String _strTransactionType;
+        private final FutureTask<?> _task;
+        private final long _lQueued = System.nanoTime( );
+        private FastLanePermit _permit;
+
+        Waiter( Lane lane, String strTransactionType, FutureTask<?> task )
+        {
+            _lane = lane;
+            _strTransactionType = strTransactionType;
+            _task = task;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées sans verrou. Les durées (en microsecondes) sont rangées dans des classes logarithmiques, quatre par puissance de deux : un
+ * centile est estimé à 25 % près, pour une empreinte mémoire fixe.
+ */
+public final class FastHistogram
+{
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    private final AtomicLongArray _buckets = new AtomicLongArray( BUCKETS );
+    private final LongAdder _count = new LongAdder( );
+    private final LongAdder _sum = new LongAdder( );
+    private final AtomicLong _max = new AtomicLong( );
+
+    /**
+     * Enregistre une durée
+     *
+     * @param lMicros
+     *            la durée en microsecondes
+     */
+    public void record( long lMicros )
+    {
+        long lValue = Math.max( 0, lMicros );
+        _buckets.incrementAndGet( bucketOf( lValue ) );
+        _count.increment( );
+        _sum.add( lValue );
+
+        long lMax = _max.get( );
+
+        while ( ( lValue > lMax ) && !_max.compareAndSet( lMax, lValue ) )
+        {
+            lMax = _max.get( );
+        }
+    }
+
+    /**
+     * Retourne le nombre de durées enregistrées
+     *
+     * @return le nombre de durées
+     */
+    public long getCount( )
+    {
+        return _count.sum( );
+    }
+
+    /**
+     * Retourne la somme des durées enregistrées
+     *
+     * @return la somme en microsecondes
+     */
+    public long getSum( )
+    {
+        return _sum.sum( );
+    }
+
+    /**
+     * Retourne la plus longue durée enregistrée
+     *
+     * @return la durée en microsecondes
+     */
+    public long getMax( )
+    {
+        return _max.get( );
+    }
+
+    /**
+     * Estime un centile
+     *
+     * @param dPercentile
+     *            le centile, entre 0 et 100
+     * @return la borne supérieure de la classe contenant le centile, en microsecondes
+     */
+    public long getPercentile( double dPercentile )
+    {
+        long [ ] counts = new long [ BUCKETS];
+        long lTotal = 0;
+
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts [i] = _buckets.get( i );
+            lTotal += counts [i];
+        }
+
+        if ( lTotal == 0 )
+        {
+            return 0;
+        }
+
+        long lRank = (long) Math.ceil( lTotal * Math.min( 100, Math.max( 0, dPercentile ) ) / 100 );
+        long lSeen = 0;
+
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            lSeen += counts [i];
+
+            if ( ( lSeen >= lRank ) && ( counts [i] > 0 ) )
+            {
+                return Math.min( upperBoundOf( i ), getMax( ) );
+            }
+        }
+
+        return getMax( );
+    }
+
+    /**
+     * Remet l'histogramme à zéro
+     */
+    public void reset( )
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            _buckets.set( i, 0 );
+        }
+
+        _count.reset( );
+        _sum.reset( );
+        _max.set( 0 );
+    }
+
+    /**
+     * Retourne la classe d'une durée
+     *
+     * @param lValue
+     *            la durée
+     * @return l'indice de la classe
+     */
+    private static int bucketOf( long lValue )
+    {
+        if ( lValue < SUB_BUCKETS )
+        {
+            return (int) lValue;
+        }
+
+        int nExponent = 63 - Long.numberOfLeadingZeros( lValue );
+        int nSubBucket = (int) ( ( lValue >>> ( nExponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 ) );
+
+        return ( ( nExponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS ) + nSubBucket;
+    }
+
+    /**
+     * Retourne la borne supérieure (incluse) d'une classe
+     *
+     * @param nBucket
+     *            l'indice de la classe
+     * @return la borne supérieure
+     */
+    private static long upperBoundOf( int nBucket )
+    {
+        if ( nBucket < SUB_BUCKETS )
+        {
+            return nBucket;
+        }
+
+        int nExponent = ( nBucket / SUB_BUCKETS ) + SUB_BUCKET_BITS - 1;
+        long lSubBucket = nBucket % SUB_BUCKETS;
+
+        return ( ( SUB_BUCKETS + lSubBucket + 1 ) << ( nExponent - SUB_BUCKET_BITS ) ) - 1;
+    }
+}
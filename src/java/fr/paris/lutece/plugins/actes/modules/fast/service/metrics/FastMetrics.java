@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Métriques des transmissions : durée de chaque étape, durée et résultat des transmissions, volume écrit et nombre d'annexes. Les durées
+ * d'étapes, le volume et les annexes sont totalisés et répartis par collectivité et type de transaction. L'enregistrement est sans verrou ; les
+ * métriques sont exposées par JMX sans dépendance externe.
+ */
+public final class FastMetrics implements FastMetricsMXBean
+{
+    /** Type de transaction transmission */
+    public static final String TRANSACTION_TRANSMISSION = "transmission";
+
+    /** Type de transaction annulation */
+    public static final String TRANSACTION_ANNULATION = "annulation";
+
+    /** Nom JMX des métriques */
+    public static final String OBJECT_NAME = "fr.paris.lutece.plugins.actes.modules.fast:type=FastMetrics";
+    private static final String KEY_SEPARATOR = ".";
+    private static final FastMetrics _singleton = new FastMetrics( );
+    private final Map<FastStage, FastHistogram> _mapStages = new EnumMap<FastStage, FastHistogram>( FastStage.class );
+    private final ConcurrentMap<String, FastHistogram> _mapTransactionStages = new ConcurrentHashMap<String, FastHistogram>( );
+    private final ConcurrentMap<String, FastHistogram> _mapTransmissions = new ConcurrentHashMap<String, FastHistogram>( );
+    private final ConcurrentMap<String, LongAdder> _mapSuccess = new ConcurrentHashMap<String, LongAdder>( );
+    private final ConcurrentMap<String, LongAdder> _mapFailure = new ConcurrentHashMap<String, LongAdder>( );
+    private final ConcurrentMap<String, LongAdder> _mapBytes = new ConcurrentHashMap<String, LongAdder>( );
+    private final ConcurrentMap<String, LongAdder> _mapAnnexes = new ConcurrentHashMap<String, LongAdder>( );
+    private final LongAdder _bytesWritten = new LongAdder( );
+    private final LongAdder _annexCount = new LongAdder( );
+    private final LongAdder _retryCount = new LongAdder( );
+    private final LongAdder _deadLetterCount = new LongAdder( );
+    private final LongAdder _bytesDeduplicated = new LongAdder( );
+    private final LongAdder _spaceRejectedCount = new LongAdder( );
+
+    /**
+     * Constructeur privé
+     */
+    private FastMetrics( )
+    {
+        for ( FastStage stage : FastStage.values( ) )
+        {
+            _mapStages.put( stage, new FastHistogram( ) );
+        }
+    }
+
+    /**
+     * Retourne l'instance unique
+     *
+     * @return l'instance unique
+     */
+    public static FastMetrics getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Enregistre les métriques auprès du serveur JMX de la plate-forme, en remplaçant un éventuel enregistrement précédent
+     */
+    public void register( )
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName name = new ObjectName( OBJECT_NAME );
+
+            if ( server.isRegistered( name ) )
+            {
+                server.unregisterMBean( name );
+            }
+
+            server.registerMBean( this, name );
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Actes FAST : unable to register metrics MBean : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Enregistre la durée d'une étape
+     *
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction
+     * @param stage
+     *            l'étape
+     * @param lStartNanos
+     *            le début de l'étape, lu par {@link System#nanoTime()}
+     */
+    public void recordStage( String strCollectivity, String strTransactionType, FastStage stage, long lStartNanos )
+    {
+        long lElapsed = elapsedMicros( lStartNanos );
+        _mapStages.get( stage ).record( lElapsed );
+        getOrCreate( _mapTransactionStages, getKey( strCollectivity, strTransactionType ) + KEY_SEPARATOR + stage.name( ) ).record( lElapsed );
+    }
+
+    /**
+     * Enregistre le résultat et la durée d'une transmission
+     *
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction
+     * @param bSuccess
+     *            true si la transmission a réussi
+     * @param lStartNanos
+     *            le début de la transmission, lu par {@link System#nanoTime()}
+     */
+    public void recordTransmission( String strCollectivity, String strTransactionType, boolean bSuccess, long lStartNanos )
+    {
+        String strKey = getKey( strCollectivity, strTransactionType );
+        getOrCreate( _mapTransmissions, strKey ).record( elapsedMicros( lStartNanos ) );
+        getCounter( bSuccess ? _mapSuccess : _mapFailure, strKey ).increment( );
+    }
+
+    /**
+     * Enregistre des octets écrits dans un paquet
+     *
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction
+     * @param lBytes
+     *            le nombre d'octets
+     */
+    public void recordBytes( String strCollectivity, String strTransactionType, long lBytes )
+    {
+        _bytesWritten.add( lBytes );
+        getCounter( _mapBytes, getKey( strCollectivity, strTransactionType ) ).add( lBytes );
+    }
+
+    /**
+     * Enregistre des annexes transmises
+     *
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction
+     * @param nAnnexes
+     *            le nombre d'annexes
+     */
+    public void recordAnnexes( String strCollectivity, String strTransactionType, int nAnnexes )
+    {
+        _annexCount.add( nAnnexes );
+        getCounter( _mapAnnexes, getKey( strCollectivity, strTransactionType ) ).add( nAnnexes );
+    }
+
+    /**
+     * Enregistre une nouvelle tentative d'étape après une erreur passagère
+     */
+    public void recordRetry( )
+    {
+        _retryCount.increment( );
+    }
+
+    /**
+     * Enregistre un paquet conservé dans le répertoire des paquets en échec
+     */
+    public void recordDeadLetter( )
+    {
+        _deadLetterCount.increment( );
+    }
+
+    /**
+     * Enregistre une annexe placée dans un paquet sans être écrite, son contenu étant déjà dans le magasin
+     *
+     * @param lBytes
+     *            la taille de l'annexe
+     */
+    public void recordDeduplicated( long lBytes )
+    {
+        _bytesDeduplicated.add( lBytes );
+    }
+
+    /**
+     * Enregistre un paquet rejeté faute d'espace disque
+     */
+    public void recordSpaceRejected( )
+    {
+        _spaceRejectedCount.increment( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, FastStageStatistics> getStageStatistics( )
+    {
+        Map<String, FastStageStatistics> mapStatistics = new TreeMap<String, FastStageStatistics>( );
+
+        for ( Map.Entry<FastStage, FastHistogram> entry : _mapStages.entrySet( ) )
+        {
+            mapStatistics.put( entry.getKey( ).name( ), FastStageStatistics.of( entry.getValue( ) ) );
+        }
+
+        return mapStatistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, FastStageStatistics> getTransactionStageStatistics( )
+    {
+        return statistics( _mapTransactionStages );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, FastStageStatistics> getTransmissionStatistics( )
+    {
+        return statistics( _mapTransmissions );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getSuccessCounts( )
+    {
+        return snapshot( _mapSuccess );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getFailureCounts( )
+    {
+        return snapshot( _mapFailure );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesWritten( )
+    {
+        return _bytesWritten.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getTransactionBytesWritten( )
+    {
+        return snapshot( _mapBytes );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAnnexCount( )
+    {
+        return _annexCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getTransactionAnnexCounts( )
+    {
+        return snapshot( _mapAnnexes );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRetryCount( )
+    {
+        return _retryCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDeadLetterCount( )
+    {
+        return _deadLetterCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesDeduplicated( )
+    {
+        return _bytesDeduplicated.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSpaceRejectedCount( )
+    {
+        return _spaceRejectedCount.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset( )
+    {
+        for ( FastHistogram histogram : _mapStages.values( ) )
+        {
+            histogram.reset( );
+        }
+
+        _mapTransactionStages.clear( );
+        _mapTransmissions.clear( );
+        _mapSuccess.clear( );
+        _mapFailure.clear( );
+        _mapBytes.clear( );
+        _mapAnnexes.clear( );
+        _bytesWritten.reset( );
+        _annexCount.reset( );
+        _retryCount.reset( );
+        _deadLetterCount.reset( );
+        _bytesDeduplicated.reset( );
+        _spaceRejectedCount.reset( );
+    }
+
+    /**
+     * Retourne la clé d'une collectivité et d'un type de transaction
+     *
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param strTransactionType
+     *            le type de transaction
+     * @return la clé (ex : ville.transmission)
+     */
+    private static String getKey( String strCollectivity, String strTransactionType )
+    {
+        return strCollectivity + KEY_SEPARATOR + strTransactionType;
+    }
+
+    /**
+     * Retourne le compteur d'une clé, créé au besoin
+     *
+     * @param map
+     *            les compteurs
+     * @param strKey
+     *            la clé
+     * @return le compteur
+     */
+    private static LongAdder getCounter( ConcurrentMap<String, LongAdder> map, String strKey )
+    {
+        LongAdder counter = map.get( strKey );
+
+        if ( counter == null )
+        {
+            map.putIfAbsent( strKey, new LongAdder( ) );
+            counter = map.get( strKey );
+        }
+
+        return counter;
+    }
+
+    /**
+     * Retourne l'histogramme d'une clé, créé au besoin
+     *
+     * @param map
+     *            les histogrammes
+     * @param strKey
+     *            la clé
+     * @return l'histogramme
+     */
+    private static FastHistogram getOrCreate( ConcurrentMap<String, FastHistogram> map, String strKey )
+    {
+        FastHistogram histogram = map.get( strKey );
+
+        if ( histogram == null )
+        {
+            map.putIfAbsent( strKey, new FastHistogram( ) );
+            histogram = map.get( strKey );
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Statistiques des histogrammes
+     *
+     * @param mapHistograms
+     *            les histogrammes
+     * @return les statistiques triées par clé
+     */
+    private static Map<String, FastStageStatistics> statistics( Map<String, FastHistogram> mapHistograms )
+    {
+        Map<String, FastStageStatistics> mapStatistics = new TreeMap<String, FastStageStatistics>( );
+
+        for ( Map.Entry<String, FastHistogram> entry : mapHistograms.entrySet( ) )
+        {
+            mapStatistics.put( entry.getKey( ), FastStageStatistics.of( entry.getValue( ) ) );
+        }
+
+        return mapStatistics;
+    }
+
+    /**
+     * Copie des compteurs
+     *
+     * @param mapCounters
+     *            les compteurs
+     * @return la copie triée par clé
+     */
+    private static Map<String, Long> snapshot( Map<String, LongAdder> mapCounters )
+    {
+        Map<String, Long> mapSnapshot = new TreeMap<String, Long>( );
+
+        for ( Map.Entry<String, LongAdder> entry : mapCounters.entrySet( ) )
+        {
+            mapSnapshot.put( entry.getKey( ), entry.getValue( ).sum( ) );
+        }
+
+        return mapSnapshot;
+    }
+
+    /**
+     * Retourne la durée écoulée depuis un instant
+     *
+     * @param lStartNanos
+     *            l'instant, lu par {@link System#nanoTime()}
+     * @return la durée en microsecondes
+     */
+    private static long elapsedMicros( long lStartNanos )
+    {
+        return TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - lStartNanos );
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.metrics;
+
+import java.util.Map;
+
+/**
+ * Interface JMX des métriques du module
+ */
+public interface FastMetricsMXBean
+{
+    /**
+     * Retourne les statistiques de durée de chaque étape, par nom d'étape
+     *
+     * @return les statistiques par étape
+     */
+    Map<String, FastStageStatistics> getStageStatistics( );
+
+    /**
+     * Retourne les statistiques de durée de chaque étape, par collectivité, type de transaction et nom d'étape (ex : ville.transmission.XML)
+     *
+     * @return les statistiques par collectivité, type de transaction et étape
+     */
+    Map<String, FastStageStatistics> getTransactionStageStatistics( );
+
+    /**
+     * Retourne les statistiques de durée des transmissions complètes, par collectivité et type de transaction (ex : ville.transmission)
+     *
+     * @return les statistiques par collectivité et type de transaction
+     */
+    Map<String, FastStageStatistics> getTransmissionStatistics( );
+
+    /**
+     * Retourne le nombre de transmissions réussies, par collectivité et type de transaction
+     *
+     * @return les compteurs de réussite
+     */
+    Map<String, Long> getSuccessCounts( );
+
+    /**
+     * Retourne le nombre de transmissions en échec, par collectivité et type de transaction
+     *
+     * @return les compteurs d'échec
+     */
+    Map<String, Long> getFailureCounts( );
+
+    /**
+     * Retourne le nombre d'octets écrits dans les paquets
+     *
+     * @return le nombre d'octets
+     */
+    long getBytesWritten( );
+
+    /**
+     * Retourne le nombre d'octets écrits dans les paquets, par collectivité et type de transaction
+     *
+     * @return le nombre d'octets par collectivité et type de transaction
+     */
+    Map<String, Long> getTransactionBytesWritten( );
+
+    /**
+     * Retourne le nombre d'annexes transmises
+     *
+     * @return le nombre d'annexes
+     */
+    long getAnnexCount( );
+
+    /**
+     * Retourne le nombre d'annexes transmises, par collectivité et type de transaction
+     *
+     * @return le nombre d'annexes par collectivité et type de transaction
+     */
+    Map<String, Long> getTransactionAnnexCounts( );
+
+    /**
+     * Retourne le nombre de nouvelles tentatives d'étapes après une erreur passagère
+     *
+     * @return le nombre de nouvelles tentatives
+     */
+    long getRetryCount( );
+
+    /**
+     * Retourne le nombre de paquets conservés dans le répertoire des paquets en échec
+     *
+     * @return le nombre de paquets en échec
+     */
+    long getDeadLetterCount( );
+
+    /**
+     * Retourne le nombre d'octets d'annexes placées dans les paquets sans être écrites, leur contenu étant déjà dans le magasin
+     *
+     * @return le nombre d'octets
+     */
+    long getBytesDeduplicated( );
+
+    /**
+     * Retourne le nombre de paquets rejetés avant leur préparation faute d'espace disque
+     *
+     * @return le nombre de paquets rejetés
+     */
+    long getSpaceRejectedCount( );
+
+    /**
+     * Remet toutes les métriques à zéro
+     */
+    void reset( );
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistiques d'une étape à un instant donné. Les durées sont exprimées en microsecondes.
+ */
+public class FastStageStatistics
+{
+    private final long _lCount;
+    private final long _lMean;
+    private final long _lP50;
+    private final long _lP95;
+    private final long _lP99;
+    private final long _lMax;
+
+    /**
+     * Constructeur
+     *
+     * @param lCount
+     *            le nombre de mesures
+     * @param lMean
+     *            la durée moyenne
+     * @param lP50
+     *            la durée médiane
+     * @param lP95
+     *            le 95e centile
+     * @param lP99
+     *            le 99e centile
+     * @param lMax
+     *            la durée maximale
+     */
+    @ConstructorProperties( {
+            "count", "mean", "p50", "p95", "p99", "max"
+    } )
+    public FastStageStatistics( long lCount, long lMean, long lP50, long lP95, long lP99, long lMax )
+    {
+        _lCount = lCount;
+        _lMean = lMean;
+        _lP50 = lP50;
+        _lP95 = lP95;
+        _lP99 = lP99;
+        _lMax = lMax;
+    }
+
+    /**
+     * Construit les statistiques d'un histogramme
+     *
+     * @param histogram
+     *            l'histogramme
+     * @return les statistiques
+     */
+    static FastStageStatistics of( FastHistogram histogram )
+    {
+        long lCount = histogram.getCount( );
+
+        return new FastStageStatistics( lCount, ( lCount == 0 ) ? 0 : ( histogram.getSum( ) / lCount ), histogram.getPercentile( 50 ),
+                histogram.getPercentile( 95 ), histogram.getPercentile( 99 ), histogram.getMax( ) );
+    }
+
+    /**
+     * Retourne le nombre de mesures
+     *
+     * @return le nombre de mesures
+     */
+    public long getCount( )
+    {
+        return _lCount;
+    }
+
+    /**
+     * Retourne la durée moyenne
+     *
+     * @return la durée moyenne
+     */
+    public long getMean( )
+    {
+        return _lMean;
+    }
+
+    /**
+     * Retourne la durée médiane
+     *
+     * @return la durée médiane
+     */
+    public long getP50( )
+    {
+        return _lP50;
+    }
+
+    /**
+     * Retourne le 95e centile
+     *
+     * @return le 95e centile
+     */
+    public long getP95( )
+    {
+        return _lP95;
+    }
+
+    /**
+     * Retourne le 99e centile
+     *
+     * @return le 99e centile
+     */
+    public long getP99( )
+    {
+        return _lP99;
+    }
+
+    /**
+     * Retourne la durée maximale
+     *
+     * @return la durée maximale
+     */
+    public long getMax( )
+    {
+        return _lMax;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString( )
+    {
+        return "count=" + _lCount + " mean=" + _lMean + "us p50=" + _lP50 + "us p95=" + _lP95 + "us p99=" + _lP99 + "us max=" + _lMax + "us";
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.queue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastSendResult;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.lane.FastLaneScheduler;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * File d'envoi des transmissions asynchrones. Les transmissions sont conservées dans une file bornée en mémoire et traitées par un petit nombre de
+ * threads dédiés, ce qui libère immédiatement le thread appelant. Lorsque la file est pleine, la politique configurée s'applique : débordement sur
+ * disque, attente, rejet ou exécution par l'appelant. Une transmission dont les fichiers ne peuvent être lus qu'une fois est toujours écrite sur
+ * disque, afin qu'elle ne dépende plus du flux de l'appelant.
+ * <p>
+ * Chaque transmission reçoit un numéro d'arrivée : une transmission en mémoire n'est prise qu'avant les transmissions sur disque arrivées après
+ * elle, de sorte qu'une transmission débordée n'est jamais dépassée par une transmission arrivée plus tard. Les transmissions laissées sur disque
+ * par une exécution précédente passent en premier.
+ * <p>
+ * Les threads d'envoi ne prennent pas les transmissions dans l'ordre d'arrivée : ils retiennent celle dont la collectivité est servie en premier
+ * par {@link FastLaneScheduler}, et ignorent celles dont la file de collectivité est pleine. Une rafale d'une collectivité n'occupe ainsi pas tous
+ * les threads d'envoi.
+ */
+public final class FastOutboundQueue
+{
+    private static final String THREAD_NAME_PREFIX = "actes-fast-writer-";
+    private static final long POLL_INTERVAL = 1000L;
+    private static final long LANE_WAIT = 100L;
+    private static final long SEQUENCE_PREVIOUS_RUN = -1L;
+    private static volatile FastOutboundQueue _singleton;
+    private final BlockingQueue<Task> _queue;
+    private final FastSpillStore _spillStore;
+    private final Map<Path, Spilled> _mapSpilled = new ConcurrentHashMap<Path, Spilled>( );
+    private final AtomicLong _lSequence = new AtomicLong( );
+    private final FastRejectionPolicy _policy;
+    private final long _lBlockTimeout;
+    private final FastService _fastService = new FastService( );
+
+    /**
+     * Constructeur : démarre les threads d'envoi
+     *
+     * @param configuration
+     *            la configuration
+     */
+    private FastOutboundQueue( FastConfiguration configuration )
+    {
+        _queue = new ArrayBlockingQueue<Task>( configuration.getAsyncQueueCapacity( ) );
+        _policy = configuration.getAsyncRejectionPolicy( );
+        _lBlockTimeout = configuration.getAsyncBlockTimeout( );
+        _spillStore = openSpillStore( configuration.getAsyncSpillDirectory( ) );
+
+        for ( int i = 1; i <= configuration.getAsyncWriters( ); i++ )
+        {
+            Thread thread = new Thread( this::drain, THREAD_NAME_PREFIX + i );
+            thread.setDaemon( true );
+            thread.start( );
+        }
+    }
+
+    /**
+     * Retourne l'instance unique, construite à partir de la configuration courante au premier appel
+     *
+     * @return l'instance unique
+     */
+    public static FastOutboundQueue getInstance( )
+    {
+        FastOutboundQueue queue = _singleton;
+
+        if ( queue == null )
+        {
+            synchronized( FastOutboundQueue.class )
+            {
+                queue = _singleton;
+
+                if ( queue == null )
+                {
+                    queue = new FastOutboundQueue( FastConfigurationService.getInstance( ).getConfiguration( ) );
+                    _singleton = queue;
+                }
+            }
+        }
+
+        return queue;
+    }
+
+    /**
+     * Place une transmission dans la file
+     *
+     * @param request
+     *            la transmission
+     * @return le résultat à venir ; il est en erreur ({@link RejectedExecutionException}) si la transmission est rejetée
+     */
+    public CompletableFuture<FastSendResult> submit( FastOutboundRequest request )
+    {
+        CompletableFuture<FastSendResult> future = new CompletableFuture<FastSendResult>( );
+        Task task = new Task( request, future, null, _lSequence.incrementAndGet( ) );
+
+        if ( !request.isRepeatable( ) )
+        {
+            // Les fichiers en flux sont recopiés tout de suite : l'appelant peut fermer ses flux dès le retour
+            spill( task );
+
+            return future;
+        }
+
+        if ( _queue.offer( task ) )
+        {
+            return future;
+        }
+
+        switch( _policy )
+        {
+            case SPILL:
+                spill( task );
+                break;
+            case BLOCK:
+                block( task );
+                break;
+            case CALLER_RUNS:
+                future.complete( request.execute( _fastService ) );
+                break;
+            default:
+                reject( task );
+        }
+
+        return future;
+    }
+
+    /**
+     * Retourne le nombre de transmissions en attente en mémoire
+     *
+     * @return le nombre de transmissions
+     */
+    public int getQueueSize( )
+    {
+        return _queue.size( );
+    }
+
+    /**
+     * Retourne le nombre de transmissions en attente sur disque
+     *
+     * @return le nombre de transmissions
+     */
+    public int getSpillSize( )
+    {
+        return ( _spillStore != null ) ? _spillStore.size( ) : 0;
+    }
+
+    /**
+     * Ecrit une transmission sur disque, ou la rejette si c'est impossible
+     *
+     * @param task
+     *            la transmission
+     */
+    private void spill( Task task )
+    {
+        if ( _spillStore == null )
+        {
+            reject( task );
+
+            return;
+        }
+
+        try
+        {
+            // Le résultat et le numéro d'arrivée sont associés avant que l'entrée ne devienne visible des threads d'envoi
+            synchronized( _mapSpilled )
+            {
+                _mapSpilled.put( _spillStore.write( task._request ), new Spilled( task._future, task._lSequence ) );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to spill transmission " + task._request.getNumeroDeliberation( ) + " : " + e.getMessage( ), e );
+            reject( task );
+        }
+    }
+
+    /**
+     * Attend une place dans la file, ou rejette la transmission à l'expiration du délai
+     *
+     * @param task
+     *            la transmission
+     */
+    private void block( Task task )
+    {
+        try
+        {
+            if ( _queue.offer( task, _lBlockTimeout, TimeUnit.MILLISECONDS ) )
+            {
+                return;
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+
+        reject( task );
+    }
+
+    /**
+     * Rejette une transmission
+     *
+     * @param task
+     *            la transmission
+     */
+    private static void reject( Task task )
+    {
+        task._future.completeExceptionally( new RejectedExecutionException( "Actes FAST : outbound queue is full, transmission "
+                + task._request.getNumeroDeliberation( ) + " rejected" ) );
+    }
+
+    /**
+     * Boucle des threads d'envoi : les transmissions en mémoire arrivées avant la plus ancienne transmission sur disque sont prises en premier,
+     * puis celle-ci
+     */
+    private void drain( )
+    {
+        while ( !Thread.currentThread( ).isInterrupted( ) )
+        {
+            try
+            {
+                long lSpilledSequence = getSpilledSequence( );
+                Task task = pollFair( lSpilledSequence );
+
+                if ( ( task == null ) && hasTaskBefore( lSpilledSequence ) )
+                {
+                    // Toutes les collectivités en attente ont leur file pleine
+                    FastLaneScheduler.getInstance( ).awaitRelease( LANE_WAIT );
+
+                    continue;
+                }
+
+                if ( task == null )
+                {
+                    task = pollSpilled( );
+                }
+
+                if ( task == null )
+                {
+                    task = _queue.poll( POLL_INTERVAL, TimeUnit.MILLISECONDS );
+                }
+
+                if ( task != null )
+                {
+                    run( task );
+                }
+            }
+            catch( InterruptedException e )
+            {
+                return;
+            }
+            catch( RuntimeException e )
+            {
+                AppLogService.error( "Actes FAST : error in outbound queue : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Retourne le numéro d'arrivée de la plus ancienne transmission sur disque
+     *
+     * @return le numéro, ou Long.MAX_VALUE s'il n'y a aucune transmission sur disque
+     */
+    private long getSpilledSequence( )
+    {
+        if ( _spillStore == null )
+        {
+            return Long.MAX_VALUE;
+        }
+
+        synchronized( _mapSpilled )
+        {
+            Path entry = _spillStore.peek( );
+
+            if ( entry == null )
+            {
+                return Long.MAX_VALUE;
+            }
+
+            Spilled spilled = _mapSpilled.get( entry );
+
+            return ( spilled != null ) ? spilled._lSequence : SEQUENCE_PREVIOUS_RUN;
+        }
+    }
+
+    /**
+     * Indique si la file en mémoire contient une transmission arrivée avant un numéro donné
+     *
+     * @param lSequence
+     *            le numéro d'arrivée
+     * @return true si une transmission en mémoire est plus ancienne
+     */
+    private boolean hasTaskBefore( long lSequence )
+    {
+        for ( Task task : _queue )
+        {
+            if ( task._lSequence < lSequence )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Retire de la file en mémoire la plus ancienne transmission de la collectivité servie en premier, en ignorant les collectivités dont la file est
+     * pleine et les transmissions arrivées après la plus ancienne transmission sur disque
+     *
+     * @param lSpilledSequence
+     *            le numéro d'arrivée de la plus ancienne transmission sur disque
+     * @return la transmission, ou null si aucune transmission ne peut être prise
+     */
+    private Task pollFair( long lSpilledSequence )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+        FastLaneScheduler scheduler = FastLaneScheduler.getInstance( );
+
+        while ( !_queue.isEmpty( ) )
+        {
+            Map<String, Integer> mapRanks = new HashMap<String, Integer>( );
+            Task selected = null;
+            int nSelectedRank = Integer.MAX_VALUE;
+
+            for ( Task task : _queue )
+            {
+                if ( task._lSequence > lSpilledSequence )
+                {
+                    continue;
+                }
+
+                int nRank = getRank( configuration, scheduler, task._request, mapRanks );
+
+                if ( ( nRank >= 0 ) && ( nRank < nSelectedRank ) )
+                {
+                    selected = task;
+                    nSelectedRank = nRank;
+
+                    if ( nRank == 0 )
+                    {
+                        break;
+                    }
+                }
+            }
+
+            if ( selected == null )
+            {
+                return null;
+            }
+
+            // Un autre thread d'envoi a pu retirer la transmission entre temps
+            if ( _queue.remove( selected ) )
+            {
+                return selected;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Retourne le rang de la collectivité d'une transmission dans le tour en cours des files de collectivité
+     *
+     * @param configuration
+     *            la configuration courante
+     * @param scheduler
+     *            l'ordonnanceur des files
+     * @param request
+     *            la transmission
+     * @param mapRanks
+     *            les rangs déjà déterminés, par code de collectivité
+     * @return le rang, ou -1 si la file de la collectivité est pleine
+     */
+    private static int getRank( FastConfiguration configuration, FastLaneScheduler scheduler, FastOutboundRequest request, Map<String, Integer> mapRanks )
+    {
+        String strCode;
+
+        try
+        {
+            strCode = configuration.getProfile( request.getCollectivity( ), request.isMunicipal( ) ).getCode( );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // Collectivité inconnue : la transmission est prise sans attendre et échouera à l'envoi
+            return 0;
+        }
+
+        Integer nRank = mapRanks.get( strCode );
+
+        if ( nRank == null )
+        {
+            nRank = scheduler.getRank( strCode );
+            mapRanks.put( strCode, nRank );
+        }
+
+        return nRank;
+    }
+
+    /**
+     * Reprend la plus ancienne transmission sur disque
+     *
+     * @return la transmission, ou null
+     */
+    private Task pollSpilled( )
+    {
+        Path entry = ( _spillStore != null ) ? _spillStore.poll( ) : null;
+
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        Spilled spilled;
+
+        synchronized( _mapSpilled )
+        {
+            spilled = _mapSpilled.remove( entry );
+        }
+
+        CompletableFuture<FastSendResult> future = ( spilled != null ) ? spilled._future : null;
+
+        try
+        {
+            return new Task( _spillStore.read( entry ), future, entry, ( spilled != null ) ? spilled._lSequence : SEQUENCE_PREVIOUS_RUN );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            // L'entrée reste sur disque et sera reprise au prochain démarrage
+            AppLogService.error( "Actes FAST : unable to read spilled transmission " + entry + " : " + e.getMessage( ), e );
+
+            if ( future != null )
+            {
+                future.completeExceptionally( e );
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Effectue une transmission et publie son résultat. Une transmission laissée sur disque par une exécution précédente n'a pas d'appelant pour
+     * recevoir son résultat : en cas d'échec, son entrée est conservée et sera reprise au prochain démarrage.
+     *
+     * @param task
+     *            la transmission
+     */
+    private void run( Task task )
+    {
+        FastSendResult result = task._request.execute( _fastService );
+
+        if ( ( task._future == null ) && !result.isSuccess( ) )
+        {
+            AppLogService.error( "Actes FAST : spilled transmission " + result.getNumeroDeliberation( ) + " failed, kept in " + task._spillEntry
+                    + " until next startup : " + result.getErrorMessage( ) );
+
+            return;
+        }
+
+        if ( task._spillEntry != null )
+        {
+            _spillStore.delete( task._spillEntry );
+        }
+
+        if ( task._future != null )
+        {
+            task._future.complete( result );
+        }
+    }
+
+    /**
+     * Ouvre le répertoire de débordement
+     *
+     * @param directory
+     *            le répertoire
+     * @return le débordement, ou null s'il est inutilisable
+     */
+    private static FastSpillStore openSpillStore( Path directory )
+    {
+        try
+        {
+            FastSpillStore spillStore = new FastSpillStore( directory );
+
+            if ( spillStore.size( ) > 0 )
+            {
+                AppLogService.info( "Actes FAST : " + spillStore.size( ) + " spilled transmission(s) found in " + directory );
+            }
+
+            return spillStore;
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : spill directory " + directory + " unavailable : " + e.getMessage( ), e );
+
+            return null;
+        }
+    }
+
+    /**
+     * Transmission en attente
+     */
+    private static final class Task
+    {
+        private final FastOutboundRequest _request;
+        private final CompletableFuture<FastSendResult> _future;
+        private final Path _spillEntry;
+        private final long _lSequence;
+
+        Task( FastOutboundRequest request, CompletableFuture<FastSendResult> future, Path spillEntry, long lSequence )
+        {
+            _request = request;
+            _future = future;
+            _spillEntry = spillEntry;
+            _lSequence = lSequence;
+        }
+    }
+
+    /**
+     * Transmission écrite sur disque : seuls son résultat à venir et son numéro d'arrivée restent en mémoire
+     */
+    private static final class Spilled
+    {
+        private final CompletableFuture<FastSendResult> _future;
+        private final long _lSequence;
+
+        Spilled( CompletableFuture<FastSendResult> future, long lSequence )
+        {
+            _future = future;
+            _lSequence = lSequence;
+        }
+    }
+}
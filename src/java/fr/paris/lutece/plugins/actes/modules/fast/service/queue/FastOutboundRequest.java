@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.queue;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastManifest;
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastSendResult;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Transmission en attente dans la file d'envoi : transmission d'un acte ou demande d'annulation
+ */
+public final class FastOutboundRequest
+{
+    private static final String ERROR_WORKSPACE = "Unable to create the temporary directory";
+    private static final String ERROR_IN_PROGRESS = "A deposit of the same acte is already in progress";
+    private final ActeSubmission _submission;
+    private final String _strNumeroDeliberation;
+    private final String _strCollectivity;
+    private final boolean _bMunicipal;
+    private final Timestamp _tsDateDecision;
+
+    /**
+     * Constructeur
+     *
+     * @param submission
+     *            la transmission d'acte, ou null pour une annulation
+     * @param strNumeroDeliberation
+     *            le numéro de la délibération
+     * @param strCollectivity
+     *            le code de la collectivité émettrice, ou null pour la déduire de la formation conseil
+     * @param bMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     */
+    private FastOutboundRequest( ActeSubmission submission, String strNumeroDeliberation, String strCollectivity, boolean bMunicipal,
+            Timestamp tsDateDecision )
+    {
+        _submission = submission;
+        _strNumeroDeliberation = strNumeroDeliberation;
+        _strCollectivity = strCollectivity;
+        _bMunicipal = bMunicipal;
+        _tsDateDecision = tsDateDecision;
+    }
+
+    /**
+     * Crée la demande de transmission d'un acte
+     *
+     * @param submission
+     *            la transmission
+     * @return la demande
+     */
+    public static FastOutboundRequest acte( ActeSubmission submission )
+    {
+        return new FastOutboundRequest( submission, submission.getNumeroDeliberation( ), submission.getCollectivity( ), submission.isMunicipal( ),
+                submission.getDateDecision( ) );
+    }
+
+    /**
+     * Crée une demande d'annulation
+     *
+     * @param strNumeroDeliberation
+     *            le numéro de la délibération
+     * @param bMunicipal
+     *            true si la formation conseil est MUNICIPAL
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return la demande
+     */
+    public static FastOutboundRequest annulation( String strNumeroDeliberation, boolean bMunicipal, Timestamp tsDateDecision )
+    {
+        return new FastOutboundRequest( null, strNumeroDeliberation, null, bMunicipal, tsDateDecision );
+    }
+
+    /**
+     * Crée une demande d'annulation pour une collectivité configurée
+     *
+     * @param strNumeroDeliberation
+     *            le numéro de la délibération
+     * @param strCollectivity
+     *            le code de la collectivité émettrice
+     * @param tsDateDecision
+     *            la date de vote/decision de l'acte
+     * @return la demande
+     */
+    public static FastOutboundRequest annulation( String strNumeroDeliberation, String strCollectivity, Timestamp tsDateDecision )
+    {
+        return new FastOutboundRequest( null, strNumeroDeliberation, strCollectivity, false, tsDateDecision );
+    }
+
+    /**
+     * Retourne true s'il s'agit d'une demande d'annulation
+     *
+     * @return true pour une annulation
+     */
+    public boolean isAnnulation( )
+    {
+        return _submission == null;
+    }
+
+    /**
+     * Indique si les fichiers de la transmission peuvent être relus, c'est-à-dire si elle peut attendre en mémoire sans être recopiée sur disque
+     *
+     * @return true si tous les fichiers peuvent être relus, ou s'il s'agit d'une annulation
+     */
+    public boolean isRepeatable( )
+    {
+        if ( isAnnulation( ) )
+        {
+            return true;
+        }
+
+        if ( !_submission.getDeliberationFinale( ).isRepeatable( ) )
+        {
+            return false;
+        }
+
+        for ( PayloadSource annexe : _submission.getAnnexes( ) )
+        {
+            if ( !annexe.isRepeatable( ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Retourne la transmission d'acte
+     *
+     * @return la transmission, ou null pour une annulation
+     */
+    public ActeSubmission getSubmission( )
+    {
+        return _submission;
+    }
+
+    /**
+     * Retourne le numéro de la délibération
+     *
+     * @return le numéro de la délibération
+     */
+    public String getNumeroDeliberation( )
+    {
+        return _strNumeroDeliberation;
+    }
+
+    /**
+     * Retourne le code de la collectivité émettrice
+     *
+     * @return le code, ou null si la collectivité est déduite de la formation conseil
+     */
+    public String getCollectivity( )
+    {
+        return _strCollectivity;
+    }
+
+    /**
+     * Retourne true si la formation conseil est MUNICIPAL
+     *
+     * @return true si la formation conseil est MUNICIPAL
+     */
+    public boolean isMunicipal( )
+    {
+        return _bMunicipal;
+    }
+
+    /**
+     * Retourne la date de vote/decision de l'acte
+     *
+     * @return la date de decision
+     */
+    public Timestamp getDateDecision( )
+    {
+        return _tsDateDecision;
+    }
+
+    /**
+     * Effectue la transmission et en retourne le résultat au lieu de propager les erreurs. Le résultat porte le manifeste du paquet déposé, ou
+     * celui qui indique le paquet déjà déposé ou le dépôt en cours du même acte.
+     *
+     * @param fastService
+     *            le service de transmission
+     * @return le résultat de la transmission
+     */
+    public FastSendResult execute( FastService fastService )
+    {
+        long lStart = System.currentTimeMillis( );
+        FastManifest manifest = new FastManifest( );
+
+        try
+        {
+            boolean bSuccess;
+
+            if ( !isAnnulation( ) )
+            {
+                bSuccess = fastService.sendActe( _submission, manifest );
+            }
+            else if ( _strCollectivity != null )
+            {
+                bSuccess = fastService.sendAnnulationActe( _strNumeroDeliberation, _strCollectivity, _tsDateDecision, manifest );
+            }
+            else
+            {
+                bSuccess = fastService.sendAnnulationActe( _strNumeroDeliberation, _bMunicipal, _tsDateDecision, manifest );
+            }
+
+            boolean bReported = ( manifest.getPackageName( ) != null ) || ( manifest.getPreviousPackageName( ) != null ) || manifest.isInProgress( );
+            String strErrorMessage = manifest.isInProgress( ) ? ERROR_IN_PROGRESS : ERROR_WORKSPACE;
+
+            return new FastSendResult( _strNumeroDeliberation, bSuccess, bSuccess ? null : strErrorMessage, null, System.currentTimeMillis( ) - lStart,
+                    bReported ? manifest : null );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "Error sending acte " + _strNumeroDeliberation + " : " + e.getMessage( ), e );
+
+            return new FastSendResult( _strNumeroDeliberation, false, e.getMessage( ), e, System.currentTimeMillis( ) - lStart );
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.queue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+
+/**
+ * Débordement sur disque de la file d'envoi. Chaque transmission est écrite dans son propre répertoire (description et fichiers), publié par un
+ * renommage atomique après l'écriture sur disque de ses fichiers : un répertoire visible est toujours complet, y compris après une coupure. Les
+ * répertoires sont nommés dans l'ordre d'arrivée et relus dans cet ordre, y compris après un redémarrage.
+ */
+final class FastSpillStore
+{
+    private static final String TMP_PREFIX = ".";
+    private static final String FILE_REQUEST = "request.properties";
+    private static final String FILE_DELIBERATION = "deliberation.pdf";
+    private static final String FILE_ANNEXE_PREFIX = "annexe-";
+    private static final String FILE_ANNEXE_SUFFIX = ".pdf";
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_NUMERO = "numero";
+    private static final String KEY_OBJET = "objet";
+    private static final String KEY_CODE_MATIERE_1 = "codeMatiere1";
+    private static final String KEY_CODE_MATIERE_2 = "codeMatiere2";
+    private static final String KEY_MUNICIPAL = "municipal";
+    private static final String KEY_COLLECTIVITY = "collectivity";
+    private static final String KEY_DATE_DECISION = "dateDecision";
+    private static final String KEY_ANNEXES = "annexes";
+    private static final String TYPE_ACTE = "acte";
+    private static final String TYPE_ANNULATION = "annulation";
+    private final Path _directory;
+    private final Queue<Path> _queueEntries = new ConcurrentLinkedQueue<Path>( );
+    private final AtomicLong _lSequence = new AtomicLong( );
+
+    /**
+     * Ouvre le répertoire de débordement et recense les transmissions laissées par une exécution précédente
+     *
+     * @param directory
+     *            le répertoire de débordement
+     * @throws IOException
+     *             IOException
+     */
+    FastSpillStore( Path directory ) throws IOException
+    {
+        _directory = Files.createDirectories( directory );
+
+        List<Path> listEntries = new ArrayList<Path>( );
+
+        try ( DirectoryStream<Path> entries = Files.newDirectoryStream( _directory ) )
+        {
+            for ( Path entry : entries )
+            {
+                if ( entry.getFileName( ).toString( ).startsWith( TMP_PREFIX ) )
+                {
+                    // Ecriture interrompue
+                    FastWorkspace.of( entry ).delete( );
+                }
+                else
+                {
+                    listEntries.add( entry );
+                }
+            }
+        }
+
+        Collections.sort( listEntries );
+        _queueEntries.addAll( listEntries );
+    }
+
+    /**
+     * Retourne le nombre de transmissions sur disque
+     *
+     * @return le nombre de transmissions
+     */
+    int size( )
+    {
+        return _queueEntries.size( );
+    }
+
+    /**
+     * Ecrit une transmission sur disque
+     *
+     * @param request
+     *            la transmission
+     * @return le répertoire de la transmission
+     * @throws IOException
+     *             IOException
+     */
+    Path write( FastOutboundRequest request ) throws IOException
+    {
+        String strName = String.format( "%013d-%09d", System.currentTimeMillis( ), _lSequence.incrementAndGet( ) );
+        Path tmp = Files.createDirectory( _directory.resolve( TMP_PREFIX + strName ) );
+        Properties properties = new Properties( );
+        properties.setProperty( KEY_NUMERO, request.getNumeroDeliberation( ) );
+        properties.setProperty( KEY_MUNICIPAL, Boolean.toString( request.isMunicipal( ) ) );
+
+        if ( request.getCollectivity( ) != null )
+        {
+            properties.setProperty( KEY_COLLECTIVITY, request.getCollectivity( ) );
+        }
+
+        if ( request.getDateDecision( ) != null )
+        {
+            properties.setProperty( KEY_DATE_DECISION, Long.toString( request.getDateDecision( ).getTime( ) ) );
+        }
+
+        try
+        {
+            if ( request.isAnnulation( ) )
+            {
+                properties.setProperty( KEY_TYPE, TYPE_ANNULATION );
+            }
+            else
+            {
+                ActeSubmission submission = request.getSubmission( );
+                properties.setProperty( KEY_TYPE, TYPE_ACTE );
+                properties.setProperty( KEY_OBJET, submission.getObjet( ) );
+                properties.setProperty( KEY_CODE_MATIERE_1, Integer.toString( submission.getCodeMatiere1( ) ) );
+                properties.setProperty( KEY_CODE_MATIERE_2, Integer.toString( submission.getCodeMatiere2( ) ) );
+                properties.setProperty( KEY_ANNEXES, Integer.toString( submission.getAnnexes( ).size( ) ) );
+                submission.getDeliberationFinale( ).writeTo( tmp.resolve( FILE_DELIBERATION ) );
+
+                int nAnnexe = 0;
+
+                for ( PayloadSource annexe : submission.getAnnexes( ) )
+                {
+                    annexe.writeTo( tmp.resolve( FILE_ANNEXE_PREFIX + nAnnexe++ + FILE_ANNEXE_SUFFIX ) );
+                }
+            }
+
+            try ( OutputStream out = Files.newOutputStream( tmp.resolve( FILE_REQUEST ) ) )
+            {
+                properties.store( out, null );
+            }
+
+            // Les fichiers et leurs entrées sont écrits sur disque avant la publication : une transmission visible après une coupure est complète
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( tmp ) )
+            {
+                for ( Path file : files )
+                {
+                    FastTransferEngine.force( file );
+                }
+            }
+
+            FastTransferEngine.syncDirectory( tmp );
+            FastTransferEngine.syncDirectory( _directory );
+
+            Path entry = Files.move( tmp, _directory.resolve( strName ), StandardCopyOption.ATOMIC_MOVE );
+            FastTransferEngine.syncDirectory( _directory );
+            _queueEntries.add( entry );
+
+            return entry;
+        }
+        catch( IOException | RuntimeException e )
+        {
+            FastWorkspace.of( tmp ).delete( );
+            throw e;
+        }
+    }
+
+    /**
+     * Retourne la plus ancienne transmission sur disque sans la retirer
+     *
+     * @return le répertoire de la transmission, ou null
+     */
+    Path peek( )
+    {
+        return _queueEntries.peek( );
+    }
+
+    /**
+     * Retire la plus ancienne transmission sur disque
+     *
+     * @return le répertoire de la transmission, ou null
+     */
+    Path poll( )
+    {
+        return _queueEntries.poll( );
+    }
+
+    /**
+     * Relit une transmission. Les fichiers sont lus directement dans le répertoire de débordement lors de l'envoi.
+     *
+     * @param entry
+     *            le répertoire de la transmission
+     * @return la transmission
+     * @throws IOException
+     *             IOException
+     */
+    FastOutboundRequest read( Path entry ) throws IOException
+    {
+        Properties properties = new Properties( );
+
+        try ( InputStream in = Files.newInputStream( entry.resolve( FILE_REQUEST ) ) )
+        {
+            properties.load( in );
+        }
+
+        String strDate = properties.getProperty( KEY_DATE_DECISION );
+        Timestamp tsDateDecision = ( strDate != null ) ? new Timestamp( Long.parseLong( strDate ) ) : null;
+        boolean bMunicipal = Boolean.parseBoolean( properties.getProperty( KEY_MUNICIPAL ) );
+        String strNumero = properties.getProperty( KEY_NUMERO );
+        String strCollectivity = properties.getProperty( KEY_COLLECTIVITY );
+
+        if ( TYPE_ANNULATION.equals( properties.getProperty( KEY_TYPE ) ) )
+        {
+            return ( strCollectivity != null ) ? FastOutboundRequest.annulation( strNumero, strCollectivity, tsDateDecision )
+                    : FastOutboundRequest.annulation( strNumero, bMunicipal, tsDateDecision );
+        }
+
+        ActeSubmission submission = new ActeSubmission( );
+        submission.setNumeroDeliberation( strNumero );
+        submission.setObjet( properties.getProperty( KEY_OBJET ) );
+        submission.setCodeMatiere1( Integer.parseInt( properties.getProperty( KEY_CODE_MATIERE_1 ) ) );
+        submission.setCodeMatiere2( Integer.parseInt( properties.getProperty( KEY_CODE_MATIERE_2 ) ) );
+        submission.setMunicipal( bMunicipal );
+        submission.setCollectivity( strCollectivity );
+        submission.setDateDecision( tsDateDecision );
+        submission.setDeliberationFinale( PayloadSource.fromPath( entry.resolve( FILE_DELIBERATION ) ) );
+
+        int nAnnexes = Integer.parseInt( properties.getProperty( KEY_ANNEXES ) );
+
+        for ( int i = 0; i < nAnnexes; i++ )
+        {
+            submission.addAnnexe( PayloadSource.fromPath( entry.resolve( FILE_ANNEXE_PREFIX + i + FILE_ANNEXE_SUFFIX ) ) );
+        }
+
+        return FastOutboundRequest.acte( submission );
+    }
+
+    /**
+     * Supprime une transmission envoyée
+     *
+     * @param entry
+     *            le répertoire de la transmission
+     */
+    void delete( Path entry )
+    {
+        FastWorkspace.of( entry ).delete( );
+    }
+}
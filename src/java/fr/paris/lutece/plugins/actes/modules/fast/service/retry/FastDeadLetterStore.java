@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.retry;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.FastManifest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastWorkspace;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Conserve les paquets qui n'ont pas pu être déposés dans le répertoire FAST. Les fichiers du paquet (ceux restés dans le répertoire de travail et
+ * ceux déjà déposés) sont réunis dans un sous-répertoire portant le nom du paquet, accompagné d'un fichier .error décrivant l'échec et du manifeste
+ * du paquet. Le paquet peut ainsi être vérifié puis redéposé tel quel, sans nouvelle transmission.
+ */
+public final class FastDeadLetterStore
+{
+    private static final String EXTENSION_ERROR = ".error";
+    private static final String LINE_SEPARATOR = "\n";
+    private final Path _directory;
+    private final FastTransferEngine _transferEngine = new FastTransferEngine( );
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire des paquets en échec
+     */
+    public FastDeadLetterStore( Path directory )
+    {
+        _directory = directory;
+    }
+
+    /**
+     * Retire du répertoire FAST un paquet dont le dépôt a échoué et le conserve dans le répertoire des paquets en échec. Un paquet dont le fichier
+     * témoin est publié est laissé en place. Le répertoire de travail peut ne plus exister, lorsqu'il a été perdu avant la reprise au démarrage.
+     *
+     * @param workspace
+     *            le répertoire de travail de la transmission
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @param strName
+     *            le nom du paquet
+     * @param manifest
+     *            le manifeste du paquet, ou null
+     * @param nRetries
+     *            le nombre de nouvelles tentatives consommées
+     * @param error
+     *            l'erreur qui a mis fin à la transmission
+     * @return true si le paquet a été conservé
+     */
+    public boolean store( FastWorkspace workspace, Path fastDirectory, String strName, FastManifest manifest, int nRetries, Throwable error )
+    {
+        if ( _transferEngine.isPublished( fastDirectory, strName ) )
+        {
+            return false;
+        }
+
+        try
+        {
+            if ( Files.isDirectory( workspace.getPath( ) ) )
+            {
+                _transferEngine.transfer( workspace.getPath( ), _directory, strName );
+            }
+
+            Path partial = fastDirectory.resolve( strName );
+
+            if ( Files.isDirectory( partial ) )
+            {
+                _transferEngine.transfer( partial, _directory, strName );
+            }
+
+            if ( manifest != null )
+            {
+                Files.write( _directory.resolve( strName + FastTransferEngine.EXTENSION_MANIFEST ), manifest.format( ).getBytes( StandardCharsets.UTF_8 ) );
+            }
+
+            Files.write( _directory.resolve( strName + EXTENSION_ERROR ), describe( nRetries, error ).getBytes( StandardCharsets.UTF_8 ) );
+            AppLogService.error( "Actes FAST : package " + strName + " could not be sent, kept in " + _directory.resolve( strName ) );
+            FastMetrics.getInstance( ).recordDeadLetter( );
+
+            return true;
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to keep failed package " + strName + " : " + e.getMessage( ), e );
+
+            return false;
+        }
+        finally
+        {
+            _transferEngine.rollback( fastDirectory, strName );
+        }
+    }
+
+    /**
+     * Décrit l'échec d'un paquet
+     *
+     * @param nRetries
+     *            le nombre de nouvelles tentatives consommées
+     * @param error
+     *            l'erreur
+     * @return la description
+     */
+    private static String describe( int nRetries, Throwable error )
+    {
+        StringWriter trace = new StringWriter( );
+        error.printStackTrace( new PrintWriter( trace ) );
+
+        return "date=" + new Date( ) + LINE_SEPARATOR + "failure=" + FastFailureClassifier.classify( error ) + LINE_SEPARATOR + "retries=" + nRetries
+                + LINE_SEPARATOR + LINE_SEPARATOR + trace;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.retry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.ReadOnlyFileSystemException;
+
+import javax.xml.bind.JAXBException;
+
+/**
+ * Classe les erreurs d'une transmission en erreurs passagères ou définitives. Toute erreur d'entrée/sortie est considérée comme passagère, sauf
+ * celles qui traduisent un problème de droits, d'arborescence ou de contenu, ainsi que l'interruption de la transmission.
+ */
+public final class FastFailureClassifier
+{
+    /**
+     * Constructeur privé
+     */
+    private FastFailureClassifier( )
+    {
+    }
+
+    /**
+     * Classe une erreur d'après sa nature et celle de ses causes
+     *
+     * @param error
+     *            l'erreur
+     * @return la nature de l'erreur
+     */
+    public static FastFailureType classify( Throwable error )
+    {
+        for ( Throwable cause = error; cause != null; cause = cause.getCause( ) )
+        {
+            if ( isPermanent( cause ) )
+            {
+                return FastFailureType.PERMANENT;
+            }
+        }
+
+        return ( error instanceof IOException ) ? FastFailureType.TRANSIENT : FastFailureType.PERMANENT;
+    }
+
+    /**
+     * Indique si une erreur est définitive par nature
+     *
+     * @param error
+     *            l'erreur
+     * @return true si une nouvelle tentative échouerait de la même façon
+     */
+    private static boolean isPermanent( Throwable error )
+    {
+        return ( error instanceof AccessDeniedException ) || ( error instanceof FileAlreadyExistsException ) || ( error instanceof NotDirectoryException )
+                || ( error instanceof FileSystemLoopException ) || ( error instanceof ReadOnlyFileSystemException )
+                || ( error instanceof CharacterCodingException ) || ( error instanceof JAXBException ) || ( error instanceof InterruptedIOException )
+                || ( error instanceof ClosedByInterruptException );
+    }
+}
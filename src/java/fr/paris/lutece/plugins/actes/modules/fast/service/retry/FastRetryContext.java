@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.retry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Nouvelles tentatives des étapes d'une transmission. Une étape en échec sur une erreur passagère est rejouée après une attente qui double à chaque
+ * tentative, tirée au hasard dans sa seconde moitié pour que les transmissions concurrentes ne retentent pas toutes au même instant. Le nombre de
+ * nouvelles tentatives est un budget commun à toutes les étapes de la transmission : les étapes déjà terminées ne sont pas rejouées.
+ */
+public final class FastRetryContext
+{
+    private final String _strName;
+    private final int _nMaxAttempts;
+    private final long _lInitialDelay;
+    private final long _lMaxDelay;
+    private int _nRetries;
+
+    /**
+     * Constructeur
+     *
+     * @param configuration
+     *            la configuration courante
+     * @param strName
+     *            le nom de la transmission, utilisé dans les traces
+     */
+    public FastRetryContext( FastConfiguration configuration, String strName )
+    {
+        _strName = strName;
+        _nMaxAttempts = configuration.getRetryMaxAttempts( );
+        _lInitialDelay = configuration.getRetryInitialDelay( );
+        _lMaxDelay = configuration.getRetryMaxDelay( );
+    }
+
+    /**
+     * Exécute une étape, en la rejouant tant que l'erreur est passagère et que le budget de la transmission n'est pas épuisé
+     *
+     * @param <T>
+     *            le type du résultat de l'étape
+     * @param strStep
+     *            le nom de l'étape, utilisé dans les traces
+     * @param action
+     *            l'étape
+     * @return le résultat de l'étape
+     * @throws IOException
+     *             la dernière erreur de l'étape, si elle est définitive ou si le budget est épuisé
+     */
+    public <T> T execute( String strStep, FastRetryableAction<T> action ) throws IOException
+    {
+        while ( true )
+        {
+            try
+            {
+                return action.run( );
+            }
+            catch( IOException e )
+            {
+                if ( ( FastFailureClassifier.classify( e ) == FastFailureType.PERMANENT ) || ( _nRetries >= _nMaxAttempts ) )
+                {
+                    throw e;
+                }
+
+                _nRetries++;
+
+                long lDelay = getDelay( _nRetries );
+                AppLogService.info( "Actes FAST : " + strStep + " failed for " + _strName + " (retry " + _nRetries + "/" + _nMaxAttempts + " in "
+                        + lDelay + " ms) : " + e.getMessage( ) );
+                FastMetrics.getInstance( ).recordRetry( );
+                pause( lDelay, e );
+            }
+        }
+    }
+
+    /**
+     * Retourne le nombre de nouvelles tentatives déjà consommées par la transmission
+     *
+     * @return le nombre de nouvelles tentatives
+     */
+    public int getRetries( )
+    {
+        return _nRetries;
+    }
+
+    /**
+     * Retourne l'attente avant une nouvelle tentative : le délai initial doublé à chaque tentative, borné par le délai maximal, dont seule la
+     * seconde moitié est garantie
+     *
+     * @param nRetry
+     *            le numéro de la nouvelle tentative (à partir de 1)
+     * @return l'attente en millisecondes
+     */
+    long getDelay( int nRetry )
+    {
+        long lDelay = _lMaxDelay;
+
+        if ( nRetry < Long.numberOfLeadingZeros( _lInitialDelay ) )
+        {
+            lDelay = Math.min( _lMaxDelay, _lInitialDelay << ( nRetry - 1 ) );
+        }
+
+        long lHalf = lDelay / 2;
+
+        return lHalf + ThreadLocalRandom.current( ).nextLong( lDelay - lHalf + 1 );
+    }
+
+    /**
+     * Attend avant une nouvelle tentative
+     *
+     * @param lDelay
+     *            l'attente en millisecondes
+     * @param error
+     *            l'erreur de la tentative précédente
+     * @throws InterruptedIOException
+     *             si le thread est interrompu pendant l'attente
+     */
+    private static void pause( long lDelay, IOException error ) throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep( lDelay );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+
+            InterruptedIOException interrupted = new InterruptedIOException( "Interrupted while waiting to retry : " + error.getMessage( ) );
+            interrupted.initCause( error );
+            throw interrupted;
+        }
+    }
+}
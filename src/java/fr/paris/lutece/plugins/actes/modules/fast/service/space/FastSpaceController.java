@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.space;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import fr.paris.lutece.plugins.actes.modules.fast.business.ActeSubmission;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Contrôle d'admission sur l'espace disque. La taille d'un paquet est réservée, avant toute écriture, sur le volume du répertoire temporaire et sur
+ * celui du répertoire FAST de la collectivité émettrice (une seule fois lorsqu'il s'agit du même volume, les fichiers y étant déplacés sans copie). Les réservations des
+ * transmissions en cours sont déduites de l'espace disponible.
+ * <p>
+ * Un paquet qui ne tient pas à cause des réservations en cours est mis en attente de leur libération, dans la limite du délai configuré ; un paquet
+ * qui ne tient pas même sans elles est rejeté immédiatement. Un lot trop volumineux échoue ainsi paquet par paquet, avant écriture, au lieu de
+ * laisser des paquets tronqués sur un volume plein.
+ * <p>
+ * L'espace réservé reste compté jusqu'au dépôt du paquet, y compris pour les fichiers déjà écrits : l'estimation est volontairement pessimiste.
+ */
+public final class FastSpaceController
+{
+    /** Espace réservé pour le fichier métier et l'enveloppe .ws d'un paquet */
+    public static final long PACKAGE_OVERHEAD = 256 * 1024L;
+    private static volatile FastSpaceController _singleton;
+    private volatile FastConfiguration _configuration;
+    private final Map<FileStore, Long> _mapReserved = new HashMap<FileStore, Long>( );
+    private final Map<Path, List<FileStore>> _mapStores = new ConcurrentHashMap<Path, List<FileStore>>( );
+
+    /**
+     * Constructeur
+     *
+     * @param configuration
+     *            la configuration courante
+     */
+    FastSpaceController( FastConfiguration configuration )
+    {
+        _configuration = configuration;
+    }
+
+    /**
+     * Retourne l'instance unique, ou null si le contrôle de l'espace disque est désactivé. Lorsque la configuration est rechargée, l'instance est
+     * conservée avec ses réservations en cours et seuls ses paramètres sont remplacés.
+     *
+     * @return le contrôleur, ou null
+     */
+    public static FastSpaceController getInstance( )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        if ( !configuration.isSpaceEnabled( ) )
+        {
+            return null;
+        }
+
+        FastSpaceController controller = _singleton;
+
+        if ( controller == null )
+        {
+            synchronized( FastSpaceController.class )
+            {
+                controller = _singleton;
+
+                if ( controller == null )
+                {
+                    controller = new FastSpaceController( configuration );
+                    _singleton = controller;
+                }
+            }
+        }
+
+        if ( controller._configuration != configuration )
+        {
+            controller.reconfigure( configuration );
+        }
+
+        return controller;
+    }
+
+    /**
+     * Remplace les paramètres du contrôleur après un rechargement de la configuration. Les réservations en cours restent comptées ; les
+     * transmissions en attente d'espace sont réveillées pour appliquer les nouveaux seuils.
+     *
+     * @param configuration
+     *            la nouvelle configuration
+     */
+    synchronized void reconfigure( FastConfiguration configuration )
+    {
+        if ( _configuration == configuration )
+        {
+            return;
+        }
+
+        _configuration = configuration;
+        _mapStores.clear( );
+        notifyAll( );
+    }
+
+    /**
+     * Estime l'espace nécessaire au paquet d'une transmission, d'après la taille des fichiers lorsqu'elle est connue à l'avance
+     *
+     * @param submission
+     *            la demande de transmission
+     * @return l'espace en octets
+     */
+    public long estimate( ActeSubmission submission )
+    {
+        long lSize = PACKAGE_OVERHEAD + estimate( submission.getDeliberationFinale( ) );
+
+        for ( PayloadSource annexe : submission.getAnnexes( ) )
+        {
+            lSize += estimate( annexe );
+        }
+
+        return lSize;
+    }
+
+    /**
+     * Réserve l'espace d'un paquet, en attendant au besoin la libération de l'espace réservé par les transmissions en cours. L'espace disponible
+     * des volumes est lu avant de prendre le verrou du contrôleur, et relu à chaque réveil : un appel système lent (montage réseau) ne bloque pas
+     * les autres transmissions.
+     *
+     * @param strName
+     *            le nom du paquet
+     * @param fastDirectory
+     *            le répertoire FAST dans lequel le paquet sera déposé
+     * @param lSize
+     *            l'espace nécessaire en octets
+     * @return la réservation, à libérer une fois le paquet déposé ou abandonné
+     * @throws IOException
+     *             si l'espace disque est insuffisant, ou si le volume d'un répertoire ne peut être déterminé
+     */
+    public FastSpaceReservation reserve( String strName, Path fastDirectory, long lSize ) throws IOException
+    {
+        long lDeadline = System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( _configuration.getSpaceWaitTimeout( ) );
+        boolean bDeferred = false;
+        List<FileStore> listStores = getStores( fastDirectory );
+
+        while ( true )
+        {
+            long [ ] usableSpaces = new long [ listStores.size( )];
+
+            for ( int i = 0; i < usableSpaces.length; i++ )
+            {
+                usableSpaces [i] = listStores.get( i ).getUsableSpace( );
+            }
+
+            synchronized( this )
+            {
+                FastConfiguration configuration = _configuration;
+                FileStore full = null;
+                boolean bFitsAlone = true;
+
+                for ( int i = 0; i < usableSpaces.length; i++ )
+                {
+                    FileStore store = listStores.get( i );
+                    long lAvailable = usableSpaces [i] - configuration.getSpaceMinFree( );
+
+                    if ( lSize > lAvailable )
+                    {
+                        full = store;
+                        bFitsAlone = false;
+
+                        break;
+                    }
+
+                    if ( lSize > ( lAvailable - getReserved( store ) ) )
+                    {
+                        full = store;
+                    }
+                }
+
+                if ( full == null )
+                {
+                    for ( FileStore store : listStores )
+                    {
+                        _mapReserved.put( store, getReserved( store ) + lSize );
+                    }
+
+                    return new FastSpaceReservation( this, strName, listStores, lSize );
+                }
+
+                long lRemaining = lDeadline - System.nanoTime( );
+
+                if ( !bFitsAlone || ( lRemaining <= 0 ) )
+                {
+                    FastMetrics.getInstance( ).recordSpaceRejected( );
+
+                    throw new IOException( "Not enough disk space on " + full + " for package " + strName + " (" + lSize + " bytes required)" );
+                }
+
+                if ( !bDeferred )
+                {
+                    AppLogService.info( "Actes FAST : package " + strName + " deferred until disk space is released on " + full );
+                    bDeferred = true;
+                }
+
+                try
+                {
+                    TimeUnit.NANOSECONDS.timedWait( this, lRemaining );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+
+                    throw new InterruptedIOException( "Interrupted while waiting for disk space for package " + strName );
+                }
+            }
+        }
+    }
+
+    /**
+     * Libère une réservation et réveille les transmissions en attente d'espace
+     *
+     * @param reservation
+     *            la réservation
+     */
+    synchronized void release( FastSpaceReservation reservation )
+    {
+        if ( !reservation.markReleased( ) )
+        {
+            return;
+        }
+
+        for ( FileStore store : reservation.getStores( ) )
+        {
+            long lReserved = getReserved( store ) - reservation.getSize( );
+
+            if ( lReserved > 0 )
+            {
+                _mapReserved.put( store, lReserved );
+            }
+            else
+            {
+                _mapReserved.remove( store );
+            }
+        }
+
+        notifyAll( );
+    }
+
+    /**
+     * Retourne l'espace réservé sur un volume par les transmissions en cours
+     *
+     * @param store
+     *            le volume
+     * @return l'espace en octets
+     */
+    private long getReserved( FileStore store )
+    {
+        Long lReserved = _mapReserved.get( store );
+
+        return ( lReserved != null ) ? lReserved : 0L;
+    }
+
+    /**
+     * Retourne les volumes distincts du répertoire temporaire et d'un répertoire FAST, déterminés au premier appel pour ce répertoire
+     *
+     * @param fastDirectory
+     *            le répertoire FAST
+     * @return les volumes
+     * @throws IOException
+     *             IOException
+     */
+    private List<FileStore> getStores( Path fastDirectory ) throws IOException
+    {
+        List<FileStore> listStores = _mapStores.get( fastDirectory );
+
+        if ( listStores == null )
+        {
+            listStores = new ArrayList<FileStore>( );
+
+            for ( Path directory : new Path [ ] {
+                    _configuration.getTmpDirectory( ), fastDirectory
+            } )
+            {
+                FileStore store = getFileStore( directory );
+
+                if ( !listStores.contains( store ) )
+                {
+                    listStores.add( store );
+                }
+            }
+
+            listStores = Collections.unmodifiableList( listStores );
+            _mapStores.put( fastDirectory, listStores );
+        }
+
+        return listStores;
+    }
+
+    /**
+     * Retourne le volume d'un répertoire, ou celui de son plus proche parent existant s'il n'est pas encore créé
+     *
+     * @param directory
+     *            le répertoire
+     * @return le volume
+     * @throws IOException
+     *             IOException
+     */
+    private static FileStore getFileStore( Path directory ) throws IOException
+    {
+        Path existing = directory.toAbsolutePath( );
+
+        while ( !Files.exists( existing ) && ( existing.getParent( ) != null ) )
+        {
+            existing = existing.getParent( );
+        }
+
+        return Files.getFileStore( existing );
+    }
+
+    /**
+     * Estime la taille d'un fichier à transmettre
+     *
+     * @param source
+     *            le contenu du fichier
+     * @return la taille connue, ou la taille configurée pour les flux
+     */
+    private long estimate( PayloadSource source )
+    {
+        long lSize = source.getSize( );
+
+        return ( lSize == PayloadSource.UNKNOWN_SIZE ) ? _configuration.getSpaceUnknownSize( ) : lSize;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.space;
+
+import java.nio.file.FileStore;
+import java.util.List;
+
+/**
+ * Espace disque réservé pour la préparation et le dépôt d'un paquet, sur chacun des volumes concernés
+ */
+public final class FastSpaceReservation
+{
+    private final FastSpaceController _controller;
+    private final String _strName;
+    private final List<FileStore> _listStores;
+    private final long _lSize;
+    private boolean _bReleased;
+
+    /**
+     * Constructeur
+     *
+     * @param controller
+     *            le contrôleur qui a accordé la réservation
+     * @param strName
+     *            le nom du paquet
+     * @param listStores
+     *            les volumes sur lesquels l'espace est réservé
+     * @param lSize
+     *            l'espace réservé sur chaque volume, en octets
+     */
+    FastSpaceReservation( FastSpaceController controller, String strName, List<FileStore> listStores, long lSize )
+    {
+        _controller = controller;
+        _strName = strName;
+        _listStores = listStores;
+        _lSize = lSize;
+    }
+
+    /**
+     * Retourne le nom du paquet
+     *
+     * @return le nom du paquet
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Retourne l'espace réservé sur chaque volume
+     *
+     * @return l'espace en octets
+     */
+    public long getSize( )
+    {
+        return _lSize;
+    }
+
+    /**
+     * Libère l'espace réservé, une fois le paquet déposé ou abandonné. Un second appel est sans effet.
+     */
+    public void release( )
+    {
+        _controller.release( this );
+    }
+
+    /**
+     * Retourne les volumes sur lesquels l'espace est réservé
+     *
+     * @return les volumes
+     */
+    List<FileStore> getStores( )
+    {
+        return _listStores;
+    }
+
+    /**
+     * Marque la réservation comme libérée. Appelé par le contrôleur, qui synchronise les accès.
+     *
+     * @return true si la réservation n'était pas déjà libérée
+     */
+    boolean markReleased( )
+    {
+        boolean bReleased = _bReleased;
+        _bReleased = true;
+
+        return !bReleased;
+    }
+}
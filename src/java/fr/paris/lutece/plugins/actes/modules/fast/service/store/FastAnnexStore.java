@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.store;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastDigest;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.FastTransferEngine;
+import fr.paris.lutece.plugins.actes.modules.fast.service.io.PayloadSource;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Magasin des annexes, adressé par l'empreinte SHA-256 de leur contenu. Une annexe est écrite une seule fois dans le magasin puis placée dans
+ * chaque paquet par un lien physique, ou par une copie si le système de fichiers ne le permet pas.
+ * <p>
+ * L'empreinte d'une source relisible (tableau d'octets, fichier) est calculée avant toute écriture : une annexe déjà présente n'est pas écrite du
+ * tout. Une source flux est écrite une fois dans le magasin pour en calculer l'empreinte. Les liens étant déplacés tels quels vers le répertoire
+ * FAST lorsqu'il est sur le même système de fichiers, le contenu n'y est pas non plus recopié.
+ * <p>
+ * Le nombre de liens physiques d'un contenu tient lieu de compteur de références : un contenu qui n'est plus lié à aucun paquet et qui n'a pas été
+ * utilisé depuis le délai configuré est supprimé par {@link #collect(long)}. La date de dernière utilisation est portée par un fichier vide
+ * placé à côté du contenu (extension .used) : la date de modification du contenu lui-même ne peut pas servir, son inode étant partagé avec les
+ * fichiers des paquets déposés. Les contenus sont rangés dans des sous-répertoires nommés d'après les deux premiers caractères de leur empreinte.
+ */
+public final class FastAnnexStore
+{
+    private static final String ATTRIBUTE_NLINK = "unix:nlink";
+    private static final String PREFIX_TMP = ".";
+    private static final String EXTENSION_TMP = ".tmp";
+    private static final String EXTENSION_USED = ".used";
+    private static final int SUBDIRECTORY_LENGTH = 2;
+    private static volatile FastAnnexStore _singleton;
+    private final Path _directory;
+
+    /**
+     * Constructeur
+     *
+     * @param directory
+     *            le répertoire du magasin
+     */
+    FastAnnexStore( Path directory )
+    {
+        _directory = directory;
+    }
+
+    /**
+     * Retourne l'instance unique, ou null si le magasin est désactivé
+     *
+     * @return le magasin, ou null
+     */
+    public static FastAnnexStore getInstance( )
+    {
+        FastConfiguration configuration = FastConfigurationService.getInstance( ).getConfiguration( );
+
+        if ( !configuration.isStoreEnabled( ) )
+        {
+            return null;
+        }
+
+        FastAnnexStore store = _singleton;
+
+        if ( ( store == null ) || !store._directory.equals( configuration.getStoreDirectory( ) ) )
+        {
+            store = new FastAnnexStore( configuration.getStoreDirectory( ) );
+            _singleton = store;
+        }
+
+        return store;
+    }
+
+    /**
+     * Crée le fichier cible à partir du contenu du magasin, en y ajoutant d'abord le contenu s'il est absent
+     *
+     * @param source
+     *            le contenu de l'annexe
+     * @param target
+     *            le fichier cible (remplacé s'il existe)
+     * @return l'empreinte SHA-256 du contenu
+     * @throws IOException
+     *             IOException
+     */
+    public byte [ ] materialize( PayloadSource source, Path target ) throws IOException
+    {
+        MessageDigest digest = FastDigest.newDigest( );
+        Files.deleteIfExists( target );
+
+        if ( source.isRepeatable( ) )
+        {
+            source.digest( digest );
+
+            byte [ ] hash = digest.digest( );
+            Path entry = getEntry( hash );
+
+            if ( Files.exists( entry ) )
+            {
+                try
+                {
+                    link( entry, target );
+                    FastMetrics.getInstance( ).recordDeduplicated( Files.size( target ) );
+
+                    return hash;
+                }
+                catch( NoSuchFileException e )
+                {
+                    // Contenu supprimé par le nettoyage entre-temps : il est écrit à nouveau
+                    AppLogService.debug( "Actes FAST : annex " + entry + " removed from the store, writing it again" );
+                }
+            }
+
+            Path tmp = createTempFile( );
+
+            try
+            {
+                source.writeTo( tmp, null );
+                store( tmp, entry );
+            }
+            finally
+            {
+                Files.deleteIfExists( tmp );
+            }
+
+            link( entry, target );
+
+            return hash;
+        }
+
+        Path tmp = createTempFile( );
+
+        try
+        {
+            source.writeTo( tmp, digest );
+
+            byte [ ] hash = digest.digest( );
+            Path entry = getEntry( hash );
+            store( tmp, entry );
+            link( entry, target );
+
+            return hash;
+        }
+        finally
+        {
+            Files.deleteIfExists( tmp );
+        }
+    }
+
+    /**
+     * Supprime les contenus qui ne sont plus liés à aucun paquet et qui n'ont pas été utilisés depuis une durée donnée, ainsi que les fichiers
+     * temporaires abandonnés. Sur les systèmes qui n'exposent pas le nombre de liens, seule la durée est prise en compte.
+     *
+     * @param lMaxAge
+     *            la durée en millisecondes
+     * @return le nombre de contenus supprimés
+     */
+    public int collect( long lMaxAge )
+    {
+        long lLimit = System.currentTimeMillis( ) - lMaxAge;
+        int nRemoved = 0;
+
+        if ( !Files.isDirectory( _directory ) )
+        {
+            return nRemoved;
+        }
+
+        try ( DirectoryStream<Path> children = Files.newDirectoryStream( _directory ) )
+        {
+            for ( Path child : children )
+            {
+                if ( Files.isDirectory( child ) )
+                {
+                    nRemoved += collect( child, lLimit );
+                }
+                else if ( child.getFileName( ).toString( ).startsWith( PREFIX_TMP ) && isOlderThan( child, lLimit ) )
+                {
+                    Files.deleteIfExists( child );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Actes FAST : unable to scan the annex store : " + e.getMessage( ), e );
+        }
+
+        return nRemoved;
+    }
+
+    /**
+     * Supprime les contenus inutilisés d'un sous-répertoire du magasin
+     *
+     * @param directory
+     *            le sous-répertoire
+     * @param lLimit
+     *            la date de dernière utilisation en deçà de laquelle un contenu non lié est supprimé
+     * @return le nombre de contenus supprimés
+     * @throws IOException
+     *             IOException
+     */
+    private int collect( Path directory, long lLimit ) throws IOException
+    {
+        int nRemoved = 0;
+
+        try ( DirectoryStream<Path> entries = Files.newDirectoryStream( directory ) )
+        {
+            for ( Path entry : entries )
+            {
+                String strFileName = entry.getFileName( ).toString( );
+
+                try
+                {
+                    if ( strFileName.endsWith( EXTENSION_USED ) )
+                    {
+                        // Marque d'utilisation d'un contenu supprimé sans elle
+                        Path content = entry.resolveSibling( strFileName.substring( 0, strFileName.length( ) - EXTENSION_USED.length( ) ) );
+
+                        if ( !Files.exists( content ) && isOlderThan( entry, lLimit ) )
+                        {
+                            Files.deleteIfExists( entry );
+                        }
+                    }
+                    else if ( !isLinked( entry ) && isUnusedSince( entry, lLimit ) && Files.deleteIfExists( entry ) )
+                    {
+                        Files.deleteIfExists( getUsedMarker( entry ) );
+                        nRemoved++;
+                    }
+                }
+                catch( NoSuchFileException e )
+                {
+                    // Fichier supprimé pendant le parcours, avec son contenu ou par un autre noeud
+                    AppLogService.debug( "Actes FAST : " + entry + " already removed from the annex store" );
+                }
+            }
+        }
+
+        return nRemoved;
+    }
+
+    /**
+     * Indique si un contenu n'a pas été utilisé depuis une date. Sans marque d'utilisation, la date de création du contenu est retenue.
+     *
+     * @param entry
+     *            le contenu
+     * @param lLimit
+     *            la date
+     * @return true si la dernière utilisation est antérieure à la date
+     * @throws IOException
+     *             IOException
+     */
+    private static boolean isUnusedSince( Path entry, long lLimit ) throws IOException
+    {
+        try
+        {
+            return isOlderThan( getUsedMarker( entry ), lLimit );
+        }
+        catch( NoSuchFileException e )
+        {
+            return isOlderThan( entry, lLimit );
+        }
+    }
+
+    /**
+     * Enregistre l'utilisation d'un contenu sur sa marque d'utilisation, créée au besoin
+     *
+     * @param entry
+     *            le contenu
+     * @throws IOException
+     *             IOException
+     */
+    private static void markUsed( Path entry ) throws IOException
+    {
+        Path used = getUsedMarker( entry );
+
+        try
+        {
+            Files.createFile( used );
+        }
+        catch( FileAlreadyExistsException e )
+        {
+            Files.setLastModifiedTime( used, FileTime.fromMillis( System.currentTimeMillis( ) ) );
+        }
+    }
+
+    /**
+     * Retourne la marque d'utilisation d'un contenu
+     *
+     * @param entry
+     *            le contenu
+     * @return la marque d'utilisation
+     */
+    private static Path getUsedMarker( Path entry )
+    {
+        return entry.resolveSibling( entry.getFileName( ) + EXTENSION_USED );
+    }
+
+    /**
+     * Indique si un contenu est encore lié à un paquet
+     *
+     * @param entry
+     *            le contenu
+     * @return true si le contenu a d'autres liens physiques que celui du magasin
+     * @throws IOException
+     *             IOException
+     */
+    private static boolean isLinked( Path entry ) throws IOException
+    {
+        try
+        {
+            return ( (Integer) Files.getAttribute( entry, ATTRIBUTE_NLINK ) ) > 1;
+        }
+        catch( UnsupportedOperationException | IllegalArgumentException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Indique si un fichier n'a pas été modifié depuis une date
+     *
+     * @param file
+     *            le fichier
+     * @param lLimit
+     *            la date
+     * @return true si le fichier est plus ancien que la date
+     * @throws IOException
+     *             IOException
+     */
+    private static boolean isOlderThan( Path file, long lLimit ) throws IOException
+    {
+        return Files.getLastModifiedTime( file ).toMillis( ) < lLimit;
+    }
+
+    /**
+     * Range un fichier temporaire dans le magasin, sauf si le même contenu y est déjà
+     *
+     * @param tmp
+     *            le fichier temporaire
+     * @param entry
+     *            l'emplacement du contenu
+     * @throws IOException
+     *             IOException
+     */
+    private static void store( Path tmp, Path entry ) throws IOException
+    {
+        if ( Files.exists( entry ) )
+        {
+            return;
+        }
+
+        Files.createDirectories( entry.getParent( ) );
+
+        try
+        {
+            Files.move( tmp, entry, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( FileAlreadyExistsException e )
+        {
+            // Même contenu ajouté en parallèle par une autre transmission
+            AppLogService.debug( "Actes FAST : annex " + entry + " already stored" );
+        }
+    }
+
+    /**
+     * Lie un contenu du magasin dans un paquet, ou le recopie si le lien physique n'est pas possible (autre système de fichiers)
+     *
+     * @param entry
+     *            le contenu
+     * @param target
+     *            le fichier cible
+     * @throws IOException
+     *             IOException
+     */
+    private static void link( Path entry, Path target ) throws IOException
+    {
+        // Le contenu est marqué comme utilisé avant d'être lié, pour que le nettoyage ne le supprime pas entre-temps
+        markUsed( entry );
+
+        try
+        {
+            Files.createLink( target, entry );
+        }
+        catch( NoSuchFileException e )
+        {
+            throw e;
+        }
+        catch( UnsupportedOperationException | FileSystemException e )
+        {
+            FastTransferEngine.copy( entry, target );
+        }
+    }
+
+    /**
+     * Crée un fichier temporaire dans le magasin, sur le même système de fichiers que les contenus
+     *
+     * @return le fichier temporaire
+     * @throws IOException
+     *             IOException
+     */
+    private Path createTempFile( ) throws IOException
+    {
+        Files.createDirectories( _directory );
+
+        return Files.createTempFile( _directory, PREFIX_TMP, EXTENSION_TMP );
+    }
+
+    /**
+     * Retourne l'emplacement d'un contenu dans le magasin
+     *
+     * @param hash
+     *            l'empreinte du contenu
+     * @return l'emplacement
+     */
+    private Path getEntry( byte [ ] hash )
+    {
+        String strHash = FastDigest.toHex( hash );
+
+        return _directory.resolve( strHash.substring( 0, SUBDIRECTORY_LENGTH ) ).resolve( strHash );
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.xml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Modèle de l'enveloppe SOAP (fichier .ws) d'une collectivité émettrice. Tout ce qui précède et suit le nom du fichier métier est échappé et encodé
+ * une seule fois à la construction ; seul le nom du fichier est encodé à chaque écriture. Le fichier produit est en UTF-8, comme déclaré dans son
+ * prologue.
+ */
+public final class FastEnvelopeTemplate
+{
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final String XML_ENTETE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String XML_WS_ENTETE = "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:SOAP-ENC=\"http://schemas.xmlsoap.org/soap/encoding/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:cascl=\"http://dev.cdcfast.fr/connecteur/V20\"><SOAP-ENV:Body>";
+    private static final String XML_WS_FERMETURE_ENTETE = "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+    private static final String XML_WS_BALISE_ACTE = "<cascl:traiterACTES>";
+    private static final String XML_WS_BALISE_FERMETURE_ACTE = "</cascl:traiterACTES>";
+    private static final String XML_WS_BALISE_TRAITEMENT = "<cascl:typeTraitement>";
+    private static final String XML_WS_BALISE_FERMETURE_TRAITEMENT = "</cascl:typeTraitement>";
+    private static final String XML_WS_BALISE_DNUTILISATEUR = "<cascl:DNUtilisateur>";
+    private static final String XML_WS_BALISE_FERMETURE_DNUTILISATEUR = "</cascl:DNUtilisateur>";
+    private static final String XML_WS_BALISE_SIREN = "<cascl:SIREN>";
+    private static final String XML_WS_BALISE_FERMETURE_SIREN = "</cascl:SIREN>";
+    private static final String XML_WS_BALISE_FICHIER = "<cascl:fichierACTES>";
+    private static final String XML_WS_BALISE_FERMETURE_FICHIER = "</cascl:fichierACTES>";
+    private final ByteBuffer _prefix;
+    private final ByteBuffer _suffix;
+
+    /**
+     * Construit le modèle
+     *
+     * @param strTraitement
+     *            le type de traitement du web service
+     * @param strDNUtilisateur
+     *            le DN de l'utilisateur du web service
+     * @param strSiren
+     *            le numéro SIREN de la collectivité
+     */
+    public FastEnvelopeTemplate( String strTraitement, String strDNUtilisateur, String strSiren )
+    {
+        String strPrefix = XML_ENTETE + XML_WS_ENTETE + XML_WS_BALISE_ACTE + XML_WS_BALISE_TRAITEMENT + escape( strTraitement )
+                + XML_WS_BALISE_FERMETURE_TRAITEMENT + XML_WS_BALISE_DNUTILISATEUR + escape( strDNUtilisateur ) + XML_WS_BALISE_FERMETURE_DNUTILISATEUR
+                + XML_WS_BALISE_SIREN + escape( strSiren ) + XML_WS_BALISE_FERMETURE_SIREN + XML_WS_BALISE_FICHIER;
+        String strSuffix = XML_WS_BALISE_FERMETURE_FICHIER + XML_WS_BALISE_FERMETURE_ACTE + XML_WS_FERMETURE_ENTETE;
+
+        _prefix = ByteBuffer.wrap( strPrefix.getBytes( CHARSET ) ).asReadOnlyBuffer( );
+        _suffix = ByteBuffer.wrap( strSuffix.getBytes( CHARSET ) ).asReadOnlyBuffer( );
+    }
+
+    /**
+     * Ecrit l'enveloppe d'un paquet (fichier créé ou écrasé)
+     *
+     * @param target
+     *            le fichier .ws
+     * @param strNameFichierMetier
+     *            le nom du fichier métier (fichier XML)
+     * @return le nombre d'octets écrits
+     * @throws IOException
+     *             IOException
+     */
+    public long write( Path target, String strNameFichierMetier ) throws IOException
+    {
+        return write( target, strNameFichierMetier, null );
+    }
+
+    /**
+     * Ecrit l'enveloppe d'un paquet (fichier créé ou écrasé) en calculant son empreinte au passage
+     *
+     * @param target
+     *            le fichier .ws
+     * @param strNameFichierMetier
+     *            le nom du fichier métier (fichier XML)
+     * @param digest
+     *            le calcul d'empreinte à alimenter, ou null
+     * @return le nombre d'octets écrits
+     * @throws IOException
+     *             IOException
+     */
+    public long write( Path target, String strNameFichierMetier, MessageDigest digest ) throws IOException
+    {
+        ByteBuffer [ ] buffers = {
+                _prefix.duplicate( ), ByteBuffer.wrap( escape( strNameFichierMetier ).getBytes( CHARSET ) ), _suffix.duplicate( )
+        };
+
+        if ( digest != null )
+        {
+            for ( ByteBuffer buffer : buffers )
+            {
+                digest.update( buffer.duplicate( ) );
+            }
+        }
+        long lSize = buffers [0].remaining( ) + buffers [1].remaining( ) + buffers [2].remaining( );
+        long lWritten = 0;
+
+        try ( FileChannel out = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            while ( lWritten < lSize )
+            {
+                lWritten += out.write( buffers );
+            }
+        }
+
+        return lWritten;
+    }
+
+    /**
+     * Echappe une valeur insérée dans le contenu d'un élément XML. La valeur est rendue telle quelle si elle ne contient aucun caractère à échapper.
+     *
+     * @param strValue
+     *            la valeur
+     * @return la valeur échappée
+     */
+    static String escape( String strValue )
+    {
+        StringBuilder sbEscaped = null;
+        int nLength = strValue.length( );
+
+        for ( int i = 0; i < nLength; i++ )
+        {
+            char c = strValue.charAt( i );
+            String strEntity;
+
+            switch( c )
+            {
+                case '&':
+                    strEntity = "&amp;";
+                    break;
+                case '<':
+                    strEntity = "&lt;";
+                    break;
+                case '>':
+                    strEntity = "&gt;";
+                    break;
+                default:
+                    strEntity = null;
+            }
+
+            if ( ( strEntity != null ) && ( sbEscaped == null ) )
+            {
+                sbEscaped = new StringBuilder( nLength + 16 );
+                sbEscaped.append( strValue, 0, i );
+            }
+
+            if ( strEntity != null )
+            {
+                sbEscaped.append( strEntity );
+            }
+            else if ( sbEscaped != null )
+            {
+                sbEscaped.append( c );
+            }
+        }
+
+        return ( sbEscaped == null ) ? strValue : sbEscaped.toString( );
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.xml;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import fr.gouv.interieur.actes_v1.Annulation;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.util.ActeNamespacePrefixMapper;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Service JAXB partagé du module. Le contexte JAXB du paquet actes_v1 est construit une seule fois pour toute l'application, et les Marshallers (non
+ * thread-safe) sont réutilisés au travers d'un pool borné.
+ */
+public final class FastJaxbService
+{
+    private static final String JAXB_PACKAGE = "fr.gouv.interieur.actes_v1";
+    private static final String PROPERTY_NAMESPACE_PREFIX_MAPPER = "com.sun.xml.bind.namespacePrefixMapper";
+    private static final FastJaxbService _singleton = new FastJaxbService( );
+    private volatile BlockingQueue<Marshaller> _poolMarshallers;
+    private volatile JAXBContext _jaxbContext;
+
+    /**
+     * Constructeur privé
+     */
+    private FastJaxbService( )
+    {
+    }
+
+    /**
+     * Retourne l'instance unique du service
+     *
+     * @return l'instance unique du service
+     */
+    public static FastJaxbService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Construit le contexte JAXB et un premier Marshaller, afin que la première transmission après un déploiement n'en supporte pas le coût
+     */
+    public void warmUp( )
+    {
+        try
+        {
+            long lStart = System.currentTimeMillis( );
+            marshal( new Annulation( ), new NullOutputStream( ) );
+            AppLogService.info( "Actes FAST : JAXB context initialized in " + ( System.currentTimeMillis( ) - lStart ) + " ms" );
+        }
+        catch( JAXBException e )
+        {
+            AppLogService.error( "Actes FAST : error initializing JAXB context : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Sérialise un élément JAXB dans un Writer
+     *
+     * @param element
+     *            l'élément à sérialiser
+     * @param writer
+     *            le Writer de destination
+     * @throws JAXBException
+     *             JAXBException
+     */
+    public void marshal( Object element, Writer writer ) throws JAXBException
+    {
+        Marshaller marshaller = borrowMarshaller( );
+
+        try
+        {
+            marshaller.marshal( element, writer );
+        }
+        finally
+        {
+            releaseMarshaller( marshaller );
+        }
+    }
+
+    /**
+     * Sérialise un élément JAXB dans un flux, dans l'encodage configuré
+     *
+     * @param element
+     *            l'élément à sérialiser
+     * @param out
+     *            le flux de destination
+     * @throws JAXBException
+     *             JAXBException
+     */
+    public void marshal( Object element, OutputStream out ) throws JAXBException
+    {
+        Marshaller marshaller = borrowMarshaller( );
+
+        try
+        {
+            marshaller.marshal( element, out );
+        }
+        finally
+        {
+            releaseMarshaller( marshaller );
+        }
+    }
+
+    /**
+     * Retourne le contexte JAXB, construit au premier appel avec le pool de Marshallers
+     *
+     * @return le contexte JAXB
+     * @throws JAXBException
+     *             JAXBException
+     */
+    private JAXBContext getContext( ) throws JAXBException
+    {
+        JAXBContext context = _jaxbContext;
+
+        if ( context == null )
+        {
+            synchronized( this )
+            {
+                context = _jaxbContext;
+
+                if ( context == null )
+                {
+                    context = JAXBContext.newInstance( JAXB_PACKAGE );
+                    _poolMarshallers = new ArrayBlockingQueue<Marshaller>( FastConfigurationService.getInstance( ).getConfiguration( )
+                            .getMarshallerPoolSize( ) );
+                    _jaxbContext = context;
+                }
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Emprunte un Marshaller au pool, ou en crée un si le pool est vide
+     *
+     * @return un Marshaller configuré
+     * @throws JAXBException
+     *             JAXBException
+     */
+    private Marshaller borrowMarshaller( ) throws JAXBException
+    {
+        JAXBContext context = getContext( );
+        Marshaller marshaller = _poolMarshallers.poll( );
+
+        if ( marshaller == null )
+        {
+            marshaller = context.createMarshaller( );
+            marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, true );
+            marshaller.setProperty( PROPERTY_NAMESPACE_PREFIX_MAPPER, new ActeNamespacePrefixMapper( ) );
+        }
+
+        marshaller.setProperty( Marshaller.JAXB_ENCODING, FastConfigurationService.getInstance( ).getConfiguration( ).getXmlEncoding( ) );
+
+        return marshaller;
+    }
+
+    /**
+     * Rend un Marshaller au pool. S'il est plein, le Marshaller est abandonné.
+     *
+     * @param marshaller
+     *            le Marshaller
+     */
+    private void releaseMarshaller( Marshaller marshaller )
+    {
+        _poolMarshallers.offer( marshaller );
+    }
+
+    /**
+     * Flux qui ignore les données écrites
+     */
+    private static final class NullOutputStream extends OutputStream
+    {
+        @Override
+        public void write( int b )
+        {
+            // Rien
+        }
+
+        @Override
+        public void write( byte [ ] b, int off, int len )
+        {
+            // Rien
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests du nettoyage des libellés transmis dans le fichier métier
+ */
+public class FastTitleSanitizerTest
+{
+    private static final String DEFICIENT = "<,>,&,-,--";
+    private static final String EMOJI = "😀";
+
+    /**
+     * Un libellé conforme est rendu tel quel, sans copie
+     */
+    @Test
+    public void testConformingTitleIsReturnedAsIs( )
+    {
+        FastTitleSanitizer sanitizer = new FastTitleSanitizer( StandardCharsets.ISO_8859_1, DEFICIENT, 20 );
+        String strObjet = "Délibération 2009";
+
+        assertSame( strObjet, sanitizer.sanitizeObjet( strObjet ) );
+        assertSame( strObjet, sanitizer.sanitizeNumeroInterne( strObjet ) );
+        assertNull( sanitizer.sanitizeObjet( null ) );
+    }
+
+    /**
+     * Les caractères interdits sont remplacés, les séquences les plus longues en premier
+     */
+    @Test
+    public void testDeficientCaracters( )
+    {
+        FastTitleSanitizer sanitizer = new FastTitleSanitizer( StandardCharsets.ISO_8859_1, DEFICIENT, 50 );
+
+        assertEquals( "a?b?c?d", sanitizer.sanitizeObjet( "a<b>c&d" ) );
+        assertEquals( "a?b?c", sanitizer.sanitizeObjet( "a--b-c" ) );
+        assertEquals( "a?b", sanitizer.sanitizeNumeroInterne( "a--b" ) );
+    }
+
+    /**
+     * Les caractères non représentables dans l'encodage du fichier sont remplacés, un caractère hors BMP par un seul caractère
+     */
+    @Test
+    public void testUnencodableCaracters( )
+    {
+        FastTitleSanitizer latin1 = new FastTitleSanitizer( StandardCharsets.ISO_8859_1, null, 50 );
+        FastTitleSanitizer utf8 = new FastTitleSanitizer( StandardCharsets.UTF_8, null, 50 );
+        String strObjet = "a" + EMOJI + "b";
+
+        assertEquals( "é ?", latin1.sanitizeObjet( "é €" ) );
+        assertEquals( "a?b", latin1.sanitizeObjet( strObjet ) );
+        assertSame( strObjet, utf8.sanitizeObjet( strObjet ) );
+    }
+
+    /**
+     * L'objet est tronqué au nombre de caractères maximum, points de suspension compris ; le numéro interne ne l'est pas
+     */
+    @Test
+    public void testTruncation( )
+    {
+        FastTitleSanitizer sanitizer = new FastTitleSanitizer( StandardCharsets.ISO_8859_1, DEFICIENT, 10 );
+
+        assertEquals( "abcdefghij", sanitizer.sanitizeObjet( "abcdefghij" ) );
+        assertEquals( "abcdefg...", sanitizer.sanitizeObjet( "abcdefghijkl" ) );
+        assertEquals( "a?cdefg...", sanitizer.sanitizeObjet( "a<cdefghijkl" ) );
+        assertEquals( "abcdefghijkl", sanitizer.sanitizeNumeroInterne( "abcdefghijkl" ) );
+    }
+
+    /**
+     * La troncature ne coupe pas un caractère hors BMP, et le maximum ne descend pas sous la longueur des points de suspension
+     */
+    @Test
+    public void testTruncationBounds( )
+    {
+        FastTitleSanitizer utf8 = new FastTitleSanitizer( StandardCharsets.UTF_8, null, 8 );
+        FastTitleSanitizer tiny = new FastTitleSanitizer( StandardCharsets.UTF_8, null, 0 );
+
+        assertEquals( "abcd...", utf8.sanitizeObjet( "abcd" + EMOJI + "efgh" ) );
+        assertEquals( "abc", tiny.sanitizeObjet( "abc" ) );
+        assertEquals( "...", tiny.sanitizeObjet( "abcd" ) );
+    }
+}
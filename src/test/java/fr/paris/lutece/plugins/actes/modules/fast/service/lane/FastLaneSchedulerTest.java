@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2002-2009, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.actes.modules.fast.service.lane;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastCollectivityProfile;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfiguration;
+import fr.paris.lutece.plugins.actes.modules.fast.service.FastConfigurationService;
+import fr.paris.lutece.plugins.actes.modules.fast.service.metrics.FastMetrics;
+
+/**
+ * Tests de l'ordonnancement des transmissions par collectivité
+ */
+public class FastLaneSchedulerTest
+{
+    private static final long TIMEOUT = 5000L;
+    private static final long BLOCKED_DELAY = 200L;
+    private Path _tmpDirectory;
+    private Path _fastDirectory;
+
+    /**
+     * Crée les répertoires de travail
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @Before
+    public void setUp( ) throws IOException
+    {
+        _tmpDirectory = Files.createTempDirectory( "actes-fast-tmp" );
+        _fastDirectory = Files.createTempDirectory( "actes-fast-dir" );
+    }
+
+    /**
+     * Supprime les répertoires de travail
+     *
+     * @throws IOException
+     *             IOException
+     */
+    @After
+    public void tearDown( ) throws IOException
+    {
+        delete( _tmpDirectory );
+        delete( _fastDirectory );
+    }
+
+    /**
+     * Les places libérées sont attribuées à tour de rôle aux files en attente, et non dans l'ordre d'arrivée
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testRoundRobin( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 1, 1, 1 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+        FastCollectivityProfile dept = configuration.getProfile( FastCollectivityProfile.CODE_DEPT );
+        List<String> listExecuted = Collections.synchronizedList( new ArrayList<String>( ) );
+        List<Future<String>> listFutures = new ArrayList<Future<String>>( );
+
+        // La seule place est occupée : les tâches s'accumulent dans les files, la rafale de la ville en premier
+        FastLanePermit permit = scheduler.acquire( ville, FastMetrics.TRANSACTION_TRANSMISSION );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            listFutures.add( scheduler.submit( ville, FastMetrics.TRANSACTION_TRANSMISSION,
+                    ( ) -> record( listExecuted, FastCollectivityProfile.CODE_VILLE ) ) );
+        }
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            listFutures.add( scheduler.submit( dept, FastMetrics.TRANSACTION_TRANSMISSION,
+                    ( ) -> record( listExecuted, FastCollectivityProfile.CODE_DEPT ) ) );
+        }
+
+        permit.release( );
+
+        for ( Future<String> future : listFutures )
+        {
+            future.get( TIMEOUT, TimeUnit.MILLISECONDS );
+        }
+
+        assertEquals( Arrays.asList( FastCollectivityProfile.CODE_DEPT, FastCollectivityProfile.CODE_VILLE, FastCollectivityProfile.CODE_DEPT,
+                FastCollectivityProfile.CODE_VILLE, FastCollectivityProfile.CODE_VILLE ), listExecuted );
+    }
+
+    /**
+     * Une file pleine fait attendre sa collectivité sans bloquer les autres
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testLaneMaxConcurrent( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 4, 1, 2 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+        FastCollectivityProfile dept = configuration.getProfile( FastCollectivityProfile.CODE_DEPT );
+
+        FastLanePermit permitVille = acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+        Future<FastLanePermit> futureVille = acquireAsync( scheduler, ville );
+
+        assertBlocked( futureVille );
+        assertEquals( -1, scheduler.getRank( FastCollectivityProfile.CODE_VILLE ) );
+
+        FastLanePermit permitDept = acquireAsync( scheduler, dept ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+
+        permitVille.release( );
+
+        FastLanePermit permitVille2 = futureVille.get( TIMEOUT, TimeUnit.MILLISECONDS );
+        assertNotNull( permitVille2 );
+
+        permitVille2.release( );
+        permitDept.release( );
+    }
+
+    /**
+     * Le nombre de places attribuées toutes files confondues est borné par actes-fast.batch.max.concurrent
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testBatchMaxConcurrent( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 2, 2, 2 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+        FastCollectivityProfile dept = configuration.getProfile( FastCollectivityProfile.CODE_DEPT );
+
+        FastLanePermit permitVille1 = acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+        FastLanePermit permitVille2 = acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+        Future<FastLanePermit> futureDept = acquireAsync( scheduler, dept );
+
+        assertBlocked( futureDept );
+
+        permitVille1.release( );
+
+        FastLanePermit permitDept = futureDept.get( TIMEOUT, TimeUnit.MILLISECONDS );
+        assertNotNull( permitDept );
+
+        // Une place libérée deux fois n'est rendue qu'une fois
+        permitVille1.release( );
+
+        Future<FastLanePermit> futureVille = acquireAsync( scheduler, ville );
+        assertBlocked( futureVille );
+
+        permitVille2.release( );
+        futureVille.get( TIMEOUT, TimeUnit.MILLISECONDS ).release( );
+        permitDept.release( );
+    }
+
+    /**
+     * Une tâche d'un lot qui appelle acquire dans la file de sa collectivité n'y reprend pas de place
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testReentrantAcquire( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 1, 1, 1 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+
+        Future<Integer> future = scheduler.submit( ville, FastMetrics.TRANSACTION_TRANSMISSION, ( ) -> {
+            FastLanePermit permit = scheduler.acquire( ville, FastMetrics.TRANSACTION_TRANSMISSION );
+            permit.release( );
+
+            // La place de la tâche est toujours détenue
+            return scheduler.getRank( FastCollectivityProfile.CODE_VILLE );
+        } );
+
+        assertEquals( Integer.valueOf( -1 ), future.get( TIMEOUT, TimeUnit.MILLISECONDS ) );
+
+        // La place de la tâche est rendue à la fin de la tâche
+        acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS ).release( );
+    }
+
+    /**
+     * Un thread interrompu pendant l'attente quitte la file sans emporter de place
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testInterruptedAcquire( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 1, 1, 1 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+
+        FastLanePermit permit = acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+        FutureTask<FastLanePermit> waiting = new FutureTask<FastLanePermit>( ( ) -> scheduler.acquire( ville, FastMetrics.TRANSACTION_TRANSMISSION ) );
+        Thread thread = new Thread( waiting );
+        thread.start( );
+
+        assertBlocked( waiting );
+
+        thread.interrupt( );
+
+        try
+        {
+            waiting.get( TIMEOUT, TimeUnit.MILLISECONDS );
+            fail( "InterruptedIOException expected" );
+        }
+        catch( ExecutionException e )
+        {
+            assertTrue( e.getCause( ) instanceof InterruptedIOException );
+        }
+
+        permit.release( );
+
+        // La place libérée n'est pas attribuée à l'attente interrompue : elle reste disponible
+        acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS ).release( );
+    }
+
+    /**
+     * Une configuration rechargée remplace les limites des files sans oublier les places déjà accordées
+     *
+     * @throws Exception
+     *             Exception
+     */
+    @Test
+    public void testReconfigure( ) throws Exception
+    {
+        FastConfiguration configuration = newConfiguration( 1, 1, 1 );
+        FastLaneScheduler scheduler = new FastLaneScheduler( configuration );
+        FastCollectivityProfile ville = configuration.getProfile( FastCollectivityProfile.CODE_VILLE );
+
+        FastLanePermit permitVille1 = acquireAsync( scheduler, ville ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+        Future<FastLanePermit> futureVille2 = acquireAsync( scheduler, ville );
+        assertBlocked( futureVille2 );
+
+        // Limites relevées : la place en attente est attribuée tout de suite, la place déjà accordée reste comptée
+        scheduler.reconfigure( newConfiguration( 2, 2, 2 ) );
+
+        FastLanePermit permitVille2 = futureVille2.get( TIMEOUT, TimeUnit.MILLISECONDS );
+        Future<FastLanePermit> futureVille3 = acquireAsync( scheduler, ville );
+        assertBlocked( futureVille3 );
+
+        // Limites abaissées : les places rendues ne sont pas réattribuées tant que la nouvelle limite est atteinte
+        scheduler.reconfigure( newConfiguration( 1, 1, 1 ) );
+        permitVille1.release( );
+        assertBlocked( futureVille3 );
+
+        permitVille2.release( );
+        futureVille3.get( TIMEOUT, TimeUnit.MILLISECONDS ).release( );
+    }
+
+    /**
+     * Construit une configuration avec les collectivités ville et département, et l'installe comme configuration courante pour les threads des
+     * lots
+     *
+     * @param nBatchMaxConcurrent
+     *            le nombre de places toutes files confondues
+     * @param nVilleMaxConcurrent
+     *            le nombre de places de la ville
+     * @param nDeptMaxConcurrent
+     *            le nombre de places du département
+     * @return la configuration
+     */
+    private FastConfiguration newConfiguration( int nBatchMaxConcurrent, int nVilleMaxConcurrent, int nDeptMaxConcurrent )
+    {
+        Properties properties = new Properties( );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DATE_CLASSIFICATION, "01/01/1980" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_SIREN_VILLE, "217500016" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_SIREN_DEPT, "227500055" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DIR_PATH, _tmpDirectory.toString( ) );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_FAST_DIR_PATH, _fastDirectory.toString( ) );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_DEPT, "075" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TRANSACTION_TRANSMISSION, "1-1" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TRANSACTION_ANNULATION, "6-1" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_TRAITEMENT, "TELETRANSMISSION" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_DNUTILISATEUR_VILLE, "CN=VILLE" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_WS_DNUTILISATEUR_DEPT, "CN=DEPT" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TYPE_LIBELLE, "DE" );
+        properties.setProperty( FastConfiguration.PROPERTY_ACTE_TYPE_NUM, "1" );
+        properties.setProperty( FastConfiguration.PROPERTY_BATCH_MAX_CONCURRENT, String.valueOf( nBatchMaxConcurrent ) );
+        properties.setProperty( FastConfiguration.PREFIX_COLLECTIVITY + FastCollectivityProfile.CODE_VILLE + FastConfiguration.SUFFIX_COLLECTIVITY_MAX_CONCURRENT,
+                String.valueOf( nVilleMaxConcurrent ) );
+        properties.setProperty( FastConfiguration.PREFIX_COLLECTIVITY + FastCollectivityProfile.CODE_DEPT + FastConfiguration.SUFFIX_COLLECTIVITY_MAX_CONCURRENT,
+                String.valueOf( nDeptMaxConcurrent ) );
+
+        FastConfiguration configuration = FastConfiguration.fromProperties( properties );
+        FastConfigurationService.getInstance( ).setConfiguration( configuration );
+
+        return configuration;
+    }
+
+    /**
+     * Attend une place dans un nouveau thread, pour que la place ne soit pas rattachée au thread du test
+     *
+     * @param scheduler
+     *            l'ordonnanceur
+     * @param profile
+     *            le profil de la collectivité
+     * @return la place à venir
+     */
+    private static Future<FastLanePermit> acquireAsync( FastLaneScheduler scheduler, FastCollectivityProfile profile )
+    {
+        FutureTask<FastLanePermit> future = new FutureTask<FastLanePermit>(
+                ( ) -> scheduler.acquire( profile, FastMetrics.TRANSACTION_TRANSMISSION ) );
+        Thread thread = new Thread( future );
+        thread.setDaemon( true );
+        thread.start( );
+
+        return future;
+    }
+
+    /**
+     * Vérifie qu'une attente de place est toujours bloquée après un délai
+     *
+     * @param future
+     *            la place à venir
+     * @throws Exception
+     *             Exception
+     */
+    private static void assertBlocked( Future<FastLanePermit> future ) throws Exception
+    {
+        try
+        {
+            future.get( BLOCKED_DELAY, TimeUnit.MILLISECONDS );
+            fail( "acquire should be waiting for a place" );
+        }
+        catch( TimeoutException e )
+        {
+            assertFalse( future.isDone( ) );
+        }
+    }
+
+    /**
+     * Enregistre l'exécution d'une tâche
+     *
+     * @param listExecuted
+     *            les tâches exécutées
+     * @param strCode
+     *            le code de la collectivité de la tâche
+     * @return le code de la collectivité
+     */
+    private static String record( List<String> listExecuted, String strCode )
+    {
+        listExecuted.add( strCode );
+
+        return strCode;
+    }
+
+    /**
+     * Supprime un répertoire et son contenu
+     *
+     * @param directory
+     *            le répertoire
+     * @throws IOException
+     *             IOException
+     */
+    private static void delete( Path directory ) throws IOException
+    {
+        try ( Stream<Path> stream = Files.walk( directory ) )
+        {
+            for ( Path path : (Iterable<Path>) stream.sorted( Comparator.reverseOrder( ) )::iterator )
+            {
+                Files.deleteIfExists( path );
+            }
+        }
+    }
+}